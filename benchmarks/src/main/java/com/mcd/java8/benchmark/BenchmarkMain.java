@@ -0,0 +1,29 @@
+package com.mcd.java8.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar 的入口。
+ * 与 org.openjdk.jmh.Main 接受相同的命令行参数，区别是默认附带 GCProfiler，
+ * 每个结果都会同时给出 gc.alloc.rate.norm（每次操作分配的字节数）和 GC 次数/耗时，例如：
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar ParallelSumBenchmark -p n=10000000
+ * java -jar benchmarks/target/benchmarks.jar -rf json -rff result.json
+ * </pre>
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (commandLine.getProfilers().isEmpty())
+            options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
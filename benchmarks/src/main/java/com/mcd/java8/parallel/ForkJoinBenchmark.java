@@ -0,0 +1,188 @@
+package com.mcd.java8.parallel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数组上的分支/合并规约：ForkJoinSumCalculator、ForkJoinReducer（固定阈值 / 校准阈值）、并行流，以及叶子内核和前缀扫描
+ * <p>
+ * 1e8 时四个数组共约 3.2GB，所以堆设为 4g；1e9 个元素放不进 int 下标的数组，见 MappedReduceBenchmark。
+ * leaf* 内核在运行时加了 jdk.incubator.vector 模块时走 VectorKernels，否则与 unrolled* 相同：
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar ForkJoinBenchmark.*Kernel -jvmArgsAppend --add-modules=jdk.incubator.vector
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ForkJoinBenchmark {
+
+    @Param({"1000000", "10000000", "100000000"})
+    public int size;
+
+    private long[] longs;
+    private double[] a;
+    private double[] b;
+    private long[] scanOut;
+    private ForkJoinReducer reducer;
+    private ForkJoinReducer calibratedReducer;
+    private ParallelPrefixScan scanner;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(size);
+        longs = random.longs(size, 0, 1_000).toArray();
+        a = random.doubles(size).toArray();
+        b = random.doubles(size).toArray();
+        scanOut = new long[size];
+        reducer = new ForkJoinReducer();
+        calibratedReducer = ForkJoinReducer.calibrated(ForkJoinPool.commonPool());
+        scanner = new ParallelPrefixScan();
+    }
+
+    @Benchmark
+    public long forkJoinSumCalculator() {
+        return ForkJoinPool.commonPool().invoke(new ForkJoinSumCalculator(longs));
+    }
+
+    @Benchmark
+    public long forkJoinReducerSum() {
+        return reducer.sum(longs);
+    }
+
+    @Benchmark
+    public long forkJoinReducerGenericSum() {
+        return reducer.reduce(longs, 0L, Long::sum);
+    }
+
+    @Benchmark
+    public long calibratedReducerSum() {
+        return calibratedReducer.sum(longs);
+    }
+
+    @Benchmark
+    public long arraysParallelStreamSum() {
+        return Arrays.stream(longs).parallel().sum();
+    }
+
+    @Benchmark
+    public long forkJoinReducerMin() {
+        return reducer.min(longs);
+    }
+
+    @Benchmark
+    public long forkJoinReducerMax() {
+        return reducer.max(longs);
+    }
+
+    @Benchmark
+    public double forkJoinReducerDot() {
+        return reducer.dot(a, b);
+    }
+
+    /* 单线程叶子内核：每个核上的表现 */
+
+    @Benchmark
+    public long scalarSumKernel() {
+        long sum = 0;
+        for (long x : longs)
+            sum += x;
+        return sum;
+    }
+
+    @Benchmark
+    public long unrolledSumKernel() {
+        return LeafKernels.unrolledSum(longs, 0, longs.length);
+    }
+
+    @Benchmark
+    public long leafSumKernel() {
+        return LeafKernels.sum(longs, 0, longs.length);
+    }
+
+    @Benchmark
+    public long scalarMinKernel() {
+        long min = Long.MAX_VALUE;
+        for (long x : longs)
+            min = Math.min(min, x);
+        return min;
+    }
+
+    @Benchmark
+    public long unrolledMinKernel() {
+        return LeafKernels.unrolledMin(longs, 0, longs.length);
+    }
+
+    @Benchmark
+    public long leafMinKernel() {
+        return LeafKernels.min(longs, 0, longs.length);
+    }
+
+    @Benchmark
+    public long scalarMaxKernel() {
+        long max = Long.MIN_VALUE;
+        for (long x : longs)
+            max = Math.max(max, x);
+        return max;
+    }
+
+    @Benchmark
+    public long unrolledMaxKernel() {
+        return LeafKernels.unrolledMax(longs, 0, longs.length);
+    }
+
+    @Benchmark
+    public long leafMaxKernel() {
+        return LeafKernels.max(longs, 0, longs.length);
+    }
+
+    @Benchmark
+    public double scalarDotKernel() {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++)
+            sum += a[i] * b[i];
+        return sum;
+    }
+
+    @Benchmark
+    public double unrolledDotKernel() {
+        return LeafKernels.unrolledDot(a, b, 0, a.length);
+    }
+
+    @Benchmark
+    public double leafDotKernel() {
+        return LeafKernels.dot(a, b, 0, a.length);
+    }
+
+    /* 前缀扫描 */
+
+    @Benchmark
+    public long[] arraysParallelPrefix() {
+        System.arraycopy(longs, 0, scanOut, 0, size);
+        Arrays.parallelPrefix(scanOut, Long::sum);
+        return scanOut;
+    }
+
+    @Benchmark
+    public long[] parallelPrefixScan() {
+        scanner.scan(longs, scanOut, 0L, Long::sum, ParallelPrefixScan.Mode.INCLUSIVE);
+        return scanOut;
+    }
+}
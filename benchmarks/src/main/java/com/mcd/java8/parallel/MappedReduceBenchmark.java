@@ -0,0 +1,68 @@
+package com.mcd.java8.parallel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存映射文件上的规约，元素下标为 long，覆盖 ForkJoinBenchmark 中数组放不下的规模（1e9 个 long 即 8GB 的文件）。
+ * 文件超过页缓存时测到的是磁盘吞吐，而不是内存带宽
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms256m", "-Xmx256m"})
+public class MappedReduceBenchmark {
+
+    @Param({"1000000", "10000000", "100000000", "1000000000"})
+    public long size;
+
+    private Path file;
+    private MappedFileReducer reducer;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("mapped-reduce-" + size, ".bin");
+        MappedFileReducer.writeLongs(file, new Random(size).longs(size, 0, 1_000));
+        reducer = MappedFileReducer.open(file, ForkJoinPool.commonPool());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reducer.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long mappedSum() {
+        return reducer.sumLongs();
+    }
+
+    @Benchmark
+    public long mappedMin() {
+        return reducer.minLong();
+    }
+
+    @Benchmark
+    public long mappedMax() {
+        return reducer.maxLong();
+    }
+}
@@ -0,0 +1,78 @@
+package com.mcd.java8.parallel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParallelTest 中所有求和方式的 JMH 版本，替代 StreamPerfTest 中 Utils.measureSumPerf 的测量：
+ * 有预热、多次 fork 独立的 JVM、纳秒级计时，并且结果通过返回值交给 JMH，不会被 JIT 当作死代码消除
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ParallelSumBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public long n;
+
+    @Benchmark
+    public long sequentialSum() {
+        return ParallelTest.sequentialSum(n);
+    }
+
+    @Benchmark
+    public long parallelSum() {
+        return ParallelTest.parallelSum(n);
+    }
+
+    @Benchmark
+    public long iterativeSum() {
+        return ParallelTest.iterativeSum(n);
+    }
+
+    @Benchmark
+    public long unrolledIterativeSum() {
+        return ParallelTest.unrolledIterativeSum(n);
+    }
+
+    @Benchmark
+    public long rangedSum() {
+        return ParallelTest.rangedSum(n);
+    }
+
+    @Benchmark
+    public long parallelRangedSum() {
+        return ParallelTest.parallelRangedSum(n);
+    }
+
+    @Benchmark
+    public long sideEffectSum() {
+        return ParallelTest.sideEffectSum(n);
+    }
+
+    /**
+     * 结果是错误的，只用来对比开销
+     */
+    @Benchmark
+    public long parallelSideEffectSum() {
+        return ParallelTest.parallelSideEffectSum(n);
+    }
+
+    @Benchmark
+    public long parallelStripedSum() {
+        return ParallelTest.parallelStripedSum(n);
+    }
+}
@@ -0,0 +1,77 @@
+package com.mcd.java8.parallel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * SpliteratorTest 中的各种单词计数方式
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WordCountBenchmark {
+
+    /**
+     * SpliteratorTest.SENTENCE 重复的次数
+     */
+    @Param({"10000", "100000"})
+    public int copies;
+
+    private final SpliteratorTest spliteratorTest = new SpliteratorTest();
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = String.join("", Collections.nCopies(copies, spliteratorTest.SENTENCE));
+    }
+
+    @Benchmark
+    public int iterative() {
+        return spliteratorTest.countWordsIteratively(text);
+    }
+
+    @Benchmark
+    public int wordCounterSequential() {
+        return countWords(IntStream.range(0, text.length()).mapToObj(text::charAt));
+    }
+
+    @Benchmark
+    public int wordCounterSpliteratorParallel() {
+        return countWords(StreamSupport.stream(new WordCounterSpliterator(text), true));
+    }
+
+    @Benchmark
+    public int mutableWordCounterSequential() {
+        return MutableWordCounter.countWords(text, false);
+    }
+
+    @Benchmark
+    public int mutableWordCounterParallel() {
+        return MutableWordCounter.countWords(text, true);
+    }
+
+    /**
+     * 与 SpliteratorTest.countWords 相同
+     */
+    private static int countWords(Stream<Character> stream) {
+        return stream.reduce(new WordCounter(0, true), WordCounter::accumulate, WordCounter::combine).getCounter();
+    }
+}
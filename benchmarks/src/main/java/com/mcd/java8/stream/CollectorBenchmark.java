@@ -0,0 +1,104 @@
+package com.mcd.java8.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.collectingAndThen;
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.groupingByConcurrent;
+import static java.util.stream.Collectors.maxBy;
+import static java.util.stream.Collectors.partitioningBy;
+import static java.util.stream.Collectors.summingDouble;
+
+/**
+ * CollectorTest / StreamTest 中的分组、分区收集器，顺序与并行对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CollectorBenchmark {
+
+    private static final String[] TYPES = {"vegetables", "fruit", "meat", "fish", "other"};
+
+    @Param({"1000", "100000"})
+    public int dishes;
+
+    private List<Dish> menu;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(dishes);
+        menu = IntStream.range(0, dishes)
+                .mapToObj(i -> new Dish("dish" + i, TYPES[random.nextInt(TYPES.length)], random.nextDouble() * 800))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Map<String, List<Dish>> groupingByType() {
+        return menu.stream().collect(groupingBy(Dish::getType));
+    }
+
+    @Benchmark
+    public Map<String, List<Dish>> groupingByTypeParallel() {
+        return menu.parallelStream().collect(groupingBy(Dish::getType));
+    }
+
+    @Benchmark
+    public Map<String, List<Dish>> groupingByConcurrentParallel() {
+        return menu.parallelStream().collect(groupingByConcurrent(Dish::getType));
+    }
+
+    @Benchmark
+    public Map<String, Map<String, List<Dish>>> multiLevelGrouping() {
+        return menu.stream().collect(groupingBy(Dish::getType, groupingBy(dish ->
+                dish.getCalories() < 400d ? "LOW" : dish.getCalories() < 600d ? "NORMAL" : "HEIGHT")));
+    }
+
+    @Benchmark
+    public Map<String, Long> groupingByCounting() {
+        return menu.stream().collect(groupingBy(Dish::getType, counting()));
+    }
+
+    @Benchmark
+    public Map<String, Double> groupingBySummingCalories() {
+        return menu.stream().collect(groupingBy(Dish::getType, summingDouble(Dish::getCalories)));
+    }
+
+    @Benchmark
+    public Map<String, Dish> mostCaloricByType() {
+        return menu.stream().collect(groupingBy(Dish::getType,
+                collectingAndThen(maxBy(Comparator.comparingDouble(Dish::getCalories)), Optional::get)));
+    }
+
+    @Benchmark
+    public Map<Boolean, List<Dish>> partitioningByVegetarian() {
+        return menu.stream().collect(partitioningBy(Dish::isVegetarian));
+    }
+
+    @Benchmark
+    public Map<Boolean, List<Dish>> partitioningByVegetarianParallel() {
+        return menu.parallelStream().collect(partitioningBy(Dish::isVegetarian));
+    }
+}
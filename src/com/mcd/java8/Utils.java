@@ -7,6 +7,7 @@ public class Utils {
     /**
      * 测量函数性能
      *  对传递的函数执行 10 次，返回最快一次的执行时间。单位： ms
+     *  只保留最快的一次，而且参数会装箱；需要预热判断、百分位数和分配/GC 开销时使用 {@link com.mcd.java8.perf.PerfRunner}
      * @param adder
      * @param n
      * @return
@@ -0,0 +1,457 @@
+package com.mcd.java8.completableFuture;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 运行时自动调整线程数的线程池，代替 MyTest 中按数据量一次性确定的 Math.min(shops.size(), 400)
+ * <p>
+ * 每个周期根据上一个周期完成的任务计算：
+ * 1、到达率 λ（每秒提交的任务数）和平均耗时 W（墙钟时间）。按 Little 定律，跟上到达速度需要 λ * W 个线程同时工作
+ * 2、排队：正在执行的任务加上在一个周期内消化掉积压任务所需的 积压数 * W / 周期 个线程。还没有任务完成时，以队首任务的等待时间作为 W 的下限。
+ * 积压的任务多半也计入了本周期的到达数，所以 1、2 取较大值
+ * 3、CPU 上限：每个任务的阻塞时间 / CPU 时间（ThreadMXBean 的线程 CPU 时间）即 MyTest 中推导的等待/计算比，
+ * 线程数不超过 处理器数 * 目标利用率 * (1 + 等待/计算)，超出后线程只会争抢处理器
+ * <p>
+ * 最终大小限制在 [minThreads, maxThreads] 之间。为避免抖动：增长幅度至少为当前大小的 hysteresis 倍才增长；
+ * 连续 shrinkAfter 个周期的目标都低于当前大小的 (1 - hysteresis) 倍才收缩，收缩到这些周期中最大的目标。
+ * 每次调整都记录在 getResizes 中，并说明原因
+ */
+public class AdaptiveExecutor extends ThreadPoolExecutor {
+
+    private static final Logger LOG = Logger.getLogger(AdaptiveExecutor.class.getName());
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+    static final int HISTORY = 64;//保留的调整记录数
+
+    public enum Reason {
+        /** 按 Little 定律跟上到达速度 */
+        ARRIVALS,
+        /** 消化队列中积压的任务 */
+        BACKLOG,
+        /** 阻塞比例低，受处理器数限制 */
+        CPU_BOUND,
+        /** 受 maxThreads 限制 */
+        MAX_BOUND,
+        /** 负载下降，收缩到 minThreads 或目标大小 */
+        IDLE
+    }
+
+    private final int minThreads;
+    private final int maxThreads;
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private double hysteresis = 0.2;
+    private double targetUtilization = 1.0;
+    private int shrinkAfter = 3;
+
+    //当前周期的统计，周期结束时清零
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+
+    //以下只在 adapt 中访问（adapt 是 synchronized）
+    private long lastAdapt = System.nanoTime();
+    private double lastWall;//最近一次有任务完成的周期的平均耗时
+    private double lastCpu;
+    private int belowCount;//连续低于当前大小的周期数
+    private int belowMax;//这些周期中最大的目标
+    private Sample lastSample;
+    private final Deque<Resize> resizes = new ArrayDeque<>();
+
+    private final Ticker ticker;
+
+    /**
+     * 每 200ms 调整一次
+     */
+    public AdaptiveExecutor(int minThreads, int maxThreads) {
+        this(minThreads, maxThreads, 200, TimeUnit.MILLISECONDS);
+    }
+
+    public AdaptiveExecutor(int minThreads, int maxThreads, long period, TimeUnit unit) {
+        this(minThreads, maxThreads, period, unit, Deadlines.scheduler());
+    }
+
+    /**
+     * @param scheduler 为 null 时不自动调整，由调用方调用 adapt
+     */
+    AdaptiveExecutor(int minThreads, int maxThreads, long period, TimeUnit unit, ScheduledExecutorService scheduler) {
+        super(checkMin(minThreads, maxThreads), maxThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreads());
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.ticker = scheduler == null ? null : new Ticker(this, scheduler, period, unit);
+    }
+
+    public AdaptiveExecutor hysteresis(double hysteresis) {
+        if (hysteresis < 0 || hysteresis >= 1)
+            throw new IllegalArgumentException("hysteresis must be in [0, 1)");
+        this.hysteresis = hysteresis;
+        return this;
+    }
+
+    /**
+     * 处理器的目标利用率，(0, 1]，只影响 CPU 上限
+     */
+    public AdaptiveExecutor targetUtilization(double targetUtilization) {
+        if (targetUtilization <= 0 || targetUtilization > 1)
+            throw new IllegalArgumentException("target utilization must be in (0, 1]");
+        this.targetUtilization = targetUtilization;
+        return this;
+    }
+
+    public AdaptiveExecutor shrinkAfter(int periods) {
+        if (periods < 1)
+            throw new IllegalArgumentException("periods must be positive");
+        this.shrinkAfter = periods;
+        return this;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.increment();
+        super.execute(new TimedTask(command));
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        TimedTask task = (TimedTask) runnable;
+        task.startNanos = System.nanoTime();
+        task.startCpu = CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+        started.increment();
+        queueNanos.add(task.startNanos - task.submitNanos);
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        TimedTask task = (TimedTask) runnable;
+        wallNanos.add(System.nanoTime() - task.startNanos);
+        if (CPU_TIME)
+            cpuNanos.add(THREADS.getCurrentThreadCpuTime() - task.startCpu);
+        completed.increment();
+    }
+
+    @Override
+    public void shutdown() {
+        if (ticker != null)
+            ticker.cancel();
+        super.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        if (ticker != null)
+            ticker.cancel();
+        return super.shutdownNow();
+    }
+
+    /**
+     * 结束当前周期：根据统计计算目标大小，需要时调整线程数
+     *
+     * @return 本周期的统计
+     */
+    synchronized Sample adapt() {
+        long now = System.nanoTime();
+        double interval = Math.max(1, now - lastAdapt);
+        lastAdapt = now;
+
+        long arrivals = submitted.sumThenReset();
+        long starts = started.sumThenReset();
+        long queued = queueNanos.sumThenReset();
+        long done = completed.sumThenReset();
+        long wall = wallNanos.sumThenReset();
+        long cpu = cpuNanos.sumThenReset();
+        if (done > 0) {
+            lastWall = (double) wall / done;
+            lastCpu = (double) cpu / done;
+        }
+        TimedTask head = (TimedTask) getQueue().peek();
+        double headAge = head == null ? 0 : now - head.submitNanos;
+        double w = Math.max(lastWall, headAge);
+        int backlog = getQueue().size();
+
+        double arrivalsNeeded = arrivals / interval * w;
+        double backlogNeeded = getActiveCount() + backlog * w / interval;//本周期到达的任务可能还在队列中，所以两者取较大值而不是相加
+        double blocking = CPU_TIME && lastCpu > 0 ? Math.max(0, lastWall - lastCpu) / lastCpu : Double.NaN;
+        int cpuBound = Double.isNaN(blocking) ? maxThreads : (int) Math.ceil(cores * targetUtilization * (1 + blocking));
+
+        int target = (int) Math.ceil(Math.max(arrivalsNeeded, backlogNeeded));
+        Reason reason = backlogNeeded > arrivalsNeeded ? Reason.BACKLOG : Reason.ARRIVALS;
+        if (target > cpuBound) {
+            target = cpuBound;
+            reason = Reason.CPU_BOUND;
+        }
+        if (target > maxThreads) {
+            target = maxThreads;
+            reason = Reason.MAX_BOUND;
+        }
+        target = Math.max(target, minThreads);
+
+        Sample sample = new Sample(arrivals / interval * 1e9, lastWall, lastCpu, blocking,
+                starts == 0 ? 0 : (double) queued / starts, backlog, getActiveCount(), target);
+        lastSample = sample;
+
+        int current = getCorePoolSize();
+        if (target > current) {
+            belowCount = 0;
+            if (target - current >= Math.max(1, current * hysteresis))
+                resize(current, target, reason, sample);
+        } else if (target < current * (1 - hysteresis)) {
+            belowMax = belowCount == 0 ? target : Math.max(belowMax, target);
+            if (++belowCount >= shrinkAfter) {
+                belowCount = 0;
+                resize(current, belowMax, Reason.IDLE, sample);
+            }
+        } else {
+            belowCount = 0;
+        }
+        return sample;
+    }
+
+    private void resize(int from, int to, Reason reason, Sample sample) {
+        if (to > from) {
+            setMaximumPoolSize(to);
+            setCorePoolSize(to);
+        } else {
+            setCorePoolSize(to);
+            setMaximumPoolSize(to);
+        }
+        Resize resize = new Resize(System.currentTimeMillis(), from, to, reason, sample);
+        synchronized (resizes) {
+            if (resizes.size() == HISTORY)
+                resizes.removeFirst();
+            resizes.addLast(resize);
+        }
+        LOG.log(Level.FINE, "{0}", resize);
+    }
+
+    /**
+     * 当前的线程数上限（核心线程数）
+     */
+    public int getCurrentSize() {
+        return getCorePoolSize();
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * 最近一个周期的统计，还没有调整过时为 null
+     */
+    public synchronized Sample getLastSample() {
+        return lastSample;
+    }
+
+    /**
+     * 最近的调整记录，按时间先后排列
+     */
+    public List<Resize> getResizes() {
+        synchronized (resizes) {
+            return new ArrayList<>(resizes);
+        }
+    }
+
+    private static int checkMin(int minThreads, int maxThreads) {
+        if (minThreads < 1 || maxThreads < minThreads)
+            throw new IllegalArgumentException("require 1 <= minThreads <= maxThreads");
+        return minThreads;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "adaptive-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 共享调度器上的周期任务。只弱引用线程池，调度器不会让线程池一直可达：
+     * 调用方丢弃了没有存活线程的线程池（例如还没有提交过任务）时，线程池照常被回收，
+     * 下一次触发时发现线程池已被回收或已关闭，就取消自己，不会一直留在共享调度器中。
+     * 存活的工作线程会引用线程池，所以用过的线程池仍需调用 shutdown
+     */
+    private static final class Ticker implements Runnable {
+        private final WeakReference<AdaptiveExecutor> executor;
+        private final ScheduledFuture<?> future;
+
+        Ticker(AdaptiveExecutor executor, ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+            this.executor = new WeakReference<>(executor);
+            this.future = scheduler.scheduleAtFixedRate(this, period, period, unit);
+        }
+
+        @Override
+        public void run() {
+            AdaptiveExecutor target = executor.get();
+            if (target == null || target.isShutdown())
+                cancel();
+            else
+                target.adapt();
+        }
+
+        void cancel() {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 记录提交时间，开始时间和开始时的 CPU 时间由执行它的线程写入
+     */
+    private static final class TimedTask implements Runnable {
+        final Runnable command;
+        final long submitNanos = System.nanoTime();
+        long startNanos;
+        long startCpu;
+
+        TimedTask(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            command.run();
+        }
+    }
+
+    /**
+     * 一个周期的统计
+     */
+    public static final class Sample {
+        private final double arrivalsPerSecond;
+        private final double wallNanos;
+        private final double cpuNanos;
+        private final double blockingRatio;
+        private final double queueLatencyNanos;
+        private final int queued;
+        private final int active;
+        private final int target;
+
+        Sample(double arrivalsPerSecond, double wallNanos, double cpuNanos, double blockingRatio,
+               double queueLatencyNanos, int queued, int active, int target) {
+            this.arrivalsPerSecond = arrivalsPerSecond;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.blockingRatio = blockingRatio;
+            this.queueLatencyNanos = queueLatencyNanos;
+            this.queued = queued;
+            this.active = active;
+            this.target = target;
+        }
+
+        public double getArrivalsPerSecond() {
+            return arrivalsPerSecond;
+        }
+
+        /**
+         * 平均每个任务的墙钟时间
+         */
+        public double getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * 平均每个任务的 CPU 时间，不支持线程 CPU 时间时为 0
+         */
+        public double getCpuNanos() {
+            return cpuNanos;
+        }
+
+        /**
+         * 阻塞时间 / CPU 时间，不支持线程 CPU 时间时为 NaN
+         */
+        public double getBlockingRatio() {
+            return blockingRatio;
+        }
+
+        /**
+         * 本周期开始执行的任务在队列中的平均等待时间
+         */
+        public double getQueueLatencyNanos() {
+            return queueLatencyNanos;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getTarget() {
+            return target;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("arrivals=%.1f/s, W=%.1fms, cpu=%.2fms, blocking=%.1f, queue latency=%.1fms, queued=%d, active=%d, target=%d",
+                    arrivalsPerSecond, wallNanos / 1e6, cpuNanos / 1e6, blockingRatio, queueLatencyNanos / 1e6, queued, active, target);
+        }
+    }
+
+    /**
+     * 一次调整
+     */
+    public static final class Resize {
+        private final long timeMillis;
+        private final int from;
+        private final int to;
+        private final Reason reason;
+        private final Sample sample;
+
+        Resize(long timeMillis, int from, int to, Reason reason, Sample sample) {
+            this.timeMillis = timeMillis;
+            this.from = from;
+            this.to = to;
+            this.reason = reason;
+            this.sample = sample;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getTo() {
+            return to;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        public Sample getSample() {
+            return sample;
+        }
+
+        @Override
+        public String toString() {
+            return from + " -> " + to + " (" + reason + ": " + sample + ")";
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.mcd.java8.completableFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 自适应线程池：阻塞任务时增长，空闲时收缩，计算密集的任务受处理器数限制
+ */
+public class AdaptiveExecutorTest {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 手动调用 adapt，结果不依赖调度时机
+     */
+    @Test
+    public void growsAndShrinks() throws InterruptedException {
+        AdaptiveExecutor executor = new AdaptiveExecutor(1, 200, 0, TimeUnit.MILLISECONDS, null).shrinkAfter(2);
+        try {
+            List<CompletableFuture<Void>> tasks = submit(executor, 40, () -> Shop.delay(100));
+            Thread.sleep(150);
+            System.out.println(executor.adapt());
+            assertTrue(executor.getCurrentSize() >= 30);
+            AdaptiveExecutor.Resize grow = executor.getResizes().get(0);
+            assertEquals(1, grow.getFrom());
+            assertTrue(grow.getReason() == AdaptiveExecutor.Reason.BACKLOG || grow.getReason() == AdaptiveExecutor.Reason.ARRIVALS);
+            assertTrue(grow.getSample().getBlockingRatio() > 10 || Double.isNaN(grow.getSample().getBlockingRatio()));
+
+            long start = System.nanoTime();
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+            System.out.println("backlog drained in " + (System.nanoTime() - start) / 1_000_000 + " msecs");
+
+            executor.adapt();
+            executor.adapt();
+            executor.adapt();
+            assertEquals(1, executor.getCurrentSize());
+            List<AdaptiveExecutor.Resize> resizes = executor.getResizes();
+            assertEquals(AdaptiveExecutor.Reason.IDLE, resizes.get(resizes.size() - 1).getReason());
+            resizes.forEach(System.out::println);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 几乎不阻塞的任务，线程数不超过 处理器数 * (1 + 阻塞/CPU)
+     */
+    @Test
+    public void cpuBoundWorkIsCapped() throws InterruptedException {
+        AdaptiveExecutor executor = new AdaptiveExecutor(1, 200, 0, TimeUnit.MILLISECONDS, null);
+        try {
+            List<CompletableFuture<Void>> tasks = submit(executor, 40, () -> spin(TimeUnit.MILLISECONDS.toNanos(10)));
+            Thread.sleep(100);
+            AdaptiveExecutor.Sample sample = executor.adapt();
+            System.out.println(sample);
+            if (!Double.isNaN(sample.getBlockingRatio())) {//不支持线程 CPU 时间时没有上限
+                assertTrue(executor.getCurrentSize() <= 2 * CORES);
+                assertEquals(AdaptiveExecutor.Reason.CPU_BOUND, executor.getResizes().get(0).getReason());
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 自动调整：商店延迟从 20ms 变为 200ms，到达速度不变，线程数随之增长
+     */
+    @Test
+    public void tracksShiftingLatency() throws InterruptedException {
+        AdaptiveExecutor executor = new AdaptiveExecutor(1, 400, 50, TimeUnit.MILLISECONDS);
+        try {
+            int fast = load(executor, 20, 1_000);
+            int slow = load(executor, 200, 1_000);
+            System.out.println("20ms shops: " + fast + " threads, 200ms shops: " + slow + " threads");
+            executor.getResizes().forEach(System.out::println);
+            assertTrue(slow > fast);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 关闭或丢弃线程池后，调度器中的周期任务随之取消
+     */
+    @Test
+    public void tickerStopsWithExecutor() throws InterruptedException {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            new AdaptiveExecutor(1, 10, 10, TimeUnit.MILLISECONDS, scheduler).shutdown();
+            assertEquals(0, scheduler.getQueue().size());
+
+            new AdaptiveExecutor(1, 10, 10, TimeUnit.MILLISECONDS, scheduler);//没有提交过任务，也就没有线程引用它
+            for (int i = 0; i < 100 && !scheduler.getQueue().isEmpty(); i++) {
+                System.gc();
+                Thread.sleep(20);
+            }
+            assertEquals(0, scheduler.getQueue().size());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * 每 10ms 查询一批（10 个）商店，持续 millis，返回结束时的线程数
+     */
+    private static int load(AdaptiveExecutor executor, long delayMillis, long millis) throws InterruptedException {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            shops.add(new Shop("Shop" + i, executor, delayMillis));
+        List<CompletableFuture<Double>> prices = new ArrayList<>();
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < end) {
+            for (Shop shop : shops)
+                prices.add(shop.getPriceAsync("myPhone27S"));
+            Thread.sleep(10);
+        }
+        int size = executor.getCurrentSize();
+        CompletableFuture.allOf(prices.toArray(new CompletableFuture<?>[0])).join();
+        return size;
+    }
+
+    private static List<CompletableFuture<Void>> submit(AdaptiveExecutor executor, int n, Runnable task) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            futures.add(CompletableFuture.runAsync(task, executor));
+        return futures;
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+        }
+    }
+}
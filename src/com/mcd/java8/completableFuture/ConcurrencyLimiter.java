@@ -0,0 +1,345 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 一个下游（商店）的自适应并发上限
+ * <p>
+ * 同时进行中的请求不超过 limit，超出的请求在有界队列中等待，队列也满时立即以 RejectedExecutionException 失败。
+ * 等待中的请求只是一个还没有调用的 Supplier，不占用执行器的线程，所以一个变慢的商店最多占用 limit 个线程。
+ * <p>
+ * limit 根据每个请求的往返时间调整：
+ * 1、AIMD：请求失败或往返时间超过阈值时乘以 backoff，否则在使用了至少一半 limit 时加 1
+ * 2、GRADIENT（Vegas 风格）：以最小往返时间作为无排队时的延迟，gradient = 最小往返时间 / 本次往返时间（限制在 [0.5, 1]），
+ * 新的 limit = limit * gradient + sqrt(limit)，再做指数平滑。延迟上升说明下游开始排队，limit 随之减小；
+ * 最小往返时间随更小的样本立即下降；每 PROBE_INTERVAL 个样本为一个窗口，整个窗口的最小值都高于基线时，
+ * 基线只向它上移 BASELINE_RISE（10%）。单个样本或一两个窗口的变慢不会被当作新的基线，
+ * 持续几十个窗口的变化才会，从而既能适应下游基线的变化，又不会在持续变慢时把 limit 放开
+ * <p>
+ * 请求失败（包括超时）都视为丢弃。计数可以通过 stats 查看
+ */
+public final class ConcurrencyLimiter {
+
+    static final int PROBE_INTERVAL = 1_000;
+
+    private final String name;
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private int maxQueue;
+
+    //以下字段由 this 保护
+    private double limit;
+    private int inFlight;
+    private final ArrayDeque<Pending<?>> queue = new ArrayDeque<>();
+    private final ArrayDeque<Pending<?>> ready = new ArrayDeque<>();//已计入 inFlight、等待 drain 调用的请求
+    private boolean draining;
+    private long accepted;
+    private long queued;
+    private long rejected;
+    private long dropped;
+
+    ConcurrencyLimiter(String name, Algorithm algorithm, int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit)
+            throw new IllegalArgumentException("require 1 <= minLimit <= initialLimit <= maxLimit");
+        this.name = name;
+        this.algorithm = algorithm;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param latencyThreshold 往返时间超过该值视为过载
+     * @param backoff          过载时 limit 乘以的系数，(0, 1)
+     */
+    public static ConcurrencyLimiter aimd(String name, int initialLimit, int minLimit, int maxLimit,
+                                          long latencyThreshold, TimeUnit unit, double backoff) {
+        if (backoff <= 0 || backoff >= 1)
+            throw new IllegalArgumentException("backoff must be in (0, 1)");
+        return new ConcurrencyLimiter(name, new Aimd(unit.toNanos(latencyThreshold), backoff), initialLimit, minLimit, maxLimit);
+    }
+
+    public static ConcurrencyLimiter gradient(String name, int initialLimit, int minLimit, int maxLimit) {
+        return gradient(name, initialLimit, minLimit, maxLimit, PROBE_INTERVAL);
+    }
+
+    /**
+     * @param probeInterval 每个窗口的样本数，窗口结束时基线向窗口内的最小往返时间上移
+     */
+    static ConcurrencyLimiter gradient(String name, int initialLimit, int minLimit, int maxLimit, int probeInterval) {
+        if (probeInterval < 1)
+            throw new IllegalArgumentException("probe interval must be positive");
+        return new ConcurrencyLimiter(name, new Gradient(probeInterval), initialLimit, minLimit, maxLimit);
+    }
+
+    /**
+     * 超出 limit 时最多排队的请求数，默认为 0，即立即拒绝
+     */
+    public ConcurrencyLimiter maxQueue(int maxQueue) {
+        if (maxQueue < 0)
+            throw new IllegalArgumentException("maxQueue must not be negative");
+        synchronized (this) {
+            this.maxQueue = maxQueue;
+        }
+        return this;
+    }
+
+    /**
+     * 有空闲的并发名额时立即调用 call，否则排队或拒绝
+     *
+     * @param call 发起请求，只在获得名额后才调用
+     * @return 请求的结果；被拒绝时以 RejectedExecutionException 异常完成
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletableFuture<T>> call) {
+        Pending<T> pending = new Pending<>(call);
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                accepted++;
+            } else if (queue.size() < maxQueue) {
+                queue.addLast(pending);
+                queued++;
+                return pending.result;
+            } else {
+                rejected++;
+                pending.result.completeExceptionally(new RejectedExecutionException(
+                        name + ": concurrency limit " + (int) limit + " reached"));
+                return pending.result;
+            }
+        }
+        start(pending);
+        return pending.result;
+    }
+
+    private <T> void start(Pending<T> pending) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = pending.call.get();
+        } catch (RuntimeException ex) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+        }
+        future.whenComplete((value, ex) -> {
+            release(System.nanoTime() - start, ex != null);
+            if (ex == null)
+                pending.result.complete(value);
+            else
+                pending.result.completeExceptionally(ex);
+        });
+    }
+
+    /**
+     * 放行的请求交给 drain 调用。call 返回已完成的 Future 时，start 中的 whenComplete 会在当前线程中立即执行并再次 release，
+     * 如果在这里直接 start，就会形成 start → release → start 的递归，队列很长时可能栈溢出
+     */
+    private void release(long rttNanos, boolean drop) {
+        synchronized (this) {
+            if (drop)
+                dropped++;
+            limit = Math.max(minLimit, Math.min(maxLimit, algorithm.update(limit, rttNanos, inFlight, drop)));
+            inFlight--;
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                ready.addLast(queue.removeFirst());
+                inFlight++;
+                accepted++;
+            }
+            if (draining || ready.isEmpty())
+                return;//已有线程在 drain 中循环，它会接着调用新放行的请求
+            draining = true;
+        }
+        drain();
+    }
+
+    /**
+     * 逐个调用 ready 中的请求，直到 ready 为空。同一时刻只有一个线程在循环中，嵌套的 release 只会向 ready 中添加请求
+     */
+    private void drain() {
+        while (true) {
+            Pending<?> next;
+            synchronized (this) {
+                next = ready.pollFirst();
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            start(next);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(name, (int) limit, inFlight, queue.size(), accepted, queued, rejected, dropped);
+    }
+
+    private static final class Pending<T> {
+        final Supplier<? extends CompletableFuture<T>> call;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Pending(Supplier<? extends CompletableFuture<T>> call) {
+            this.call = call;
+        }
+    }
+
+    /**
+     * 在持有 ConcurrencyLimiter 的锁时调用，不需要自己同步
+     */
+    abstract static class Algorithm {
+        /**
+         * @param limit    当前的 limit
+         * @param rttNanos 刚完成的请求的往返时间
+         * @param inFlight 包括刚完成的请求在内，进行中的请求数
+         * @param drop     请求是否失败
+         * @return 新的 limit，由调用方限制在 [minLimit, maxLimit] 之间
+         */
+        abstract double update(double limit, long rttNanos, int inFlight, boolean drop);
+    }
+
+    static final class Aimd extends Algorithm {
+        private final long thresholdNanos;
+        private final double backoff;
+
+        Aimd(long thresholdNanos, double backoff) {
+            this.thresholdNanos = thresholdNanos;
+            this.backoff = backoff;
+        }
+
+        @Override
+        double update(double limit, long rttNanos, int inFlight, boolean drop) {
+            if (drop || rttNanos > thresholdNanos)
+                return limit * backoff;
+            if (inFlight * 2 >= limit)//只有确实用到了 limit 才增长，否则低负载时 limit 会无限增大
+                return limit + 1;
+            return limit;
+        }
+    }
+
+    static final class Gradient extends Algorithm {
+        private static final double SMOOTHING = 0.2;
+        private static final double BACKOFF = 0.9;
+        static final double BASELINE_RISE = 0.1;
+
+        private final int probeInterval;
+        private long minRtt = Long.MAX_VALUE;//基线
+        private long windowMinRtt = Long.MAX_VALUE;//当前窗口内的最小往返时间
+        private long samples;
+
+        Gradient(int probeInterval) {
+            this.probeInterval = probeInterval;
+        }
+
+        @Override
+        double update(double limit, long rttNanos, int inFlight, boolean drop) {
+            if (drop)
+                return limit * BACKOFF;
+            minRtt = Math.min(minRtt, rttNanos);
+            windowMinRtt = Math.min(windowMinRtt, rttNanos);
+            if (++samples % probeInterval == 0) {
+                if (windowMinRtt > minRtt)
+                    minRtt += (long) ((windowMinRtt - minRtt) * BASELINE_RISE);
+                windowMinRtt = Long.MAX_VALUE;
+            }
+            if (inFlight * 2 < limit)
+                return limit;
+            double gradient = Math.max(0.5, Math.min(1.0, (double) minRtt / Math.max(1, rttNanos)));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            return limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        }
+
+        long getMinRtt() {
+            return minRtt;
+        }
+    }
+
+    /**
+     * 某一时刻的 limit 和计数
+     */
+    public static final class Stats {
+        private final String name;
+        private final int limit;
+        private final int inFlight;
+        private final int waiting;
+        private final long accepted;
+        private final long queued;
+        private final long rejected;
+        private final long dropped;
+
+        Stats(String name, int limit, int inFlight, int waiting, long accepted, long queued, long rejected, long dropped) {
+            this.name = name;
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.waiting = waiting;
+            this.accepted = accepted;
+            this.queued = queued;
+            this.rejected = rejected;
+            this.dropped = dropped;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * 正在排队的请求数
+         */
+        public int getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * 获得名额开始执行的请求数，包括排队后才开始的
+         */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        /**
+         * 曾经排队的请求数
+         */
+        public long getQueued() {
+            return queued;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * 失败（包括超时）的请求数
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: limit=%d, inFlight=%d, waiting=%d, accepted=%d, queued=%d, rejected=%d, dropped=%d",
+                    name, limit, inFlight, waiting, accepted, queued, rejected, dropped);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.mcd.java8.completableFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 每个商店的自适应并发上限：拒绝、排队、limit 的调整，以及对共享线程池的隔离
+ */
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void rejectsAndQueuesExcess() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.aimd("shop", 2, 2, 2, 1, TimeUnit.SECONDS, 0.9).maxQueue(1);
+        CompletableFuture<Double> first = new CompletableFuture<>();
+        CompletableFuture<Double> second = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        limiter.submit(() -> second);
+        boolean[] started = new boolean[1];
+        CompletableFuture<Double> queued = limiter.submit(() -> {
+            started[0] = true;
+            return CompletableFuture.completedFuture(3d);
+        });
+        CompletableFuture<Double> rejected = limiter.submit(() -> CompletableFuture.completedFuture(4d));
+
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.join();
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        }
+        assertFalse(started[0]);
+        assertEquals(1, limiter.stats().getWaiting());
+
+        first.complete(1d);//空出一个名额，排队的请求开始执行
+        assertEquals(3d, queued.join(), 0d);
+        ConcurrencyLimiter.Stats stats = limiter.stats();
+        System.out.println(stats);
+        assertEquals(3, stats.getAccepted());
+        assertEquals(1, stats.getQueued());
+        assertEquals(1, stats.getRejected());
+        assertEquals(1, stats.getInFlight());
+    }
+
+    /**
+     * 排队的请求都立即完成时，release 在同一个线程中逐个放行，调用栈的深度不随队列长度增长
+     */
+    @Test
+    public void drainsCompletedCallsWithoutRecursion() {
+        int n = 100_000;
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.aimd("shop", 1, 1, 1, 1, TimeUnit.SECONDS, 0.9).maxQueue(n);
+        CompletableFuture<Double> first = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        List<CompletableFuture<Double>> queued = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            queued.add(limiter.submit(() -> CompletableFuture.completedFuture(1d)));
+
+        first.complete(0d);
+        for (CompletableFuture<Double> future : queued)
+            assertEquals(1d, future.join(), 0d);
+        assertEquals(0, limiter.stats().getInFlight());
+        assertEquals(0, limiter.stats().getWaiting());
+    }
+
+    @Test
+    public void aimdBacksOffOnSlowAndFailedCalls() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.aimd("shop", 20, 1, 100, 50, TimeUnit.MILLISECONDS, 0.5);
+        limiter.submit(() -> after(100, 1d)).join();
+        assertEquals(10, limiter.getLimit());
+        CompletableFuture<Double> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("offline"));
+        limiter.submit(() -> failed).handle((v, ex) -> v).join();
+        assertEquals(5, limiter.getLimit());
+        assertEquals(1, limiter.stats().getDropped());
+
+        //低负载（进行中的请求少于 limit 的一半）时不增长
+        for (int i = 0; i < 10; i++)
+            limiter.submit(() -> CompletableFuture.completedFuture(1d)).join();
+        assertEquals(5, limiter.getLimit());
+    }
+
+    /**
+     * 下游延迟翻倍后 gradient 减小 limit，恢复后 limit 再增长
+     */
+    @Test
+    public void gradientFollowsLatency() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.gradient("shop", 20, 1, 200);
+        int healthy = drive(limiter, 10, 30);
+        int degraded = drive(limiter, 40, 30);
+        int recovered = drive(limiter, 10, 30);
+        System.out.println("limit: healthy " + healthy + ", degraded " + degraded + ", recovered " + recovered);
+        assertTrue(degraded < healthy);
+        assertTrue(recovered > degraded);
+    }
+
+    /**
+     * 延迟持续翻两番、经过多个窗口：基线只缓慢上移，limit 一直保持在很低的水平，而不是在下一次窗口结束时被放开
+     */
+    @Test
+    public void gradientBaselineSurvivesSustainedSlowdown() {
+        ConcurrencyLimiter.Gradient gradient = new ConcurrencyLimiter.Gradient(ConcurrencyLimiter.PROBE_INTERVAL);
+        long healthyRtt = TimeUnit.MILLISECONDS.toNanos(10), slowRtt = TimeUnit.MILLISECONDS.toNanos(40);
+        double limit = 20;
+        for (int i = 0; i < 3 * ConcurrencyLimiter.PROBE_INTERVAL; i++)
+            limit = Math.min(200, gradient.update(limit, healthyRtt, (int) limit, false));
+        assertEquals(200, limit, 0d);
+
+        double maxDegraded = 0;
+        for (int i = 0; i < 5 * ConcurrencyLimiter.PROBE_INTERVAL; i++) {
+            limit = Math.max(1, gradient.update(limit, slowRtt, (int) limit, false));
+            if (i >= ConcurrencyLimiter.PROBE_INTERVAL / 2)//前半个窗口 limit 还在从 200 下降
+                maxDegraded = Math.max(maxDegraded, limit);
+        }
+        System.out.printf("degraded: limit <= %.1f, baseline %d ms%n", maxDegraded, TimeUnit.NANOSECONDS.toMillis(gradient.getMinRtt()));
+        assertTrue(maxDegraded < 10);
+        assertTrue(gradient.getMinRtt() < slowRtt * 3 / 4);//5 个窗口后基线约 10 + 30 * (1 - 0.9^5) ≈ 22ms
+
+        //一个更快的样本立即拉低基线
+        gradient.update(limit, healthyRtt, (int) limit, false);
+        assertEquals(healthyRtt, gradient.getMinRtt());
+    }
+
+    /**
+     * 10 个商店共享 20 个线程，其中一个商店每次报价 500ms，其余 10ms。
+     * 不限流时慢商店的请求占满线程池，快商店的报价也要排队；限流后慢商店最多占用几个线程，多余的请求立即被拒绝
+     */
+    @Test
+    public void isolatesDegradedShop() throws InterruptedException {
+        ExecutorService unlimitedPool = ShopExecutors.boundedPlatform(20);
+        ExecutorService limitedPool = ShopExecutors.boundedPlatform(20);//各用一个线程池，不受上一轮积压的任务影响
+        try {
+            long plain = fastShopLatency(shops(unlimitedPool), (shop, product) -> CompletableFuture.supplyAsync(() -> shop.getPrice(product), unlimitedPool));
+
+            ShopLimiters limiters = new ShopLimiters(name -> ConcurrencyLimiter.aimd(name, 4, 1, 20, 100, TimeUnit.MILLISECONDS, 0.5));
+            long limited = fastShopLatency(shops(limitedPool), (shop, product) -> limiters.getPrice(shop, product, limitedPool));
+
+            System.out.println("fast shop p90 latency: unlimited " + plain + " msecs, limited " + limited + " msecs");
+            limiters.stats().values().forEach(System.out::println);
+            ConcurrencyLimiter.Stats slow = limiters.stats().get("SlowShop");
+            assertTrue(slow.getRejected() > 0);
+            assertTrue(slow.getLimit() < 4);
+            assertTrue(limited < plain / 2);
+        } finally {
+            unlimitedPool.shutdownNow();
+            limitedPool.shutdownNow();
+        }
+    }
+
+    private static List<Shop> shops(ExecutorService executor) {
+        List<Shop> shops = new ArrayList<>();
+        shops.add(new Shop("SlowShop", executor, 500));
+        for (int i = 0; i < 9; i++)
+            shops.add(new Shop("Shop" + i, executor, 10));
+        return shops;
+    }
+
+    /**
+     * 每 5ms 向所有商店各发一个请求，持续 1s，返回快商店报价延迟的 p90（毫秒）
+     */
+    private static long fastShopLatency(List<Shop> shops, BiFunction<Shop, String, CompletableFuture<Double>> query) throws InterruptedException {
+        List<CompletableFuture<Long>> latencies = new ArrayList<>();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (System.nanoTime() < end) {
+            for (Shop shop : shops) {
+                long start = System.nanoTime();
+                CompletableFuture<Long> latency = query.apply(shop, "myPhone27S").handle((price, ex) -> (System.nanoTime() - start) / 1_000_000);
+                if (!shop.getName().equals("SlowShop"))
+                    latencies.add(latency);
+            }
+            Thread.sleep(5);
+        }
+        long[] sorted = latencies.stream().mapToLong(CompletableFuture::join).sorted().toArray();
+        return sorted[(int) (sorted.length * 0.9)];
+    }
+
+    /**
+     * 以 concurrency 个并发请求、每个 latencyMillis 的延迟驱动 rounds 轮，返回最终的 limit
+     */
+    private static int drive(ConcurrencyLimiter limiter, long latencyMillis, int rounds) {
+        for (int r = 0; r < rounds; r++) {
+            int concurrency = limiter.getLimit();
+            CompletableFuture<?>[] calls = new CompletableFuture<?>[concurrency];
+            for (int i = 0; i < concurrency; i++)
+                calls[i] = limiter.submit(() -> after(latencyMillis, 1d)).handle((v, ex) -> v);
+            CompletableFuture.allOf(calls).join();
+        }
+        return limiter.getLimit();
+    }
+
+    private static <T> CompletableFuture<T> after(long millis, T value) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Deadlines.scheduler().schedule(() -> future.complete(value), millis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+}
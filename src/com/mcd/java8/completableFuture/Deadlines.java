@@ -0,0 +1,84 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Java 8 风格的 CompletableFuture 超时
+ * <p>
+ * Java 9 才有 orTimeout / completeOnTimeout。这里用一个共享的定时器在截止时间到达时让返回的 Future 以 TimeoutException 失败，
+ * 原来的 Future 先完成时取消定时任务（removeOnCancelPolicy 保证取消的任务立即从队列中移除，大量短请求不会堆积）
+ */
+public final class Deadlines {
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private Deadlines() {
+    }
+
+    /**
+     * 共享的定时器，只用于完成 Future 和发起对冲请求，不能在其中执行阻塞操作
+     */
+    public static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+
+    /**
+     * 与 future 的结果相同，但超过 timeout 仍未完成时以 TimeoutException 失败
+     *
+     * @param future
+     * @param timeout
+     * @param unit
+     * @return 新的 Future，future 本身不受影响
+     */
+    public static <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        return within(future, timeout, unit, SCHEDULER);
+    }
+
+    public static <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeout, TimeUnit unit, ScheduledExecutorService scheduler) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (future.isDone()) {
+            forward(future, result);
+            return result;
+        }
+        ScheduledFuture<?> timer = scheduler.schedule(
+                () -> result.completeExceptionally(new TimeoutException("timed out after " + unit.toMillis(timeout) + " ms")),
+                timeout, unit);
+        future.whenComplete((value, ex) -> {
+            timer.cancel(false);
+            if (ex == null)
+                result.complete(value);
+            else
+                result.completeExceptionally(ex);
+        });
+        return result;
+    }
+
+    /**
+     * 超过 timeout 仍未完成时以 defaultValue 完成
+     */
+    public static <T> CompletableFuture<T> orDefault(CompletableFuture<T> future, T defaultValue, long timeout, TimeUnit unit) {
+        return within(future, timeout, unit).handle((value, ex) -> ex == null ? value : defaultValue);
+    }
+
+    private static <T> void forward(CompletableFuture<T> from, CompletableFuture<T> to) {
+        from.whenComplete((value, ex) -> {
+            if (ex == null)
+                to.complete(value);
+            else
+                to.completeExceptionally(ex);
+        });
+    }
+}
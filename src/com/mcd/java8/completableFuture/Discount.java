@@ -0,0 +1,66 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟的折扣服务：根据报价中的折扣码计算折后价格，与 Shop 一样是有延迟的远程调用
+ */
+public final class Discount {
+
+    public enum Code {
+        NONE(0), SILVER(5), GOLD(10), PLATINUM(15), DIAMOND(20);
+
+        private final int percentage;
+
+        Code(int percentage) {
+            this.percentage = percentage;
+        }
+
+        public int getPercentage() {
+            return percentage;
+        }
+    }
+
+    private final ShopProfile profile;
+    private final AtomicLong calls = new AtomicLong();
+
+    /**
+     * 每次调用固定 1s 延迟
+     */
+    public Discount() {
+        this(ShopProfile.constant(1000));
+    }
+
+    /**
+     * @param profile 折扣服务的延迟和失败率
+     */
+    public Discount(ShopProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * 阻塞调用，折后价格保留两位小数
+     *
+     * @param price
+     * @param code
+     * @return
+     */
+    public double apply(double price, Code code) {
+        profile.simulate("Discount", calls.getAndIncrement());
+        return Math.round(price * (100 - code.percentage)) / 100d;
+    }
+
+    /**
+     * 对报价应用折扣，返回与 MyTest.findPrices 相同格式的描述
+     *
+     * @param quote
+     * @return
+     */
+    public String applyDiscount(Quote quote) {
+        return describe(quote, apply(quote.getPrice(), quote.getDiscountCode()));
+    }
+
+    static String describe(Quote quote, double discounted) {
+        return String.format("%s price is %.2f", quote.getShopName(), discounted);
+    }
+}
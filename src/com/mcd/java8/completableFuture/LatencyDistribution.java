@@ -0,0 +1,91 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.Random;
+
+/**
+ * 模拟的报价延迟分布（毫秒），见 ShopProfile
+ * <p>
+ * 真实服务的延迟很少是常数：大多数请求集中在中位数附近，右侧有长尾（对数正态），
+ * 还会因为 GC、重试、缓存未命中等偶尔出现比平时慢一两个数量级的尖峰（bimodal）。
+ * 对冲请求、截止时间、并发限制等尾延迟手段只有在这样的分布下才能看出效果
+ */
+public abstract class LatencyDistribution {
+
+    private final String description;
+
+    LatencyDistribution(String description) {
+        this.description = description;
+    }
+
+    /**
+     * 抽取一个延迟，不小于 0
+     *
+     * @param random 由调用方提供，保证同样的种子得到同样的序列
+     * @return 毫秒
+     */
+    public abstract double sample(Random random);
+
+    public static LatencyDistribution constant(double millis) {
+        checkNonNegative(millis);
+        return new LatencyDistribution("constant(" + millis + "ms)") {
+            @Override
+            public double sample(Random random) {
+                return millis;
+            }
+        };
+    }
+
+    /**
+     * [minMillis, maxMillis) 上的均匀分布
+     */
+    public static LatencyDistribution uniform(double minMillis, double maxMillis) {
+        checkNonNegative(minMillis);
+        if (maxMillis < minMillis)
+            throw new IllegalArgumentException("max < min");
+        return new LatencyDistribution("uniform(" + minMillis + "ms, " + maxMillis + "ms)") {
+            @Override
+            public double sample(Random random) {
+                return minMillis + random.nextDouble() * (maxMillis - minMillis);
+            }
+        };
+    }
+
+    /**
+     * 对数正态分布：ln(延迟) 服从均值为 ln(medianMillis)、标准差为 sigma 的正态分布。
+     * 第 p 百分位数为 medianMillis * exp(sigma * z(p))，例如 sigma = 0.5 时 p99 约为中位数的 3.2 倍
+     */
+    public static LatencyDistribution logNormal(double medianMillis, double sigma) {
+        if (medianMillis <= 0 || sigma < 0)
+            throw new IllegalArgumentException("median must be positive and sigma non-negative");
+        return new LatencyDistribution("logNormal(median=" + medianMillis + "ms, sigma=" + sigma + ")") {
+            @Override
+            public double sample(Random random) {
+                return medianMillis * Math.exp(sigma * random.nextGaussian());
+            }
+        };
+    }
+
+    /**
+     * 双峰分布：以 spikeProbability 的概率从 spike 中抽取，否则从 base 中抽取
+     */
+    public static LatencyDistribution bimodal(LatencyDistribution base, double spikeProbability, LatencyDistribution spike) {
+        if (spikeProbability < 0 || spikeProbability > 1)
+            throw new IllegalArgumentException("spike probability must be in [0, 1]");
+        return new LatencyDistribution("bimodal(" + base + ", " + spikeProbability + " -> " + spike + ")") {
+            @Override
+            public double sample(Random random) {
+                return random.nextDouble() < spikeProbability ? spike.sample(random) : base.sample(random);
+            }
+        };
+    }
+
+    private static void checkNonNegative(double millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException("latency must not be negative: " + millis);
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
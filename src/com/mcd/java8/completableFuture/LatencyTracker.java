@@ -0,0 +1,51 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.Arrays;
+
+/**
+ * 最近 capacity 次调用的延迟（纳秒），用于计算百分位数。
+ * 环形缓冲区只保留最近的样本，后端变慢或变快时百分位数会随之变化
+ */
+public final class LatencyTracker {
+
+    private final long[] samples;
+    private int next;
+    private long count;
+
+    public LatencyTracker(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count++;
+    }
+
+    /**
+     * 当前保留的样本数
+     */
+    public synchronized int size() {
+        return (int) Math.min(count, samples.length);
+    }
+
+    /**
+     * 百分位数（最近秩法），没有样本时返回 -1
+     *
+     * @param p 0 ~ 100
+     * @return
+     */
+    public long percentile(double p) {
+        long[] copy;
+        synchronized (this) {
+            copy = Arrays.copyOf(samples, size());
+        }
+        if (copy.length == 0)
+            return -1;
+        Arrays.sort(copy);
+        int rank = (int) Math.ceil(p / 100 * copy.length);
+        return copy[Math.max(0, Math.min(copy.length, rank) - 1)];
+    }
+}
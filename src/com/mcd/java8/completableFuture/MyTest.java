@@ -1,12 +1,14 @@
 package com.mcd.java8.completableFuture;
 
+import com.mcd.java8.parallel.ForkJoinPoolRegistry;
+import org.junit.AfterClass;
 import org.junit.Test;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class MyTest {
@@ -21,15 +23,16 @@ public class MyTest {
 
     /**
      * 创建一个线程池
+     * 线程数不再按数据量一次性确定为 Math.min(shops.size(), 400)，而是由 AdaptiveExecutor 按下面推导的等待/计算比和实际的到达速度在运行时调整，
+     * 上限仍为 400，线程都是守护线程 —— 这种方式不会阻止程序的关停。
+     * JUnit 为每个测试方法创建一个 MyTest 实例，所以线程池是静态的，所有测试共用一个，结束后在 shutdownExecutor 中关闭
      */
-    private final Executor executor = Executors.newFixedThreadPool(Math.min(shops.size(), 400), new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable runnable) {
-            Thread thread = new Thread(runnable);
-            thread.setDaemon(true); //使用守护线程 —— 这种方式不会阻止程序的关停
-            return thread;
-        }
-    });
+    private static final ExecutorService executor = new AdaptiveExecutor(Runtime.getRuntime().availableProcessors(), 400);
+
+    /**
+     * 每个商店的并发上限，报价超过 2s（正常为 1s）时减小，见 findPricesAsyncWithLimits
+     */
+    private final ShopLimiters limiters = new ShopLimiters(name -> ConcurrencyLimiter.aimd(name, 10, 1, 100, 2, TimeUnit.SECONDS, 0.9));
 
     {
         // https://blog.csdn.net/lijw_csdn/article/details/80528636
@@ -39,6 +42,11 @@ public class MyTest {
 //        }
     }
 
+    @AfterClass
+    public static void shutdownExecutor() {
+        executor.shutdown();
+    }
+
     public void test1() {
 
     }
@@ -127,6 +135,13 @@ public class MyTest {
         duration = (System.nanoTime() - start) / 1_000_000;
         System.out.println("Async With Executor Done in " + duration + " msecs");//1003
         /* 这个就腻害了，只要数据量少于阈值，一直都会保持最多线程以最快的速度处理 */
+        /* 换成 AdaptiveExecutor 后，第一个调整周期（200ms）内只有处理器数个线程，之后按积压的任务增长到与商店数相同，所以多出一个周期左右 */
+
+        start = System.nanoTime();
+        System.out.println(findPricesAsyncWithLimits("myPhone27S"));
+        duration = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Async With Limits Done in " + duration + " msecs");
+        System.out.println(limiters.stats().values());
     }
 
 
@@ -154,6 +169,17 @@ public class MyTest {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 在独立的 "price" 线程池中执行 findPricesParallel，查询商店的阻塞调用不再占用公共线程池，也就不会拖慢其他并行流
+     *
+     * @param product
+     * @return
+     */
+    public List<String> findPricesParallelInPool(String product) {
+        ForkJoinPoolRegistry.register("price", Math.min(shops.size(), 400));
+        return ForkJoinPoolRegistry.run("price", () -> findPricesParallel(product));
+    }
+
     /**
      * 这种写法是 不正确的 ！！！
      * 使用 CompletableFuture 发起异步请求
@@ -186,6 +212,55 @@ public class MyTest {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 通过每个商店自己的执行器（Shop.getPriceAsync）并发查询，不占用公共线程池，见 ShopExecutors
+     *
+     * @param shops
+     * @param product
+     * @return
+     */
+    public static List<String> findPricesAsync(List<Shop> shops, String product) {
+        List<CompletableFuture<String>> priceFutures = shops.stream()
+                .map(shop -> shop.getPriceAsync(product).thenApply(price -> String.format("%s price is %.2f", shop.getName(), price)))
+                .collect(Collectors.toList());
+        return priceFutures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 最多等待 deadlineMillis，到期时返回已经得到的报价，没有回应的商店标记为超时，见 PriceFanOut
+     *
+     * @param shops
+     * @param product
+     * @param deadlineMillis
+     * @return
+     */
+    public static List<String> findPricesWithDeadline(List<Shop> shops, String product, long deadlineMillis) {
+        return new PriceFanOut().deadline(deadlineMillis, TimeUnit.MILLISECONDS)
+                .search(shops, product).join()
+                .getQuotes().stream()
+                .map(PriceQuote::toString)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 为整个商品目录报价：每个商店只有一次往返（Shop.getPricesAsync），而不是每个商品一次
+     *
+     * @param shops
+     * @param products
+     * @return 商店名称 → (商品 → 价格)
+     */
+    public static Map<String, Map<String, Double>> findCatalogPrices(List<Shop> shops, List<String> products) {
+        List<CompletableFuture<Map<String, Double>>> replies = shops.stream()
+                .map(shop -> shop.getPricesAsync(products))
+                .collect(Collectors.toList());
+        Map<String, Map<String, Double>> prices = new LinkedHashMap<>();
+        for (int i = 0; i < shops.size(); i++)
+            prices.put(shops.get(i).getName(), replies.get(i).join());
+        return prices;
+    }
+
     /**
      * 使用 CompletableFuture 发起异步请求 （自定义数量线程池）
      * @param product
@@ -201,4 +276,78 @@ public class MyTest {
                 .map(CompletableFuture::join)
                 .collect(Collectors.toList());
     }
+
+    /**
+     * 与 findPricesAsyncWithExecutor 相同，但每个商店受 ShopLimiters 的并发上限约束：
+     * 变慢的商店最多占用 limit 个线程，超出的请求立即被拒绝，不会占满共享的线程池
+     *
+     * @param product
+     * @return
+     */
+    public List<String> findPricesAsyncWithLimits(String product) {
+        List<CompletableFuture<String>> priceFutures = shops.stream()
+                .map(shop -> limiters.getPrice(shop, product, executor)
+                        .handle((price, ex) -> ex == null
+                                ? String.format("%s price is %.2f", shop.getName(), price)
+                                : String.format("%s unavailable (%s)", shop.getName(), ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage())))
+                .collect(Collectors.toList());
+        return priceFutures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * count 个模拟商店，用于尾延迟实验：每 10 个中有一个处于降级状态（中位数 200ms，5% 的请求有 2s 的尖峰，2% 失败），
+     * 其余为 ShopProfile.realistic()。每个商店的种子由 seed 和序号决定，同样的参数得到同样的行为
+     *
+     * @param count
+     * @param executor
+     * @param seed
+     * @return
+     */
+    public static List<Shop> simulatedShops(int count, Executor executor, long seed) {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ShopProfile profile = i % 10 == 9
+                    ? new ShopProfile(LatencyDistribution.bimodal(LatencyDistribution.logNormal(200, 0.5), 0.05, LatencyDistribution.constant(2_000)))
+                    .errorRate(0.02)
+                    : ShopProfile.realistic();
+            shops.add(new Shop("Shop" + i, executor, profile.seed(seed + i)));
+        }
+        return shops;
+    }
+
+    /**
+     * 顺序执行 报价 → 解析 → 折扣，与 findPrices 一样一个商店接一个商店，每个商店要付出两次远程调用的延迟
+     *
+     * @param shops
+     * @param product
+     * @param discount
+     * @return
+     */
+    public static List<String> findDiscountedPrices(List<Shop> shops, String product, Discount discount) {
+        return shops.stream()
+                .map(shop -> shop.getQuote(product))
+                .map(Quote::parse)
+                .map(discount::applyDiscount)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 每个商店的整条链路作为一个任务在 executor 中执行，商店之间并发，但一个线程要依次等完报价和折扣，见 QuotePipeline
+     *
+     * @param shops
+     * @param product
+     * @param discount
+     * @param executor
+     * @return
+     */
+    public static List<String> findDiscountedPricesAsync(List<Shop> shops, String product, Discount discount, Executor executor) {
+        List<CompletableFuture<String>> priceFutures = shops.stream()
+                .map(shop -> CompletableFuture.supplyAsync(() -> discount.applyDiscount(Quote.parse(shop.getQuote(product))), executor))
+                .collect(Collectors.toList());
+        return priceFutures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,173 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 客户端批量报价：把单个商品的报价请求攒成一批，通过 Shop.getPricesAsync 一次往返发出
+ * <p>
+ * 每次 getPrice 都要付出一次完整的 Shop.delay()，大批量的目录报价时几乎全部时间都花在往返上。
+ * 这里收到一个批次的第一个请求后开始计时，满 window 或者攒够 maxBatchSize 个不同的商品时（以先到者为准）发出整批请求，
+ * 批量结果返回后逐个完成各自的 CompletableFuture。同一批次中重复的商品共享同一个 Future
+ * <p>
+ * 每个 PriceBatcher 对应一个商店
+ */
+public final class PriceBatcher implements AutoCloseable {
+
+    private final Shop shop;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+
+    private LinkedHashMap<String, CompletableFuture<Double>> pending = new LinkedHashMap<>();//当前批次，受 this 保护
+    private ScheduledFuture<?> timer;//当前批次的定时发送
+    private boolean closed;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder items = new LongAdder();
+
+    /**
+     * 使用内部的单线程定时器，close 时关闭
+     */
+    public PriceBatcher(Shop shop, long window, TimeUnit unit, int maxBatchSize) {
+        this(shop, window, unit, maxBatchSize, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "price-batcher-" + shop.getName());
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * @param shop
+     * @param window       批次从第一个请求开始最多等待的时间
+     * @param unit
+     * @param maxBatchSize 一个批次最多包含的不同商品数
+     * @param scheduler    用于定时发送，可以在多个 PriceBatcher 间共享
+     */
+    public PriceBatcher(Shop shop, long window, TimeUnit unit, int maxBatchSize, ScheduledExecutorService scheduler) {
+        this(shop, window, unit, maxBatchSize, scheduler, false);
+    }
+
+    private PriceBatcher(Shop shop, long window, TimeUnit unit, int maxBatchSize, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        if (window < 0 || maxBatchSize < 1)
+            throw new IllegalArgumentException("window must be >= 0 and maxBatchSize >= 1");
+        this.shop = shop;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * 加入当前批次，批量结果返回后完成
+     *
+     * @param product
+     * @return
+     */
+    public CompletableFuture<Double> getPrice(String product) {
+        requests.increment();
+        Map<String, CompletableFuture<Double>> full = null;
+        CompletableFuture<Double> future;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("batcher is closed");
+            future = pending.get(product);
+            if (future != null)
+                return future.thenApply(Function.identity());//返回副本，调用方无法完成或取消同一批次中共享的 Future
+            future = new CompletableFuture<>();
+            pending.put(product, future);
+            if (pending.size() >= maxBatchSize)
+                full = takeBatch();
+            else if (pending.size() == 1)
+                timer = scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+        if (full != null)
+            send(full);
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * 立即发送当前批次
+     */
+    public void flush() {
+        Map<String, CompletableFuture<Double>> batch;
+        synchronized (this) {
+            batch = takeBatch();
+        }
+        send(batch);
+    }
+
+    private Map<String, CompletableFuture<Double>> takeBatch() {
+        Map<String, CompletableFuture<Double>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        return batch;
+    }
+
+    private void send(Map<String, CompletableFuture<Double>> batch) {
+        if (batch.isEmpty())
+            return;
+        batches.increment();
+        items.add(batch.size());
+        CompletableFuture<Map<String, Double>> reply;
+        try {
+            reply = shop.getPricesAsync(new ArrayList<>(batch.keySet()));
+        } catch (RuntimeException ex) {
+            batch.values().forEach(future -> future.completeExceptionally(ex));
+            return;
+        }
+        reply.whenComplete((prices, ex) -> batch.forEach((product, future) -> {
+            if (ex != null)
+                future.completeExceptionally(ex);
+            else if (prices.containsKey(product))
+                future.complete(prices.get(product));
+            else
+                future.completeExceptionally(new IllegalStateException(shop.getName() + " returned no price for " + product));
+        }));
+    }
+
+    /**
+     * 发送剩余的请求并停止接收新的请求
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        if (ownsScheduler)
+            scheduler.shutdown();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) items.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PriceBatcher{shop=%s, requests=%d, batches=%d, averageBatchSize=%.1f}",
+                shop.getName(), getRequests(), getBatches(), getAverageBatchSize());
+    }
+}
@@ -0,0 +1,78 @@
+package com.mcd.java8.completableFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 批量报价：与逐个报价的耗时对比
+ */
+public class PriceBatcherTest {
+
+    private static final long DELAY_MILLIS = 100;
+
+    private final ExecutorService executor = ShopExecutors.virtualOrBounded(ShopExecutors.DEFAULT_MAX_THREADS);
+    private final Shop shop = new Shop("BestPrice", executor, DELAY_MILLIS);
+    private final List<String> catalog = IntStream.range(0, 2_000).mapToObj(i -> "product" + i).collect(Collectors.toList());
+
+    @Test
+    public void batchedVersusIndividual() {
+        long start = System.nanoTime();
+        List<CompletableFuture<Double>> individual = catalog.stream().map(shop::getPriceAsync).collect(Collectors.toList());
+        individual.forEach(CompletableFuture::join);
+        long individualMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Individual quotes done in " + individualMillis + " msecs");
+
+        try (PriceBatcher batcher = new PriceBatcher(shop, 1, TimeUnit.SECONDS, 500)) {
+            start = System.nanoTime();
+            List<CompletableFuture<Double>> batched = catalog.stream().map(batcher::getPrice).collect(Collectors.toList());
+            batched.forEach(CompletableFuture::join);
+            long batchedMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("Batched quotes done in " + batchedMillis + " msecs, " + batcher);
+            assertEquals(4, batcher.getBatches());//窗口足够长，每攒够 500 个不同的商品发送一批
+            assertTrue(batchedMillis < individualMillis);
+        }
+    }
+
+    @Test
+    public void windowAndDuplicates() {
+        try (PriceBatcher batcher = new PriceBatcher(shop, 20, TimeUnit.MILLISECONDS, 1_000)) {
+            CompletableFuture<Double> first = batcher.getPrice("myPhone27S");
+            CompletableFuture<Double> duplicate = batcher.getPrice("myPhone27S");
+            CompletableFuture<Double> other = batcher.getPrice("myPad");
+            CompletableFuture<Double> cancelled = batcher.getPrice("myPhone27S");
+            assertNotSame(first, duplicate);
+            cancelled.cancel(false);//只取消这个调用方自己的副本
+            //不足 maxBatchSize，等待窗口到期后发送
+            assertEquals(first.join(), duplicate.join());
+            other.join();
+            assertEquals(1, batcher.getBatches());
+            assertEquals(2, batcher.getAverageBatchSize(), 0);
+        }
+    }
+
+    @Test
+    public void catalogPrices() {
+        List<Shop> shops = new ArrayList<>();
+        for (String name : Arrays.asList("BestPrice", "LetsSaveBig", "MyFavoriteShop", "ButItAll"))
+            shops.add(new Shop(name, executor, DELAY_MILLIS));
+        long start = System.nanoTime();
+        Map<String, Map<String, Double>> prices = MyTest.findCatalogPrices(shops, catalog);
+        System.out.println("Catalog of " + catalog.size() + " products from " + shops.size() + " shops done in "
+                + (System.nanoTime() - start) / 1_000_000 + " msecs");
+        assertEquals(shops.size(), prices.size());
+        prices.values().forEach(shopPrices -> assertEquals(catalog.size(), shopPrices.size()));
+    }
+}
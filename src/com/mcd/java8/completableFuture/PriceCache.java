@@ -0,0 +1,320 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Shop 之前的报价缓存：按 (商店, 商品) 缓存价格，带过期时间和容量上限，并发的相同请求只调用一次后端（single-flight）
+ * <p>
+ * 每次 Shop.getPrice 都要付出完整的 delay()，而同一商品的查询往往成批到达：
+ * 1、命中且未过期时直接返回已完成的 CompletableFuture
+ * 2、未命中时，第一个请求登记一个进行中的 CompletableFuture 并调用后端，之后同一个键的请求共享它（计入 coalesced），
+ * 一批 N 个相同的请求只产生一次后端调用。后端成功时先写入缓存再撤销登记，中间不会出现重复加载；失败的结果不缓存
+ * 3、容量淘汰使用分段 LRU（SLRU）：新条目进入试用段（probation），在试用段中再次命中才晋升到保护段（protected），
+ * 保护段满时把最久未使用的条目降回试用段，淘汰总是发生在试用段的末尾。
+ * 只被查询一次的大批量扫描因此不会把反复查询的热门商品挤出缓存
+ * <p>
+ * 缓存的两个段共用一把锁，锁内只有 O(1) 的链表操作；后端调用和等待都在锁外
+ * <p>
+ * invalidate 同时撤销该键进行中的加载登记：已经在等待的调用方仍会拿到这次加载的结果，但结果不再写入缓存，
+ * 之后的请求会重新调用后端，不会读到失效之前发起的加载
+ */
+public final class PriceCache {
+
+    public static final double PROTECTED_RATIO = 0.8;
+
+    private final BiFunction<Shop, String, CompletableFuture<Double>> backend;
+    private final long ttlNanos;
+    private final int capacity;
+    private final int protectedCapacity;
+    private final LongSupplier clock;
+
+    //两个段都按访问顺序排列，迭代顺序的第一个就是最久未使用的
+    private final LinkedHashMap<Key, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, CompletableFuture<Double>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * 后端为 Shop.getPriceAsync
+     *
+     * @param capacity 最多缓存的条目数
+     * @param ttl      条目的有效期
+     * @param unit
+     */
+    public PriceCache(int capacity, long ttl, TimeUnit unit) {
+        this(Shop::getPriceAsync, capacity, ttl, unit, System::nanoTime);
+    }
+
+    PriceCache(BiFunction<Shop, String, CompletableFuture<Double>> backend, int capacity, long ttl, TimeUnit unit, LongSupplier clock) {
+        if (capacity < 1 || ttl <= 0)
+            throw new IllegalArgumentException("capacity and ttl must be positive");
+        this.backend = backend;
+        this.capacity = capacity;
+        this.protectedCapacity = (int) (capacity * PROTECTED_RATIO);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+    }
+
+    /**
+     * 查询价格，命中时返回已完成的 Future，否则返回（可能与其他调用方共享的）加载结果
+     *
+     * @param shop
+     * @param product
+     * @return
+     */
+    public CompletableFuture<Double> getPrice(Shop shop, String product) {
+        Key key = new Key(shop.getName(), product);
+        Double cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Double> promise = new CompletableFuture<>();
+        CompletableFuture<Double> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.thenApply(Function.identity());//返回副本，调用方无法完成或取消共享的 Future
+        }
+        //登记之前，其他线程可能刚刚加载完成并撤销了登记
+        cached = lookup(key);
+        if (cached != null) {
+            inFlight.remove(key, promise);
+            promise.complete(cached);
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.increment();
+        loads.increment();
+        CompletableFuture<Double> loading;
+        try {
+            loading = backend.apply(shop, product);
+        } catch (RuntimeException ex) {
+            loading = new CompletableFuture<>();
+            loading.completeExceptionally(ex);
+        }
+        loading.whenComplete((price, ex) -> {
+            Throwable failure = ex != null ? ex
+                    : price == null ? new NullPointerException("backend returned null for " + shop.getName() + "/" + product) : null;
+            //无论写入缓存是否出错都要撤销登记并完成 promise，否则之后这个键的请求都会合并到一个永远不完成的 Future 上
+            try {
+                if (failure == null)
+                    storeIfCurrent(key, promise, price);
+                else
+                    loadFailures.increment();
+            } finally {
+                inFlight.remove(key, promise);
+                if (failure == null)
+                    promise.complete(price);
+                else
+                    promise.completeExceptionally(failure);
+            }
+        });
+        return promise.thenApply(Function.identity());
+    }
+
+    public void invalidate(Shop shop, String product) {
+        Key key = new Key(shop.getName(), product);
+        synchronized (this) {
+            inFlight.remove(key);
+            if (probation.remove(key) == null)
+                protectedSegment.remove(key);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        inFlight.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    private synchronized Double lookup(Key key) {
+        long now = clock.getAsLong();
+        Entry entry = protectedSegment.get(key);//get 会把条目移到段的末尾（最近使用）
+        if (entry != null) {
+            if (expired(entry, now)) {
+                protectedSegment.remove(key);
+                expirations.increment();
+                return null;
+            }
+            return entry.price;
+        }
+        entry = probation.remove(key);
+        if (entry == null)
+            return null;
+        if (expired(entry, now)) {
+            expirations.increment();
+            return null;
+        }
+        //第二次命中，晋升到保护段
+        protectedSegment.put(key, entry);
+        if (protectedSegment.size() > protectedCapacity) {
+            Iterator<Map.Entry<Key, Entry>> eldest = protectedSegment.entrySet().iterator();
+            Map.Entry<Key, Entry> demoted = eldest.next();
+            eldest.remove();
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+        return entry.price;
+    }
+
+    /**
+     * 只有 promise 仍是该键登记的加载时才写入，加载期间调用过 invalidate 时丢弃结果
+     */
+    private synchronized void storeIfCurrent(Key key, CompletableFuture<Double> promise, double price) {
+        if (inFlight.get(key) == promise)
+            store(key, price);
+    }
+
+    private synchronized void store(Key key, double price) {
+        Entry entry = new Entry(price, clock.getAsLong() + ttlNanos);
+        if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, entry);
+            return;
+        }
+        probation.put(key, entry);
+        while (probation.size() + protectedSegment.size() > capacity) {
+            Iterator<Map.Entry<Key, Entry>> eldest = (probation.isEmpty() ? protectedSegment : probation).entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static boolean expired(Entry entry, long now) {
+        return now - entry.expiresAt >= 0;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), coalesced.sum(), loads.sum(), loadFailures.sum(),
+                evictions.sum(), expirations.sum(), size());
+    }
+
+    private static final class Key {
+        private final String shop;
+        private final String product;
+
+        Key(String shop, String product) {
+            this.shop = shop;
+            this.product = product;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return Objects.equals(shop, other.shop) && product.equals(other.product);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(shop) + product.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final double price;
+        private final long expiresAt;
+
+        Entry(double price, long expiresAt) {
+            this.price = price;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 计数器快照
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long coalesced;
+        private final long loads;
+        private final long loadFailures;
+        private final long evictions;
+        private final long expirations;
+        private final int size;
+
+        Stats(long hits, long misses, long coalesced, long loads, long loadFailures, long evictions, long expirations, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.coalesced = coalesced;
+            this.loads = loads;
+            this.loadFailures = loadFailures;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * 共享了进行中的加载、没有单独调用后端的请求数
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getLoads() {
+            return loads;
+        }
+
+        public long getLoadFailures() {
+            return loadFailures;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getExpirations() {
+            return expirations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * 没有调用后端的请求（命中 + 合并）占所有请求的比例
+         */
+        public double getHitRatio() {
+            long requests = hits + misses + coalesced;
+            return requests == 0 ? 0 : (double) (hits + coalesced) / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("PriceCache{hits=%d, misses=%d, coalesced=%d, loads=%d, failures=%d, evictions=%d, expirations=%d, size=%d, hitRatio=%.2f}",
+                    hits, misses, coalesced, loads, loadFailures, evictions, expirations, size, getHitRatio());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.mcd.java8.completableFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 报价缓存：single-flight 合并、过期、SLRU 淘汰和失败处理
+ */
+public class PriceCacheTest {
+
+    private final AtomicLong now = new AtomicLong();//可控的时钟（纳秒）
+    private final AtomicInteger backendCalls = new AtomicInteger();
+    private final List<CompletableFuture<Double>> pending = new ArrayList<>();
+    private final Shop shop = new Shop("BestPrice");
+
+    /**
+     * 后端调用不会立即完成，由测试决定何时返回
+     */
+    private PriceCache cache(int capacity) {
+        return new PriceCache((s, product) -> {
+            backendCalls.incrementAndGet();
+            CompletableFuture<Double> future = new CompletableFuture<>();
+            synchronized (pending) {
+                pending.add(future);
+            }
+            return future;
+        }, capacity, 10, TimeUnit.SECONDS, now::get);
+    }
+
+    /**
+     * 后端立即返回 product 的长度
+     */
+    private PriceCache immediateCache(int capacity) {
+        return new PriceCache((s, product) -> {
+            backendCalls.incrementAndGet();
+            return CompletableFuture.completedFuture((double) product.length());
+        }, capacity, 10, TimeUnit.SECONDS, now::get);
+    }
+
+    @Test
+    public void singleFlight() throws InterruptedException {
+        PriceCache cache = cache(100);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch go = new CountDownLatch(1);
+        List<CompletableFuture<CompletableFuture<Double>>> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            requests.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return cache.getPrice(shop, "myPhone27S");
+            }, executor));
+        go.countDown();
+        List<CompletableFuture<Double>> prices = new ArrayList<>();
+        for (CompletableFuture<CompletableFuture<Double>> request : requests)
+            prices.add(request.join());
+        executor.shutdown();
+
+        assertEquals(1, backendCalls.get());//100 个相同的请求只调用了一次后端
+        pending.get(0).complete(42d);
+        for (CompletableFuture<Double> price : prices)
+            assertEquals(42d, price.join(), 0d);
+
+        PriceCache.Stats stats = cache.stats();
+        assertEquals(1, stats.getMisses());
+        assertEquals(99, stats.getHits() + stats.getCoalesced());
+
+        assertEquals(42d, cache.getPrice(shop, "myPhone27S").join(), 0d);
+        assertEquals(1, backendCalls.get());
+        System.out.println(cache.stats());
+    }
+
+    @Test
+    public void expiry() {
+        PriceCache cache = immediateCache(100);
+        cache.getPrice(shop, "abc").join();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        cache.getPrice(shop, "abc").join();
+        assertEquals(1, backendCalls.get());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        cache.getPrice(shop, "abc").join();
+        assertEquals(2, backendCalls.get());
+        assertEquals(1, cache.stats().getExpirations());
+    }
+
+    @Test
+    public void segmentedLru() {
+        PriceCache cache = immediateCache(10);//保护段 8，试用段至少 2
+        for (int i = 0; i < 5; i++) {//5 个热门商品，各查询两次，晋升到保护段
+            cache.getPrice(shop, "hot" + i).join();
+            cache.getPrice(shop, "hot" + i).join();
+        }
+        for (int i = 0; i < 1_000; i++)//一次性扫描 1000 个商品
+            cache.getPrice(shop, "scan" + i).join();
+        assertEquals(1_005, backendCalls.get());
+        assertEquals(10, cache.size());
+        for (int i = 0; i < 5; i++)
+            cache.getPrice(shop, "hot" + i).join();
+        assertEquals(1_005, backendCalls.get());//热门商品都还在缓存中
+        assertEquals(995, cache.stats().getEvictions());
+        System.out.println(cache.stats());
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        PriceCache cache = cache(10);
+        CompletableFuture<Double> first = cache.getPrice(shop, "broken");
+        CompletableFuture<Double> second = cache.getPrice(shop, "broken");
+        pending.get(0).completeExceptionally(new IllegalStateException("shop offline"));
+        for (CompletableFuture<Double> future : Arrays.asList(first, second))
+            try {
+                future.join();
+                fail("expected failure");
+            } catch (CompletionException expected) {
+                assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+        cache.getPrice(shop, "broken");
+        assertEquals(2, backendCalls.get());
+        assertEquals(1, cache.stats().getLoadFailures());
+    }
+
+    /**
+     * 后端返回 null 时按失败处理，之后同一个键的请求重新加载，不会卡在永远不完成的登记上
+     */
+    @Test
+    public void nullPriceDoesNotWedgeKey() {
+        PriceCache cache = cache(10);
+        CompletableFuture<Double> first = cache.getPrice(shop, "null");
+        pending.get(0).complete(null);
+        try {
+            first.join();
+            fail("expected failure");
+        } catch (CompletionException expected) {
+            assertTrue(expected.getCause() instanceof NullPointerException);
+        }
+        CompletableFuture<Double> retry = cache.getPrice(shop, "null");
+        assertEquals(2, backendCalls.get());
+        pending.get(1).complete(7d);
+        assertEquals(7d, retry.join(), 0d);
+    }
+
+    /**
+     * 加载期间失效：等待中的调用方拿到旧结果，但旧结果不写入缓存，之后的请求重新加载
+     */
+    @Test
+    public void invalidateDuringLoad() {
+        PriceCache cache = cache(10);
+        CompletableFuture<Double> stale = cache.getPrice(shop, "myPhone27S");
+        cache.invalidate(shop, "myPhone27S");
+        CompletableFuture<Double> fresh = cache.getPrice(shop, "myPhone27S");
+        assertEquals(2, backendCalls.get());
+        pending.get(1).complete(2d);
+        pending.get(0).complete(1d);//旧的加载最后完成
+        assertEquals(1d, stale.join(), 0d);
+        assertEquals(2d, fresh.join(), 0d);
+        assertEquals(2d, cache.getPrice(shop, "myPhone27S").join(), 0d);
+        assertEquals(2, backendCalls.get());
+    }
+
+    /**
+     * 真实的 Shop：一批 1000 个相同的请求只等待一次 delay
+     */
+    @Test
+    public void burstAgainstShop() {
+        PriceCache cache = new PriceCache(1_000, 1, TimeUnit.MINUTES);
+        ExecutorService executor = ShopExecutors.virtualOrBounded(ShopExecutors.DEFAULT_MAX_THREADS);
+        try {
+            Shop slowShop = new Shop("LetsSaveBig", executor, 200);
+            long start = System.nanoTime();
+            List<CompletableFuture<Double>> burst = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++)
+                burst.add(cache.getPrice(slowShop, "myPhone27S"));
+            double first = burst.get(0).join();
+            for (CompletableFuture<Double> price : burst)
+                assertEquals(first, price.join(), 0d);
+            System.out.println("1000 identical quotes done in " + (System.nanoTime() - start) / 1_000_000 + " msecs, " + cache.stats());
+            assertEquals(1, cache.stats().getLoads());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
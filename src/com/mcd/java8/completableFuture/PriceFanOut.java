@@ -0,0 +1,288 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * 带截止时间和对冲请求的多商店报价
+ * <p>
+ * MyTest.findPricesAsync 会 join 每一个 Future，任何一个商店变慢，整个请求就跟着变慢。这里：
+ * 1、每个商店的截止时间（shopTimeout）：超时的商店记为 TIMED_OUT，不影响其他商店
+ * 2、整个请求的截止时间（deadline）：到期时立即返回已经得到的结果，其余商店记为 TIMED_OUT，结果标记为不完整
+ * 3、对冲请求（hedge）：一个商店在它最近延迟的 hedgePercentile 分位数时间内还没有回应，就再发一个相同的请求，取先回应的那个。
+ * 只有偶发的长尾请求会触发对冲，额外的负载约为 (100 - hedgePercentile)%，而 p99 延迟接近 “对冲延迟 + 正常延迟”
+ * <p>
+ * 每个商店的延迟由 LatencyTracker 记录，样本不足 MIN_HEDGE_SAMPLES 时不对冲
+ */
+public final class PriceFanOut {
+
+    static final int MIN_HEDGE_SAMPLES = 20;
+    private static final int TRACKER_CAPACITY = 1_000;
+
+    private final BiFunction<Shop, String, CompletableFuture<Double>> backend;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, LatencyTracker> trackers = new ConcurrentHashMap<>();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private long shopTimeoutNanos;//0 表示不限制
+    private long deadlineNanos;
+    private double hedgePercentile = Double.NaN;//NaN 表示不对冲
+    private long minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 后端为 Shop.getPriceAsync
+     */
+    public PriceFanOut() {
+        this(Shop::getPriceAsync);
+    }
+
+    /**
+     * @param backend 例如 PriceCache::getPrice
+     */
+    public PriceFanOut(BiFunction<Shop, String, CompletableFuture<Double>> backend) {
+        this(backend, Deadlines.scheduler());
+    }
+
+    public PriceFanOut(BiFunction<Shop, String, CompletableFuture<Double>> backend, ScheduledExecutorService scheduler) {
+        this.backend = backend;
+        this.scheduler = scheduler;
+    }
+
+    public PriceFanOut shopTimeout(long timeout, TimeUnit unit) {
+        this.shopTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    public PriceFanOut deadline(long deadline, TimeUnit unit) {
+        this.deadlineNanos = unit.toNanos(deadline);
+        return this;
+    }
+
+    /**
+     * 开启对冲
+     *
+     * @param percentile 等待该商店最近延迟的这个分位数之后发出第二个请求，如 95
+     * @param minDelay   对冲延迟的下限，避免延迟极短的商店被频繁对冲
+     * @param unit
+     * @return
+     */
+    public PriceFanOut hedgeAt(double percentile, long minDelay, TimeUnit unit) {
+        if (percentile <= 0 || percentile >= 100)
+            throw new IllegalArgumentException("percentile must be in (0, 100): " + percentile);
+        this.hedgePercentile = percentile;
+        this.minHedgeDelayNanos = unit.toNanos(minDelay);
+        return this;
+    }
+
+    /**
+     * 并发查询所有商店。返回的 Future 在所有商店都有结果，或整个请求的截止时间到达时完成，不会异常完成
+     *
+     * @param shops
+     * @param product
+     * @return
+     */
+    public CompletableFuture<FanOutResult> search(List<Shop> shops, String product) {
+        long start = System.nanoTime();
+        List<CompletableFuture<PriceQuote>> quotes = new ArrayList<>(shops.size());
+        for (Shop shop : shops)
+            quotes.add(quote(shop, product, start));
+        CompletableFuture<FanOutResult> result = new CompletableFuture<>();
+        CompletableFuture.allOf(quotes.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, ex) -> result.complete(collect(shops, quotes, start)));
+        if (deadlineNanos > 0) {
+            ScheduledFuture<?> timer = scheduler.schedule(() -> result.complete(collect(shops, quotes, start)), deadlineNanos, TimeUnit.NANOSECONDS);
+            result.whenComplete((r, ex) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * 一个商店的报价，不会异常完成
+     */
+    CompletableFuture<PriceQuote> quote(Shop shop, String product, long start) {
+        HedgedCall hedged = Double.isNaN(hedgePercentile) ? null : hedged(shop, product);
+        CompletableFuture<Double> price = hedged != null ? hedged.result : call(shop, product);
+        if (shopTimeoutNanos > 0)
+            price = Deadlines.within(price, shopTimeoutNanos, TimeUnit.NANOSECONDS, scheduler);
+        return price.handle((value, ex) -> {
+            long latency = System.nanoTime() - start;
+            if (ex == null)
+                return PriceQuote.ok(shop.getName(), value, latency, hedged != null && hedged.hedgeWon);
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            return cause instanceof TimeoutException
+                    ? PriceQuote.timedOut(shop.getName(), latency)
+                    : PriceQuote.failed(shop.getName(), latency, cause);
+        });
+    }
+
+    /**
+     * 调用后端，成功时记录延迟
+     */
+    private CompletableFuture<Double> call(Shop shop, String product) {
+        long start = System.nanoTime();
+        CompletableFuture<Double> future;
+        try {
+            future = backend.apply(shop, product);
+        } catch (RuntimeException ex) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+        }
+        return future.whenComplete((value, ex) -> {
+            if (ex == null)
+                tracker(shop).record(System.nanoTime() - start);
+        });
+    }
+
+    /**
+     * 样本不足时返回 null，由调用方直接调用后端
+     */
+    private HedgedCall hedged(Shop shop, String product) {
+        LatencyTracker tracker = tracker(shop);
+        if (tracker.size() < MIN_HEDGE_SAMPLES)
+            return null;
+        long delay = Math.max(minHedgeDelayNanos, tracker.percentile(hedgePercentile));
+        HedgedCall hedged = new HedgedCall();
+        call(shop, product).whenComplete((value, ex) -> hedged.attemptDone(value, ex, false));
+        ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            if (hedged.tryStartHedge()) {
+                hedges.increment();
+                call(shop, product).whenComplete((value, ex) -> {
+                    if (hedged.attemptDone(value, ex, true))
+                        hedgeWins.increment();
+                });
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+        hedged.result.whenComplete((value, ex) -> timer.cancel(false));
+        return hedged;
+    }
+
+    LatencyTracker tracker(Shop shop) {
+        return trackers.computeIfAbsent(shop.getName(), name -> new LatencyTracker(TRACKER_CAPACITY));
+    }
+
+    private static FanOutResult collect(List<Shop> shops, List<CompletableFuture<PriceQuote>> quotes, long start) {
+        long elapsed = System.nanoTime() - start;
+        List<PriceQuote> results = new ArrayList<>(quotes.size());
+        boolean complete = true;
+        for (int i = 0; i < quotes.size(); i++) {
+            PriceQuote quote = quotes.get(i).getNow(null);
+            if (quote == null) {
+                complete = false;
+                quote = PriceQuote.timedOut(shops.get(i).getName(), elapsed);
+            }
+            results.add(quote);
+        }
+        return new FanOutResult(results, complete, elapsed);
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * 对冲请求先于原请求返回的次数
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * 一个原请求和至多一个对冲请求，取第一个成功的结果；原请求在对冲发出之前失败时直接失败，不再对冲
+     */
+    private static final class HedgedCall {
+        final CompletableFuture<Double> result = new CompletableFuture<>();
+        volatile boolean hedgeWon;//在完成 result 之前写入，result 的回调中可以直接读取
+        private int running = 1;
+        private boolean hedgeAllowed = true;
+        private boolean decided;
+
+        synchronized boolean tryStartHedge() {
+            if (!hedgeAllowed || decided)
+                return false;
+            hedgeAllowed = false;
+            running++;
+            return true;
+        }
+
+        /**
+         * @return 本次结果是否成为最终结果
+         */
+        boolean attemptDone(Double value, Throwable ex, boolean hedge) {
+            synchronized (this) {
+                running--;
+                if (decided || (ex != null && running > 0))
+                    return false;
+                decided = true;
+                hedgeAllowed = false;
+                hedgeWon = ex == null && hedge;
+            }
+            return ex == null ? result.complete(value) : result.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * 一次多商店查询的结果
+     */
+    public static final class FanOutResult {
+        private final List<PriceQuote> quotes;
+        private final boolean complete;
+        private final long elapsedNanos;
+
+        FanOutResult(List<PriceQuote> quotes, boolean complete, long elapsedNanos) {
+            this.quotes = Collections.unmodifiableList(quotes);
+            this.complete = complete;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * 所有商店的结果，与请求的商店顺序相同
+         */
+        public List<PriceQuote> getQuotes() {
+            return quotes;
+        }
+
+        /**
+         * 整个请求的截止时间到达之前，所有商店都有了结果（成功、失败或单个商店超时）
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * 所有商店都成功报价
+         */
+        public boolean isAllOk() {
+            for (PriceQuote quote : quotes)
+                if (!quote.isOk())
+                    return false;
+            return true;
+        }
+
+        public long count(PriceQuote.Status status) {
+            return quotes.stream().filter(quote -> quote.getStatus() == status).count();
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s in %d ms: %d ok, %d timed out, %d failed",
+                    complete ? (isAllOk() ? "complete" : "complete with errors") : "partial",
+                    elapsedNanos / 1_000_000, count(PriceQuote.Status.OK), count(PriceQuote.Status.TIMED_OUT), count(PriceQuote.Status.FAILED));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mcd.java8.completableFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 截止时间、部分结果和对冲请求
+ */
+public class PriceFanOutTest {
+
+    private final ExecutorService executor = ShopExecutors.virtualOrBounded(ShopExecutors.DEFAULT_MAX_THREADS);
+
+    @Test
+    public void deadlines() {
+        CompletableFuture<String> never = new CompletableFuture<>();
+        try {
+            Deadlines.within(never, 50, TimeUnit.MILLISECONDS).join();
+            fail("expected timeout");
+        } catch (Exception ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        assertEquals("default", Deadlines.orDefault(never, "default", 10, TimeUnit.MILLISECONDS).join());
+        assertEquals("done", Deadlines.within(CompletableFuture.completedFuture("done"), 10, TimeUnit.MILLISECONDS).join());
+    }
+
+    @Test
+    public void partialResults() {
+        List<Shop> shops = Arrays.asList(
+                new Shop("BestPrice", executor, 10),
+                new Shop("LetsSaveBig", executor, 10),
+                new Shop("SlowShop", executor, 2_000));
+
+        PriceFanOut.FanOutResult perShop = new PriceFanOut().shopTimeout(200, TimeUnit.MILLISECONDS)
+                .search(shops, "myPhone27S").join();
+        System.out.println(perShop + " " + perShop.getQuotes());
+        assertTrue(perShop.isComplete());
+        assertFalse(perShop.isAllOk());
+        assertEquals(PriceQuote.Status.TIMED_OUT, perShop.getQuotes().get(2).getStatus());
+        assertTrue(perShop.getElapsedNanos() < TimeUnit.MILLISECONDS.toNanos(1_000));
+
+        long start = System.nanoTime();
+        List<String> prices = MyTest.findPricesWithDeadline(shops, "myPhone27S", 300);
+        System.out.println(prices + " in " + (System.nanoTime() - start) / 1_000_000 + " msecs");
+        assertTrue(prices.get(2).startsWith("SlowShop timed out"));
+    }
+
+    @Test
+    public void failuresAreReported() {
+        BiFunction<Shop, String, CompletableFuture<Double>> broken = (shop, product) -> {
+            CompletableFuture<Double> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException(shop.getName() + " offline"));
+            return future;
+        };
+        PriceFanOut.FanOutResult result = new PriceFanOut(broken).search(Arrays.asList(new Shop("A"), new Shop("B")), "x").join();
+        assertEquals(2, result.count(PriceQuote.Status.FAILED));
+        assertTrue(result.getQuotes().get(0).getError() instanceof IllegalStateException);
+    }
+
+    /**
+     * 每个商店每次请求有 2% 的概率卡住 300ms，否则 5ms 返回。20 个商店的查询有三分之一会碰上卡住的商店
+     */
+    @Test
+    public void hedgingCutsTail() {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            shops.add(new Shop("Shop" + i, executor, 0));
+
+        long[] plain = run(new PriceFanOut(stalling(new Random(1))), shops, 40);
+        PriceFanOut hedging = new PriceFanOut(stalling(new Random(1))).hedgeAt(90, 2, TimeUnit.MILLISECONDS);
+        run(hedging, shops, PriceFanOut.MIN_HEDGE_SAMPLES);//每个商店积累足够的延迟样本
+        long[] hedged = run(hedging, shops, 40);
+
+        System.out.printf("plain:  p50=%d ms, p90=%d ms, p99=%d ms%n", percentile(plain, 50), percentile(plain, 90), percentile(plain, 99));
+        System.out.printf("hedged: p50=%d ms, p90=%d ms, p99=%d ms, %d hedges, %d won%n",
+                percentile(hedged, 50), percentile(hedged, 90), percentile(hedged, 99), hedging.getHedges(), hedging.getHedgeWins());
+        //对冲请求本身也可能卡住，所以仍有少数查询是 300ms
+        assertTrue(percentile(hedged, 90) < percentile(plain, 90) / 2);
+        assertTrue(hedging.getHedgeWins() > 0);
+    }
+
+    private BiFunction<Shop, String, CompletableFuture<Double>> stalling(Random random) {
+        return (shop, product) -> {
+            long delay;
+            synchronized (random) {
+                delay = random.nextInt(100) < 2 ? 300 : 5;
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                Shop.delay(delay);
+                return 42d;
+            }, executor);
+        };
+    }
+
+    private static long[] run(PriceFanOut fanOut, List<Shop> shops, int searches) {
+        long[] latencies = new long[searches];
+        for (int i = 0; i < searches; i++) {
+            PriceFanOut.FanOutResult result = fanOut.search(shops, "myPhone27S").join();
+            assertTrue(result.isAllOk());
+            latencies[i] = result.getElapsedNanos() / 1_000_000;
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] values, double p) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(p / 100 * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,79 @@
+package com.mcd.java8.completableFuture;
+
+/**
+ * 一个商店的报价结果。部分结果中，超时或失败的商店同样有一条记录，通过 status 区分
+ */
+public final class PriceQuote {
+
+    public enum Status {
+        OK, TIMED_OUT, FAILED
+    }
+
+    private final String shop;
+    private final Status status;
+    private final double price;//status 不是 OK 时为 NaN
+    private final long latencyNanos;//从发起查询到得到结果（或放弃）的时间
+    private final boolean hedged;//结果来自对冲的第二个请求
+    private final Throwable error;
+
+    private PriceQuote(String shop, Status status, double price, long latencyNanos, boolean hedged, Throwable error) {
+        this.shop = shop;
+        this.status = status;
+        this.price = price;
+        this.latencyNanos = latencyNanos;
+        this.hedged = hedged;
+        this.error = error;
+    }
+
+    static PriceQuote ok(String shop, double price, long latencyNanos, boolean hedged) {
+        return new PriceQuote(shop, Status.OK, price, latencyNanos, hedged, null);
+    }
+
+    static PriceQuote timedOut(String shop, long latencyNanos) {
+        return new PriceQuote(shop, Status.TIMED_OUT, Double.NaN, latencyNanos, false, null);
+    }
+
+    static PriceQuote failed(String shop, long latencyNanos, Throwable error) {
+        return new PriceQuote(shop, Status.FAILED, Double.NaN, latencyNanos, false, error);
+    }
+
+    public String getShop() {
+        return shop;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public boolean isHedged() {
+        return hedged;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        switch (status) {
+            case OK:
+                return String.format("%s price is %.2f%s", shop, price, hedged ? " (hedged)" : "");
+            case TIMED_OUT:
+                return String.format("%s timed out after %d ms", shop, latencyNanos / 1_000_000);
+            default:
+                return String.format("%s failed: %s", shop, error);
+        }
+    }
+}
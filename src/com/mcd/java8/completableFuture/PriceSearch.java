@@ -0,0 +1,212 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式报价：每个商店的报价一完成就发布出去，而不是等最慢的商店
+ * <p>
+ * MyTest.findPricesAsync 要等所有商店都回应才返回。这里提供两种按完成顺序消费的方式：
+ * 1、publisher：java.util.concurrent.Flow.Publisher，按订阅者 request(n) 的需求发送，需求为 0 时已完成的报价先缓存起来（背压）。
+ * 第一次 request 时才开始查询；每次 subscribe 都是一次独立的查询
+ * 2、inCompletionOrder：阻塞的 Iterator，每次 next 请求一个报价，适合不想实现 Subscriber 的调用方
+ * <p>
+ * 报价通过 PriceFanOut 发出，所以同样支持单个商店的超时和对冲；超时或失败的商店也会作为一条报价发布，不会使整个流出错
+ */
+public final class PriceSearch {
+
+    private final PriceFanOut fanOut;
+
+    public PriceSearch() {
+        this(new PriceFanOut());
+    }
+
+    public PriceSearch(PriceFanOut fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    public Flow.Publisher<PriceQuote> publisher(List<Shop> shops, String product) {
+        return subscriber -> subscriber.onSubscribe(new QuoteSubscription(fanOut, shops, product, subscriber));
+    }
+
+    /**
+     * 按完成顺序遍历所有商店的报价，hasNext / next 在下一个报价完成之前阻塞
+     *
+     * @param shops
+     * @param product
+     * @return
+     */
+    public Iterator<PriceQuote> inCompletionOrder(List<Shop> shops, String product) {
+        CompletionOrderIterator iterator = new CompletionOrderIterator();
+        publisher(shops, product).subscribe(iterator);
+        return iterator;
+    }
+}
+
+/**
+ * 一次订阅：已完成的报价进入 ready 队列，drain 在需求允许时按顺序发送。
+ * wip 计数保证同一时间只有一个线程在调用订阅者，满足 Flow 规范中信号串行发送的要求（1.3），
+ * 所以非法的 request 也只记录下错误，由 drain 发送 onError
+ */
+class QuoteSubscription implements Flow.Subscription {
+
+    private final PriceFanOut fanOut;
+    private final List<Shop> shops;
+    private final String product;
+    private final Flow.Subscriber<? super PriceQuote> subscriber;
+
+    private final ConcurrentLinkedQueue<PriceQuote> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicInteger remaining;//还没有完成的商店数
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean cancelled;
+    private volatile Throwable error;//非法的 request，等待 drain 发送
+    private boolean done;//只在 drain 中访问
+
+    QuoteSubscription(PriceFanOut fanOut, List<Shop> shops, String product, Flow.Subscriber<? super PriceQuote> subscriber) {
+        this.fanOut = fanOut;
+        this.shops = shops;
+        this.product = product;
+        this.subscriber = subscriber;
+        this.remaining = new AtomicInteger(shops.size());
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            if (error == null)
+                error = new IllegalArgumentException("non-positive request: " + n);//Flow 规范 3.9
+            drain();//此时可能有其他线程正在 onNext，不能在这里直接调用 onError
+            return;
+        }
+        long current, next;
+        do {
+            current = requested.get();
+            next = current + n < 0 ? Long.MAX_VALUE : current + n;//溢出时视为无限需求
+        } while (!requested.compareAndSet(current, next));
+        if (started.compareAndSet(false, true))
+            start();
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void start() {
+        long start = System.nanoTime();
+        for (Shop shop : shops)
+            fanOut.quote(shop, product, start).thenAccept(quote -> {
+                ready.offer(quote);
+                remaining.decrementAndGet();
+                drain();
+            });
+        if (shops.isEmpty())
+            drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+        int missed = 1;
+        for (; ; ) {
+            if (cancelled || done)
+                return;
+            if (error != null) {
+                done = true;
+                subscriber.onError(error);
+                return;
+            }
+            long demand = requested.get();
+            long emitted = 0;
+            while (emitted != demand && error == null) {
+                PriceQuote quote = ready.poll();
+                if (quote == null)
+                    break;
+                subscriber.onNext(quote);
+                emitted++;
+                if (cancelled)
+                    return;
+            }
+            if (emitted != 0 && demand != Long.MAX_VALUE)
+                requested.addAndGet(-emitted);
+            if (remaining.get() == 0 && ready.isEmpty()) {
+                done = true;
+                subscriber.onComplete();
+                return;
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+                return;
+        }
+    }
+}
+
+/**
+ * 每次取出一个报价后再请求一个，所以最多只缓存一个尚未取走的报价，其余的由 QuoteSubscription 缓存
+ */
+class CompletionOrderIterator implements Iterator<PriceQuote>, Flow.Subscriber<PriceQuote> {
+
+    private static final Object COMPLETE = new Object();
+
+    private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+    private Flow.Subscription subscription;
+    private Object next;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(PriceQuote quote) {
+        signals.offer(quote);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        signals.offer(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        signals.offer(COMPLETE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = signals.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                subscription.cancel();
+                throw new IllegalStateException("interrupted while waiting for the next quote", ex);
+            }
+        }
+        if (next instanceof Throwable)
+            throw new IllegalStateException("price search failed", (Throwable) next);
+        return next != COMPLETE;
+    }
+
+    @Override
+    public PriceQuote next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        PriceQuote quote = (PriceQuote) next;
+        next = null;
+        subscription.request(1);
+        return quote;
+    }
+}
@@ -0,0 +1,198 @@
+package com.mcd.java8.completableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按完成顺序流式返回报价：首个结果的时间与全部结果的时间对比，以及背压
+ */
+public class PriceSearchTest {
+
+    private final ExecutorService executor = ShopExecutors.virtualOrBounded(ShopExecutors.DEFAULT_MAX_THREADS);
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void completionOrder() {
+        List<Shop> shops = Arrays.asList(
+                new Shop("Slow", executor, 600),
+                new Shop("Medium", executor, 300),
+                new Shop("Fast", executor, 20));
+
+        long start = System.nanoTime();
+        Iterator<PriceQuote> quotes = new PriceSearch().inCompletionOrder(shops, "myPhone27S");
+        List<String> order = new ArrayList<>();
+        long firstMillis = -1;
+        while (quotes.hasNext()) {
+            PriceQuote quote = quotes.next();
+            if (firstMillis < 0)
+                firstMillis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(quote.isOk());
+            order.add(quote.getShop());
+        }
+        long totalMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(order + ": first result in " + firstMillis + " msecs, all in " + totalMillis + " msecs");
+        assertEquals(Arrays.asList("Fast", "Medium", "Slow"), order);
+        assertTrue(firstMillis < 300);
+        assertTrue(totalMillis >= 600);
+    }
+
+    @Test
+    public void timeToFirstResult() {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            shops.add(new Shop("Shop" + i, executor, 50 + 50 * i));
+
+        long start = System.nanoTime();
+        MyTest.findPricesAsync(shops, "myPhone27S");
+        long batchMillis = (System.nanoTime() - start) / 1_000_000;//所有结果同时到达
+
+        start = System.nanoTime();
+        Iterator<PriceQuote> quotes = new PriceSearch().inCompletionOrder(shops, "myPhone27S");
+        quotes.next();
+        long firstMillis = (System.nanoTime() - start) / 1_000_000;
+        int count = 1;
+        while (quotes.hasNext()) {
+            quotes.next();
+            count++;
+        }
+        long streamMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("findPricesAsync: first = all = " + batchMillis + " msecs");
+        System.out.println("PriceSearch: first = " + firstMillis + " msecs, all = " + streamMillis + " msecs");
+        assertEquals(shops.size(), count);
+        assertTrue(firstMillis < batchMillis / 4);
+    }
+
+    /**
+     * 所有报价都已完成，但订阅者只请求了 2 个，只能收到 2 个；再请求后收到剩下的并结束
+     */
+    @Test
+    public void backpressure() throws InterruptedException {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            shops.add(new Shop("Shop" + i, executor, 10));
+
+        List<PriceQuote> received = new ArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        new PriceSearch().publisher(shops, "myPhone27S").subscribe(new Flow.Subscriber<PriceQuote>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+                s.request(2);
+            }
+
+            @Override
+            public void onNext(PriceQuote item) {
+                synchronized (received) {
+                    received.add(item);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        assertFalse(completed.await(300, TimeUnit.MILLISECONDS));
+        synchronized (received) {
+            assertEquals(2, received.size());
+        }
+        subscription.get().request(Long.MAX_VALUE);
+        assertTrue(completed.await(1, TimeUnit.SECONDS));
+        assertEquals(5, received.size());
+    }
+
+    @Test
+    public void invalidRequestSignalsError() {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        new PriceSearch().publisher(Arrays.asList(new Shop("A", executor, 10)), "x").subscribe(new Flow.Subscriber<PriceQuote>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                s.request(0);
+            }
+
+            @Override
+            public void onNext(PriceQuote item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.set(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        assertTrue(error.get() instanceof IllegalArgumentException);
+    }
+
+    /**
+     * 在 onNext 中发出非法的 request：onError 要等 onNext 返回后才发送，之后不再有 onNext
+     */
+    @Test
+    public void invalidRequestDuringOnNextIsSerialized() throws InterruptedException {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            shops.add(new Shop("Shop" + i, executor, 10));
+        List<String> signals = new ArrayList<>();
+        CountDownLatch failed = new CountDownLatch(1);
+        new PriceSearch().publisher(shops, "myPhone27S").subscribe(new Flow.Subscriber<PriceQuote>() {
+            private Flow.Subscription subscription;
+            private boolean inOnNext;
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(PriceQuote item) {
+                inOnNext = true;
+                signals.add("next");
+                subscription.request(-1);
+                inOnNext = false;
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add(inOnNext ? "error inside onNext" : "error");
+                failed.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+        });
+        assertTrue(failed.await(1, TimeUnit.SECONDS));
+        Thread.sleep(100);//其余商店的报价完成后也不应再有信号
+        assertEquals(Arrays.asList("next", "error"), signals);
+    }
+}
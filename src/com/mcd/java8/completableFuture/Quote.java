@@ -0,0 +1,50 @@
+package com.mcd.java8.completableFuture;
+
+/**
+ * 解析后的报价，对应 Shop.getQuote 返回的 "商店名称:价格:折扣码"
+ */
+public final class Quote {
+
+    private final String shopName;
+    private final double price;
+    private final Discount.Code discountCode;
+
+    public Quote(String shopName, double price, Discount.Code discountCode) {
+        this.shopName = shopName;
+        this.price = price;
+        this.discountCode = discountCode;
+    }
+
+    /**
+     * 从后往前按 ':' 拆分，商店名称中可以包含 ':'
+     *
+     * @param s
+     * @return
+     */
+    public static Quote parse(String s) {
+        int codeSep = s.lastIndexOf(':');
+        int priceSep = codeSep < 0 ? -1 : s.lastIndexOf(':', codeSep - 1);
+        if (priceSep < 0)
+            throw new IllegalArgumentException("malformed quote: " + s);
+        return new Quote(s.substring(0, priceSep),
+                Double.parseDouble(s.substring(priceSep + 1, codeSep)),
+                Discount.Code.valueOf(s.substring(codeSep + 1)));
+    }
+
+    public String getShopName() {
+        return shopName;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public Discount.Code getDiscountCode() {
+        return discountCode;
+    }
+
+    @Override
+    public String toString() {
+        return shopName + ":" + price + ":" + discountCode;
+    }
+}
@@ -0,0 +1,79 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * 报价 → 解析 → 折扣 的异步流水线
+ * <p>
+ * 每个阶段有自己的有界线程池：
+ * 1、fetch：Shop.getQuote，阻塞的远程调用
+ * 2、parse：Quote.parse，纯计算，几个线程就够了
+ * 3、discount：Discount.apply，阻塞的远程调用
+ * <p>
+ * 阶段之间通过 thenApplyAsync / thenCompose 衔接，一个商店的报价一解析完就进入折扣阶段，同时下一个商店的报价在 fetch 阶段进行，
+ * 各个商店的不同阶段互相重叠。如果整条链路都在同一个线程池中执行（MyTest.findDiscountedPricesAsync），
+ * 一个线程要依次等完报价和折扣。线程总数相同时两者同时进行中的远程调用数相同，吞吐量也相同（见 QuotePipelineTest.pipelinePerf），
+ * 流水线的好处在于每个阶段的并发数分别受控：报价变慢时只会占满 fetch 阶段的线程，折扣服务最多同时收到 discountThreads 个请求。
+ * 最后用 thenCombine 把解析后的报价和折后价格合成结果
+ */
+public final class QuotePipeline implements AutoCloseable {
+
+    private final Discount discount;
+    private final ExecutorService fetchStage;
+    private final ExecutorService parseStage;
+    private final ExecutorService discountStage;
+
+    /**
+     * @param discount
+     * @param fetchThreads    同时进行的报价请求数上限
+     * @param parseThreads    解析的线程数
+     * @param discountThreads 同时进行的折扣请求数上限
+     */
+    public QuotePipeline(Discount discount, int fetchThreads, int parseThreads, int discountThreads) {
+        this.discount = discount;
+        this.fetchStage = ShopExecutors.boundedPlatform(fetchThreads, "fetch");
+        this.parseStage = ShopExecutors.boundedPlatform(parseThreads, "parse");
+        this.discountStage = ShopExecutors.boundedPlatform(discountThreads, "discount");
+    }
+
+    /**
+     * 一个商店的折后价格
+     *
+     * @param shop
+     * @param product
+     * @return
+     */
+    public CompletableFuture<String> price(Shop shop, String product) {
+        CompletableFuture<Quote> quote = CompletableFuture.supplyAsync(() -> shop.getQuote(product), fetchStage)
+                .thenApplyAsync(Quote::parse, parseStage);
+        CompletableFuture<Double> discounted = quote.thenCompose(
+                q -> CompletableFuture.supplyAsync(() -> discount.apply(q.getPrice(), q.getDiscountCode()), discountStage));
+        return quote.thenCombine(discounted, Discount::describe);
+    }
+
+    /**
+     * 所有商店同时进入流水线，按 shops 的顺序返回
+     *
+     * @param shops
+     * @param product
+     * @return
+     */
+    public List<String> findPrices(List<Shop> shops, String product) {
+        List<CompletableFuture<String>> priceFutures = shops.stream()
+                .map(shop -> price(shop, product))
+                .collect(Collectors.toList());
+        return priceFutures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() {
+        fetchStage.shutdown();
+        parseStage.shutdown();
+        discountStage.shutdown();
+    }
+}
@@ -0,0 +1,106 @@
+package com.mcd.java8.completableFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 报价 → 解析 → 折扣 流水线：结果与顺序执行相同，以及与顺序执行、整条链路一个任务的对比
+ */
+public class QuotePipelineTest {
+
+    @Test
+    public void parse() {
+        Quote quote = Quote.parse("Best:Price:123.45:GOLD");
+        assertEquals("Best:Price", quote.getShopName());
+        assertEquals(123.45, quote.getPrice(), 0d);
+        assertEquals(Discount.Code.GOLD, quote.getDiscountCode());
+        assertEquals(111.11, new Discount(ShopProfile.constant(0)).apply(123.45, Discount.Code.GOLD), 0d);
+    }
+
+    /**
+     * 种子相同时，同一个商店的第 n 次调用结果相同，所以流水线与顺序执行的结果应该完全一样
+     */
+    @Test
+    public void sameResultsAsSerial() {
+        List<String> serial = MyTest.findDiscountedPrices(shops(10, 5), "myPhone27S", new Discount(ShopProfile.constant(5)));
+        try (QuotePipeline pipeline = new QuotePipeline(new Discount(ShopProfile.constant(5)), 4, 1, 4)) {
+            assertEquals(serial, pipeline.findPrices(shops(10, 5), "myPhone27S"));
+        }
+        System.out.println(serial);
+    }
+
+    @Test
+    public void failuresPropagate() {
+        Discount broken = new Discount(ShopProfile.constant(0).errorRate(1));
+        try (QuotePipeline pipeline = new QuotePipeline(broken, 1, 1, 1)) {
+            CompletableFuture<String> price = pipeline.price(shops(1, 0).get(0), "myPhone27S");
+            try {
+                price.join();
+                fail("expected ShopUnavailableException");
+            } catch (CompletionException ex) {
+                assertTrue(ex.getCause() instanceof ShopUnavailableException);
+            }
+            assertTrue(price.isCompletedExceptionally());
+        }
+    }
+
+    /**
+     * 20 个商店，报价和折扣各 100ms，两种并发方式使用相同的线程总数（报价和折扣合计 16 个）：
+     * 顺序执行约 20 * 200ms；整条链路一个任务、16 个线程时每个线程先后等待两次调用，约 2 轮 * 200ms；
+     * 流水线报价和折扣各 8 个线程，两个阶段重叠，约 3 轮 * 100ms + 100ms。
+     * 每个阶段都只是等待时，相同线程数下两者的吞吐量相同（线程数 / 每个商店 200ms），流水线并不更快，
+     * 它的好处在于每个阶段的并发数分别受控，例如折扣服务最多只会同时收到 8 个请求
+     */
+    @Test
+    public void pipelinePerf() {
+        int n = 20, threads = 8;
+        Discount discount = new Discount(ShopProfile.constant(100));
+
+        long serial = report("serial", n, () -> MyTest.findDiscountedPrices(shops(n, 100), "myPhone27S", discount));
+
+        ExecutorService executor = ShopExecutors.boundedPlatform(2 * threads);//与流水线的报价、折扣两个阶段合计的线程数相同
+        long lockstep;
+        try {
+            lockstep = report("one task per shop", n, () -> MyTest.findDiscountedPricesAsync(shops(n, 100), "myPhone27S", discount, executor));
+        } finally {
+            executor.shutdown();
+        }
+
+        long pipelined;
+        try (QuotePipeline pipeline = new QuotePipeline(discount, threads, 2, threads)) {
+            pipelined = report("pipeline", n, () -> pipeline.findPrices(shops(n, 100), "myPhone27S"));
+        }
+
+        assertTrue(pipelined < serial / 4);
+        assertTrue(pipelined < lockstep + 100);//相差不超过一个阶段的延迟
+    }
+
+    private static long report(String name, int n, Supplier<List<String>> search) {
+        long start = System.nanoTime();
+        List<String> prices = search.get();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(n, prices.size());
+        System.out.printf("%-18s done in %5d msecs, %6.1f shops/s%n", name, millis, n * 1000d / millis);
+        return millis;
+    }
+
+    /**
+     * n 个固定延迟的商店，种子固定。getQuote 在调用方的线程中执行，不会用到商店自己的执行器
+     */
+    private static List<Shop> shops(int n, long delayMillis) {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            shops.add(new Shop("Shop" + i, Runnable::run, ShopProfile.constant(delayMillis).seed(i)));
+        return shops;
+    }
+}
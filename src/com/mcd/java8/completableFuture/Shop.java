@@ -0,0 +1,184 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟的商店。每次报价的延迟、成败由 ShopProfile 决定，默认是固定 1s、不会失败
+ */
+public class Shop {
+
+    private final String name;
+    private final Executor executor;//getPriceAsync 使用的执行器
+    private final ShopProfile profile;//模拟的后端
+    private final AtomicLong calls = new AtomicLong();//已经发起的报价次数，决定下一次调用的模拟结果
+
+    /**
+     * 使用共享的默认执行器（支持时为虚拟线程，否则为有界的平台线程池），见 ShopExecutors
+     *
+     * @param name 商店名称
+     */
+    public Shop(String name) {
+        this(name, ShopExecutors.shared());
+    }
+
+    public Shop(String name, Executor executor) {
+        this(name, executor, 1000);
+    }
+
+    /**
+     * @param name
+     * @param executor    getPriceAsync 使用的执行器
+     * @param delayMillis 每次报价的模拟延迟，默认 1s
+     */
+    public Shop(String name, Executor executor, long delayMillis) {
+        this(name, executor, ShopProfile.constant(delayMillis));
+    }
+
+    /**
+     * @param name
+     * @param executor getPriceAsync 使用的执行器
+     * @param profile  延迟分布、错误率和超时率，种子相同时第 n 次调用的结果相同
+     */
+    public Shop(String name, Executor executor, ShopProfile profile) {
+        this.name = name;
+        this.executor = executor;
+        this.profile = profile;
+    }
+
+    /**
+     * 该方法会被阻塞。因为其需要等待同步事件完成而等待 1s（或 ShopProfile 抽取的延迟）
+     * 模拟的后端失败时抛出 ShopUnavailableException
+     *
+     * @param product
+     * @return
+     */
+    public double getPrice(String product) {
+        return calculatePrice(product);
+    }
+
+    /**
+     * 在注入的执行器中计算价格。
+     * 最初的实现每次调用都 new Thread()，上千个并发报价时线程的创建和内存开销都无法承受，见 ShopExecutors
+     *
+     * @param product
+     * @return
+     */
+    public CompletableFuture<Double> getPriceAsync(String product) {
+        //创建 CompletableFuture 对象，包含计算结果
+        CompletableFuture<Double> futurePrice = new CompletableFuture<>();
+        //在执行器中异步执行计算
+        executor.execute(() -> {
+            try {
+                double price = calculatePrice(product);
+                //需长时间计算的任务结束并得到结果时，设置 Future 的返回值
+                futurePrice.complete(price);//如果计算正常，返回 Future 操作并设置商品价格
+            } catch (Exception ex) {
+                futurePrice.completeExceptionally(ex);//否则就抛出导致失败的异常，完成这次 Future 操作
+            }
+
+        });
+        //无需等待还没结束的计算，直接返回 Future 对象
+        return futurePrice;
+    }
+
+    /**
+     * 工厂方法创建 CompletableFuture 对象
+     *
+     * @param product
+     * @return
+     */
+    public Future<Double> getPirceAsync2(String product) {
+        return CompletableFuture.supplyAsync(() -> calculatePrice(product));
+    }
+
+
+    /**
+     * 批量报价：一次往返（一次 delay）返回所有商品的价格，重复的商品只报价一次
+     *
+     * @param products
+     * @return 商品 → 价格，按 products 的顺序
+     */
+    public Map<String, Double> getPrices(Collection<String> products) {
+        ShopProfile.Call call = simulate();
+        Map<String, Double> prices = new LinkedHashMap<>();
+        for (String product : products)
+            prices.computeIfAbsent(product, p -> price(call.random, p));
+        return prices;
+    }
+
+    /**
+     * 在注入的执行器中批量报价，见 PriceBatcher
+     *
+     * @param products
+     * @return
+     */
+    public CompletableFuture<Map<String, Double>> getPricesAsync(Collection<String> products) {
+        return CompletableFuture.supplyAsync(() -> getPrices(products), executor);
+    }
+
+    /**
+     * 报价字符串 "商店名称:价格:折扣码"，折扣码随机选取，由 Quote.parse 解析，见 QuotePipeline。
+     * 与 getPrice 一样是阻塞调用
+     *
+     * @param product
+     * @return
+     */
+    public String getQuote(String product) {
+        ShopProfile.Call call = simulate();
+        double price = price(call.random, product);
+        Discount.Code code = Discount.Code.values()[call.random.nextInt(Discount.Code.values().length)];
+        return String.format(Locale.ROOT, "%s:%.2f:%s", name, price, code);
+    }
+
+    private double calculatePrice(String product) {
+        return price(simulate().random, product);
+    }
+
+    /**
+     * 抽取下一次调用的结果，阻塞相应的延迟，失败时抛出 ShopUnavailableException。
+     * 调用序号按 getAndIncrement 的先后分配，并发调用之间的顺序由线程调度决定，见 ShopProfile
+     */
+    private ShopProfile.Call simulate() {
+        return profile.simulate(name, calls.getAndIncrement());
+    }
+
+    private static double price(Random random, String product) {
+        return random.nextDouble() * product.charAt(0) + product.charAt(1);//根据名称随机生成一个价格
+    }
+
+
+    /**
+     * 模拟 1s 延迟
+     */
+    public static void delay() {
+        delay(1000);
+    }
+
+    static void delay(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public ShopProfile getProfile() {
+        return profile;
+    }
+}
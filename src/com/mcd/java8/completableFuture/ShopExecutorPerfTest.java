@@ -0,0 +1,69 @@
+package com.mcd.java8.completableFuture;
+
+import com.mcd.java8.perf.PerfResult;
+import com.mcd.java8.perf.PerfRunner;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 不同执行器下 MyTest.findPricesAsync 在 1 万 ~ 10 万个商店时的吞吐量和内存开销
+ * <p>
+ * 每次报价的模拟延迟缩短为 DELAY_MILLIS。商店数可以通过系统属性 shops 指定，如 -Dshops=10000,100000
+ */
+public class ShopExecutorPerfTest {
+
+    private static final long DELAY_MILLIS = 10;
+
+    @Test
+    public void findPricesAsyncPerf() {
+        System.out.println("virtual threads supported: " + ShopExecutors.isVirtualThreadSupported()
+                + " (java " + System.getProperty("java.version") + ")");
+        for (String count : System.getProperty("shops", "10000,100000").split(","))
+            for (ShopExecutors.Mode mode : ShopExecutors.Mode.values())
+                run(mode, Integer.parseInt(count.trim()));
+    }
+
+    private static void run(ShopExecutors.Mode mode, int shopCount) {
+        if (mode == ShopExecutors.Mode.VIRTUAL && !ShopExecutors.isVirtualThreadSupported()) {
+            System.out.printf("%-16s %7d shops: skipped, virtual threads are not available%n", mode, shopCount);
+            return;
+        }
+        if (mode == ShopExecutors.Mode.COMMON_POOL) {
+            //公共线程池的线程数等于处理器数，阻塞的报价只能分批执行
+            long seconds = shopCount * DELAY_MILLIS / ForkJoinPool.getCommonPoolParallelism() / 1000;
+            if (seconds > 30) {
+                System.out.printf("%-16s %7d shops: skipped, would take about %d s with parallelism %d%n",
+                        mode, shopCount, seconds, ForkJoinPool.getCommonPoolParallelism());
+                return;
+            }
+        }
+        Executor executor = ShopExecutors.create(mode, ShopExecutors.DEFAULT_MAX_THREADS);
+        try {
+            List<Shop> shops = new ArrayList<>(shopCount);
+            for (int i = 0; i < shopCount; i++)
+                shops.add(new Shop("Shop" + i, executor, DELAY_MILLIS));
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            long threadsBefore = threads.getTotalStartedThreadCount();
+            PerfResult result = new PerfRunner().warmup(1, 1).iterations(3)
+                    .run(mode + " x " + shopCount, () -> assertEquals(shopCount, MyTest.findPricesAsync(shops, "myPhone27S").size()));
+            System.out.printf("%-16s %7d shops: %8.0f quotes/s, mean %6.0f ms, peak threads %6d, started threads %7d, alloc %s%n",
+                    mode, shopCount, shopCount / (result.getMean() / 1e9), result.getMean() / 1e6,
+                    threads.getPeakThreadCount(), threads.getTotalStartedThreadCount() - threadsBefore,
+                    result.getAllocatedBytesPerRun() < 0 ? "n/a" : result.getAllocatedBytesPerRun() / 1024 + " KB/run");
+        } finally {
+            if (executor instanceof ExecutorService && executor != ForkJoinPool.commonPool())
+                ((ExecutorService) executor).shutdownNow();
+        }
+    }
+}
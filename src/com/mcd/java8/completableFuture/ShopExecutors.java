@@ -0,0 +1,136 @@
+package com.mcd.java8.completableFuture;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shop.getPriceAsync 可以注入的执行器
+ * <p>
+ * 报价是阻塞调用（delay 模拟的远程请求），线程大部分时间都在等待：
+ * 1、THREAD_PER_CALL：最初的实现，每次调用创建一个平台线程，每个线程都有自己的栈，上万个并发报价时内存和创建开销都很大
+ * 2、COMMON_POOL：getPirceAsync2 使用的公共线程池，线程数等于处理器数，阻塞调用会拖慢所有并行流
+ * 3、BOUNDED_PLATFORM：固定上限的平台线程池（MyTest 中建议的 400），空闲线程会被回收，超出上限的请求排队
+ * 4、VIRTUAL：每个任务一个虚拟线程，阻塞时不占用平台线程，数量只受堆内存限制。需要 JDK 21+，
+ * 本项目按 Java 11 编译，因此通过反射调用 Executors.newVirtualThreadPerTaskExecutor，不支持时回退到 BOUNDED_PLATFORM
+ */
+public final class ShopExecutors {
+
+    public static final int DEFAULT_MAX_THREADS = 400;
+
+    public enum Mode {
+        THREAD_PER_CALL, COMMON_POOL, BOUNDED_PLATFORM, VIRTUAL
+    }
+
+    private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+    private static volatile Executor shared;
+
+    private ShopExecutors() {
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * 支持虚拟线程时返回 VIRTUAL，否则返回 BOUNDED_PLATFORM
+     */
+    public static Mode defaultMode() {
+        return isVirtualThreadSupported() ? Mode.VIRTUAL : Mode.BOUNDED_PLATFORM;
+    }
+
+    /**
+     * 按模式创建执行器。返回值是 ExecutorService 时，由调用方负责关闭
+     *
+     * @param mode
+     * @param maxThreads 对 BOUNDED_PLATFORM，以及不支持虚拟线程时回退的 VIRTUAL 有效
+     * @return
+     */
+    public static Executor create(Mode mode, int maxThreads) {
+        switch (mode) {
+            case THREAD_PER_CALL:
+                return runnable -> {
+                    Thread thread = new Thread(runnable);
+                    thread.setDaemon(true);
+                    thread.start();
+                };
+            case COMMON_POOL:
+                return ForkJoinPool.commonPool();
+            case BOUNDED_PLATFORM:
+                return boundedPlatform(maxThreads);
+            case VIRTUAL:
+                return virtualOrBounded(maxThreads);
+            default:
+                throw new IllegalArgumentException("unknown mode: " + mode);
+        }
+    }
+
+    /**
+     * 支持时为每个任务一个虚拟线程，否则为最多 maxThreads 个线程的平台线程池
+     */
+    public static ExecutorService virtualOrBounded(int maxThreads) {
+        return isVirtualThreadSupported() ? newVirtualThreadPerTaskExecutor() : boundedPlatform(maxThreads);
+    }
+
+    /**
+     * 不指定执行器的 Shop 共享的默认执行器，只使用守护线程，不会阻止程序关停
+     */
+    static Executor shared() {
+        Executor executor = shared;
+        if (executor == null)
+            synchronized (ShopExecutors.class) {
+                if ((executor = shared) == null)
+                    shared = executor = virtualOrBounded(DEFAULT_MAX_THREADS);
+            }
+        return executor;
+    }
+
+    /**
+     * 最多 maxThreads 个守护线程，空闲 60s 后回收，超出的任务在无界队列中排队
+     */
+    static ThreadPoolExecutor boundedPlatform(int maxThreads) {
+        return boundedPlatform(maxThreads, "shop");
+    }
+
+    /**
+     * 同上，线程名称为 namePrefix-序号
+     */
+    static ThreadPoolExecutor boundedPlatform(int maxThreads, String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("unable to create virtual thread executor", ex);
+        }
+    }
+
+    /**
+     * JDK 19、20 中虚拟线程是预览特性，方法存在但未开启预览时会抛出异常，所以实际创建一次确认可用
+     */
+    private static Method findVirtualExecutorFactory() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+}
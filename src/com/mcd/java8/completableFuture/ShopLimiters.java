@@ -0,0 +1,51 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 每个商店一个 ConcurrencyLimiter，按商店名称区分
+ * <p>
+ * 所有商店共享同一个执行器时，一个变慢的商店最多占用它自己的 limit 个线程，其余请求被拒绝或排队，不会挤占其他商店的线程
+ */
+public final class ShopLimiters {
+
+    private final Function<String, ConcurrencyLimiter> factory;
+    private final ConcurrentHashMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * @param factory 根据商店名称创建限流器
+     */
+    public ShopLimiters(Function<String, ConcurrencyLimiter> factory) {
+        this.factory = factory;
+    }
+
+    public ConcurrencyLimiter forShop(Shop shop) {
+        return limiters.computeIfAbsent(shop.getName(), factory);
+    }
+
+    public <T> CompletableFuture<T> submit(Shop shop, Supplier<? extends CompletableFuture<T>> call) {
+        return forShop(shop).submit(call);
+    }
+
+    /**
+     * 在 executor 中以阻塞方式查询价格（与 MyTest.findPricesAsyncWithExecutor 相同），受该商店的并发上限约束
+     */
+    public CompletableFuture<Double> getPrice(Shop shop, String product, Executor executor) {
+        return submit(shop, () -> CompletableFuture.supplyAsync(() -> shop.getPrice(product), executor));
+    }
+
+    /**
+     * 商店名称 → 统计，按名称排序
+     */
+    public Map<String, ConcurrencyLimiter.Stats> stats() {
+        Map<String, ConcurrencyLimiter.Stats> stats = new LinkedHashMap<>();
+        limiters.keySet().stream().sorted().forEach(name -> stats.put(name, limiters.get(name).stats()));
+        return stats;
+    }
+}
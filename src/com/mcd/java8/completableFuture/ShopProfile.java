@@ -0,0 +1,160 @@
+package com.mcd.java8.completableFuture;
+
+import java.util.Random;
+
+/**
+ * Shop 背后模拟的后端：延迟分布、错误率和超时率
+ * <p>
+ * 每次报价的结果只由 (种子, 商店名称, 该商店的第几次调用) 决定：
+ * 同一个种子下，同名商店的第 n 次调用总是得到相同的延迟、相同的成败和相同的价格。
+ * 注意调用序号由 Shop 按调用开始的先后分配，多个线程同时调用同一个商店时，哪个调用方拿到第 n 次取决于线程调度，
+ * 所以只有每个商店的调用依次发起（或者只比较整组结果的统计量）时，实验才能逐个调用地重复。
+ * 多个商店可以共用一个 ShopProfile，各自的序列因名称不同而不同。
+ * <p>
+ * 配置方法返回 this，应在交给 Shop 之前配置好
+ */
+public final class ShopProfile {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final LatencyDistribution latency;
+    private double errorRate;
+    private double timeoutRate;
+    private long hangMillis = 30_000;
+    private long seed = System.nanoTime();
+
+    public ShopProfile(LatencyDistribution latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * 固定延迟、不会失败，即原来的 Shop 的行为
+     */
+    public static ShopProfile constant(long millis) {
+        return new ShopProfile(LatencyDistribution.constant(millis));
+    }
+
+    /**
+     * 接近真实服务的默认配置：中位数 50ms 的对数正态分布，1% 的请求有 0.5 ~ 1.5s 的尖峰，0.5% 失败，0.1% 挂起
+     */
+    public static ShopProfile realistic() {
+        return new ShopProfile(LatencyDistribution.bimodal(
+                LatencyDistribution.logNormal(50, 0.5), 0.01, LatencyDistribution.uniform(500, 1_500)))
+                .errorRate(0.005)
+                .timeoutRate(0.001, 30_000);
+    }
+
+    /**
+     * 报价失败（ShopUnavailableException）的概率，失败也要先经过一次正常的延迟
+     */
+    public ShopProfile errorRate(double errorRate) {
+        checkRate(errorRate + timeoutRate);
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * 后端挂起的概率：挂起 hangMillis 后以 ShopUnavailableException 失败，通常远超过调用方的截止时间
+     */
+    public ShopProfile timeoutRate(double timeoutRate, long hangMillis) {
+        checkRate(errorRate + timeoutRate);
+        if (hangMillis < 0)
+            throw new IllegalArgumentException("hang must not be negative");
+        this.timeoutRate = timeoutRate;
+        this.hangMillis = hangMillis;
+        return this;
+    }
+
+    public ShopProfile seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * 商店 shop 的第 index 次调用
+     */
+    Call call(String shop, long index) {
+        Random random = new Random(mix(seed ^ mix(shop.hashCode()) + index * GOLDEN_GAMMA));
+        double outcome = random.nextDouble();
+        if (outcome < timeoutRate)
+            return new Call(hangMillis, Call.Failure.TIMEOUT, random);
+        long delay = Math.round(Math.max(0, latency.sample(random)));
+        return new Call(delay, outcome < timeoutRate + errorRate ? Call.Failure.ERROR : Call.Failure.NONE, random);
+    }
+
+    /**
+     * 抽取 name 的第 index 次调用的结果，阻塞相应的延迟，失败时抛出 ShopUnavailableException
+     */
+    Call simulate(String name, long index) {
+        Call call = call(name, index);
+        Shop.delay(call.delayMillis);
+        call.throwIfFailed(name);
+        return call;
+    }
+
+    public LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public double getTimeoutRate() {
+        return timeoutRate;
+    }
+
+    public long getHangMillis() {
+        return hangMillis;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    private static void checkRate(double rate) {
+        if (rate < 0 || rate > 1)
+            throw new IllegalArgumentException("rates must be in [0, 1] and sum to at most 1");
+    }
+
+    /**
+     * SplitMix64 的终结函数，使相邻的种子得到不相关的 Random
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return "ShopProfile{" + latency + ", errorRate=" + errorRate + ", timeoutRate=" + timeoutRate + ", seed=" + seed + "}";
+    }
+
+    /**
+     * 一次调用的模拟结果。random 在抽取延迟之后继续用于生成价格
+     */
+    static final class Call {
+        enum Failure {NONE, ERROR, TIMEOUT}
+
+        final long delayMillis;
+        final Failure failure;
+        final Random random;
+
+        Call(long delayMillis, Failure failure, Random random) {
+            this.delayMillis = delayMillis;
+            this.failure = failure;
+            this.random = random;
+        }
+
+        /**
+         * 模拟的失败，在延迟之后调用
+         */
+        private void throwIfFailed(String shop) {
+            if (failure == Failure.ERROR)
+                throw new ShopUnavailableException(shop + " failed after " + delayMillis + "ms");
+            if (failure == Failure.TIMEOUT)
+                throw new ShopUnavailableException(shop + " hung for " + delayMillis + "ms");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.mcd.java8.completableFuture;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 模拟后端：分布的形状、错误率、可重复性，以及在模拟商店上的尾延迟
+ */
+public class ShopProfileTest {
+
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    public void distributions() {
+        Random random = new Random(1);
+        double[] logNormal = sample(LatencyDistribution.logNormal(50, 0.5), random);
+        assertEquals(50, percentile(logNormal, 50), 2);
+        assertEquals(50 * Math.exp(0.5 * 2.326), percentile(logNormal, 99), 8);//z(0.99) = 2.326
+
+        double[] uniform = sample(LatencyDistribution.uniform(10, 30), random);
+        assertTrue(percentile(uniform, 0) >= 10 && percentile(uniform, 100) < 30);
+        assertEquals(20, percentile(uniform, 50), 0.5);
+
+        double[] bimodal = sample(LatencyDistribution.bimodal(LatencyDistribution.constant(10), 0.02, LatencyDistribution.constant(1_000)), random);
+        assertEquals(10, percentile(bimodal, 97), 0);
+        assertEquals(1_000, percentile(bimodal, 99), 0);
+        System.out.printf("logNormal(50, 0.5): p50=%.1f p99=%.1f p99.9=%.1f%n", percentile(logNormal, 50), percentile(logNormal, 99), percentile(logNormal, 99.9));
+    }
+
+    @Test
+    public void errorAndTimeoutRates() {
+        ShopProfile profile = ShopProfile.constant(0).errorRate(0.05).timeoutRate(0.01, 5_000).seed(3);
+        int errors = 0, timeouts = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            ShopProfile.Call call = profile.call("shop", i);
+            if (call.failure == ShopProfile.Call.Failure.ERROR)
+                errors++;
+            else if (call.failure == ShopProfile.Call.Failure.TIMEOUT) {
+                timeouts++;
+                assertEquals(5_000, call.delayMillis);
+            }
+        }
+        assertEquals(0.05, (double) errors / SAMPLES, 0.005);
+        assertEquals(0.01, (double) timeouts / SAMPLES, 0.002);
+    }
+
+    /**
+     * 同样的种子和商店名称，第 n 次调用的结果相同；名称或种子不同时结果不同
+     */
+    @Test
+    public void repeatable() {
+        ShopProfile profile = ShopProfile.realistic().seed(42);
+        for (int i = 0; i < 100; i++) {
+            ShopProfile.Call a = profile.call("BestPrice", i);
+            ShopProfile.Call b = profile.call("BestPrice", i);
+            assertEquals(a.delayMillis, b.delayMillis);
+            assertEquals(a.failure, b.failure);
+            assertEquals(a.random.nextDouble(), b.random.nextDouble(), 0d);
+        }
+        assertFalse(Arrays.equals(delays(profile, "BestPrice"), delays(profile, "LetsSaveBig")));
+        assertFalse(Arrays.equals(delays(profile, "BestPrice"), delays(ShopProfile.realistic().seed(43), "BestPrice")));
+
+        ExecutorService executor = ShopExecutors.virtualOrBounded(ShopExecutors.DEFAULT_MAX_THREADS);
+        try {
+            Shop first = new Shop("BestPrice", executor, ShopProfile.constant(1).seed(7));
+            Shop second = new Shop("BestPrice", executor, ShopProfile.constant(1).seed(7));
+            for (int i = 0; i < 5; i++)
+                assertEquals(first.getPrice("myPhone27S"), second.getPrice("myPhone27S"), 0d);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failuresSurfaceThroughShop() {
+        Shop broken = new Shop("Broken", Runnable::run, ShopProfile.constant(0).errorRate(1));
+        CompletableFuture<Double> price = broken.getPriceAsync("myPhone27S");
+        try {
+            price.join();
+            fail("expected ShopUnavailableException");
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof ShopUnavailableException);
+        }
+        assertTrue(price.isCompletedExceptionally());
+
+        PriceFanOut.FanOutResult result = new PriceFanOut().search(Arrays.asList(broken), "myPhone27S").join();
+        assertEquals(PriceQuote.Status.FAILED, result.getQuotes().get(0).getStatus());
+    }
+
+    /**
+     * 50 个模拟商店：不设截止时间时每次查询都被最慢的商店拖住，设置 300ms 的截止时间后返回部分结果
+     */
+    @Test
+    public void simulatedTail() {
+        ExecutorService executor = ShopExecutors.virtualOrBounded(ShopExecutors.DEFAULT_MAX_THREADS);
+        try {
+            List<Shop> shops = MyTest.simulatedShops(50, executor, 2024);
+            long[] full = new long[10], bounded = new long[10];
+            int partial = 0;
+            for (int i = 0; i < full.length; i++) {
+                PriceFanOut.FanOutResult all = new PriceFanOut().shopTimeout(5, TimeUnit.SECONDS).search(shops, "myPhone27S").join();
+                full[i] = all.getElapsedNanos() / 1_000_000;
+                PriceFanOut.FanOutResult deadline = new PriceFanOut().deadline(300, TimeUnit.MILLISECONDS).search(shops, "myPhone27S").join();
+                bounded[i] = deadline.getElapsedNanos() / 1_000_000;
+                if (!deadline.isComplete())
+                    partial++;
+            }
+            Arrays.sort(full);
+            Arrays.sort(bounded);
+            System.out.println("wait for all shops: " + Arrays.toString(full) + " msecs");
+            System.out.println("300ms deadline:     " + Arrays.toString(bounded) + " msecs, " + partial + " partial");
+            assertTrue(bounded[bounded.length - 1] < full[full.length - 1]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long[] delays(ShopProfile profile, String shop) {
+        long[] delays = new long[20];
+        for (int i = 0; i < delays.length; i++)
+            delays[i] = profile.call(shop, i).delayMillis;
+        return delays;
+    }
+
+    private static double[] sample(LatencyDistribution distribution, Random random) {
+        double[] samples = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++)
+            samples[i] = distribution.sample(random);
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    /**
+     * samples 已排序
+     */
+    private static double percentile(double[] samples, double p) {
+        return samples[Math.min(samples.length - 1, (int) (p / 100 * samples.length))];
+    }
+}
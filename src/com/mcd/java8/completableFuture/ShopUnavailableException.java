@@ -0,0 +1,13 @@
+package com.mcd.java8.completableFuture;
+
+/**
+ * 模拟的后端失败，见 ShopProfile
+ */
+public class ShopUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ShopUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,111 @@
+package com.mcd.java8.parallel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 多线程共享计数器的性能测试：AtomicLong、synchronized、LongAdder 与 StripedLongAdder
+ */
+public class AccumulatorPerfTest {
+
+    private static final int OPS_PER_THREAD = 1_000_000;
+
+    @Test
+    public void correctness() {
+        long n = 10_000_000;
+        assertEquals(ParallelTest.iterativeSum(n), ParallelTest.parallelStripedSum(n));
+
+        StripedDoubleAdder doubles = new StripedDoubleAdder();
+        StripedLongMinMax minMax = new StripedLongMinMax();
+        StripedHistogram histogram = new StripedHistogram(10, 100, 1_000);
+        LongStream.rangeClosed(1, 2_000).parallel().forEach(i -> {
+            doubles.add(0.5);
+            minMax.update(i);
+            histogram.record(i);
+        });
+        assertEquals(1_000d, doubles.sum(), 0d);
+        assertEquals(1L, minMax.getMin());
+        assertEquals(2_000L, minMax.getMax());
+        assertArrayEquals(new long[]{10, 90, 900, 1_000}, histogram.snapshot());
+        System.out.println(histogram);
+    }
+
+    @Test
+    public void accumulatorPerf() throws InterruptedException {
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+            System.out.println("threads = " + threads);
+
+            AtomicLong atomic = new AtomicLong();
+            report("AtomicLong", threads, atomic::addAndGet, atomic::get);
+
+            SynchronizedCounter synchronizedCounter = new SynchronizedCounter();
+            report("synchronized", threads, synchronizedCounter::add, synchronizedCounter::get);
+
+            LongAdder longAdder = new LongAdder();
+            report("LongAdder", threads, longAdder::add, longAdder::sum);
+
+            StripedLongAdder striped = new StripedLongAdder();
+            report("StripedLongAdder", threads, striped::add, striped::sum);
+        }
+    }
+
+    private static void report(String name, int threads, LongConsumer add, LongSupplier sum) throws InterruptedException {
+        run(threads, add);//预热
+        long before = sum.getAsLong();
+        long duration = run(threads, add);
+        assertEquals((long) threads * OPS_PER_THREAD, sum.getAsLong() - before);
+        System.out.printf("  %-18s %8.2f ns/op%n", name, (double) duration / ((long) threads * OPS_PER_THREAD));
+    }
+
+    /**
+     * 所有线程同时开始，每个线程执行 OPS_PER_THREAD 次 add(1)，返回总耗时（纳秒）
+     */
+    private static long run(int threads, LongConsumer add) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                for (int i = 0; i < OPS_PER_THREAD; i++)
+                    add.accept(1L);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        return System.nanoTime() - start;
+    }
+}
+
+class SynchronizedCounter {
+    private long total = 0;
+
+    public synchronized void add(long value) {
+        total += value;
+    }
+
+    public synchronized long get() {
+        return total;
+    }
+}
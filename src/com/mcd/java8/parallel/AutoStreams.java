@@ -0,0 +1,313 @@
+package com.mcd.java8.parallel;
+
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 根据成本模型自动选择顺序流或并行流
+ * <p>
+ * StreamPerfTest.streamPerf 末尾列出了并行流是否划算的 8 条经验，这里把其中能够量化的部分变成计算：
+ * 1、数据量（第 5 条）：SIZED 时取精确大小，否则取估计大小，大小未知（如 Stream.iterate）时直接使用顺序流
+ * 2、流水线成本（第 2、4 条）：由调用方声明每个元素的耗时，或者用实际的处理函数在源数据的前若干个元素上采样测量，装箱的开销自然包含在内
+ * 3、分解难度（第 6、7 条）：没有 SUBSIZED 特征时拆分可能不均衡，每个叶子任务要求更多的工作量
+ * 4、顺序依赖和合并代价（第 3、8 条）：由调用方声明，分别放大每个叶子任务的开销
+ * <p>
+ * 每个叶子任务的固定开销取自 ThresholdCalibrator 在该线程池上测得的 fork + join 耗时，叶子任务的计算时间至少是开销的
+ * ThresholdCalibrator.TARGET_WORK_RATIO 倍。总工作量不足两个这样的叶子任务时使用顺序流；否则使用并行流，
+ * 并用 TargetSizeSpliterator 把拆分限制在目标大小，避免任务切得过碎。
+ * 每次选择的结果和原因以 Decision 的形式记录到 java.util.logging（FINE 级别）
+ * <p>
+ * 选择基于线程池的并行度，公共线程池以外的线程池需要在其中执行终端操作，见 ForkJoinPoolRegistry.run
+ */
+public final class AutoStreams {
+
+    private static final Logger LOG = Logger.getLogger(AutoStreams.class.getName());
+
+    static final double UNBALANCED_PENALTY = 2;//没有 SUBSIZED 时叶子开销的放大倍数
+    static final double ORDER_PENALTY = 2;//依赖顺序的操作（limit、findFirst 等）的放大倍数
+    static final int DEFAULT_SAMPLE_SIZE = 1_000;
+
+    private final int parallelism;
+    private final double forkNanos;
+
+    /**
+     * 使用公共线程池
+     */
+    public AutoStreams() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 使用 ThresholdCalibrator.calibration 的结果，第一次使用某个并行度时会校准并写入本地文件
+     */
+    public AutoStreams(ForkJoinPool pool) {
+        this(pool, ThresholdCalibrator.calibration(pool));
+    }
+
+    /**
+     * 使用调用方提供的校准结果，例如 ThresholdCalibrator.calibrate 的结果（只测量，不读写文件）
+     */
+    public AutoStreams(ForkJoinPool pool, ThresholdCalibrator.Calibration calibration) {
+        this(pool.getParallelism(), calibration.getForkNanos());
+    }
+
+    AutoStreams(int parallelism, double forkNanos) {
+        this.parallelism = parallelism;
+        this.forkNanos = forkNanos;
+    }
+
+    public <T> Stream<T> stream(Collection<T> source, Cost cost) {
+        return stream(source.spliterator(), cost);
+    }
+
+    /**
+     * 在集合的前 DEFAULT_SAMPLE_SIZE 个元素上执行 costProbe 测量每个元素的成本，再据此选择
+     *
+     * @param source
+     * @param costProbe 与流水线中对每个元素所做的处理相同
+     * @return
+     */
+    public <T> Stream<T> stream(Collection<T> source, Consumer<? super T> costProbe) {
+        return stream(source.spliterator(), Cost.sampled(source.spliterator(), costProbe, DEFAULT_SAMPLE_SIZE));
+    }
+
+    public <T> Stream<T> stream(Spliterator<T> source, Cost cost) {
+        Decision decision = decide(source, cost);
+        return decision.parallel
+                ? StreamSupport.stream(new TargetSizeSpliterator<>(source, decision.targetSplitSize), true)
+                : StreamSupport.stream(source, false);
+    }
+
+    public LongStream longStream(Spliterator.OfLong source, Cost cost) {
+        Decision decision = decide(source, cost);
+        return decision.parallel
+                ? StreamSupport.longStream(new TargetSizeSpliterator.OfLong(source, decision.targetSplitSize), true)
+                : StreamSupport.longStream(source, false);
+    }
+
+    public IntStream intStream(Spliterator.OfInt source, Cost cost) {
+        Decision decision = decide(source, cost);
+        return decision.parallel
+                ? StreamSupport.intStream(new TargetSizeSpliterator.OfInt(source, decision.targetSplitSize), true)
+                : StreamSupport.intStream(source, false);
+    }
+
+    public DoubleStream doubleStream(Spliterator.OfDouble source, Cost cost) {
+        Decision decision = decide(source, cost);
+        return decision.parallel
+                ? StreamSupport.doubleStream(new TargetSizeSpliterator.OfDouble(source, decision.targetSplitSize), true)
+                : StreamSupport.doubleStream(source, false);
+    }
+
+    /**
+     * 与 LongStream.rangeClosed 相同的元素
+     */
+    public LongStream rangeClosed(long from, long to, Cost cost) {
+        return longStream(LongStream.rangeClosed(from, to).spliterator(), cost);
+    }
+
+    /**
+     * 只计算选择结果，不创建流
+     *
+     * @param source
+     * @param cost
+     * @return
+     */
+    public Decision decide(Spliterator<?> source, Cost cost) {
+        Decision decision = evaluate(source, cost);
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine(decision.toString());
+        return decision;
+    }
+
+    private Decision evaluate(Spliterator<?> source, Cost cost) {
+        boolean sized = source.hasCharacteristics(Spliterator.SIZED);
+        long size = sized ? source.getExactSizeIfKnown() : source.estimateSize();
+        double nanosPerElement = cost.nanosPerElement;
+        if (parallelism <= 1)
+            return sequential(size, nanosPerElement, "pool parallelism is " + parallelism);
+        if (size == Long.MAX_VALUE)
+            return sequential(size, nanosPerElement, "source size is unknown, splits cannot be balanced");
+
+        double leafOverhead = forkNanos + cost.combineNanos;
+        StringBuilder penalties = new StringBuilder();
+        if (!source.hasCharacteristics(Spliterator.SUBSIZED)) {
+            leafOverhead *= UNBALANCED_PENALTY;
+            penalties.append(sized ? ", not SUBSIZED" : ", size is only an estimate");
+        }
+        if (cost.orderDependent) {
+            leafOverhead *= ORDER_PENALTY;
+            penalties.append(", order dependent");
+        }
+        double targetLeafNanos = ThresholdCalibrator.TARGET_WORK_RATIO * leafOverhead;
+        double totalNanos = size * nanosPerElement;
+        if (totalNanos < 2 * targetLeafNanos)
+            return sequential(size, nanosPerElement, String.format("total work %.1f us is below two leaves of %.1f us%s",
+                    totalNanos / 1e3, targetLeafNanos / 1e3, penalties));
+
+        long target = (long) Math.ceil(targetLeafNanos / nanosPerElement);
+        long balanced = (size + parallelism - 1) / parallelism;//至少让每个线程都分到一个叶子任务
+        target = Math.max(1, Math.min(target, balanced));
+        return new Decision(true, size, nanosPerElement, target, String.format(
+                "total work %.1f us over ~%d leaves of %d elements (leaf overhead %.0f ns%s)",
+                totalNanos / 1e3, (size + target - 1) / target, target, leafOverhead, penalties));
+    }
+
+    private static Decision sequential(long size, double nanosPerElement, String reason) {
+        return new Decision(false, size, nanosPerElement, Long.MAX_VALUE, reason);
+    }
+
+    /**
+     * 每个元素的处理成本
+     */
+    public static final class Cost {
+        private final double nanosPerElement;
+        private final double combineNanos;
+        private final boolean orderDependent;
+
+        private Cost(double nanosPerElement, double combineNanos, boolean orderDependent) {
+            if (!(nanosPerElement > 0) || combineNanos < 0)
+                throw new IllegalArgumentException("nanosPerElement must be positive and combineNanos non-negative");
+            this.nanosPerElement = nanosPerElement;
+            this.combineNanos = combineNanos;
+            this.orderDependent = orderDependent;
+        }
+
+        /**
+         * 声明每个元素的耗时
+         */
+        public static Cost perElement(double nanos) {
+            return new Cost(nanos, 0, false);
+        }
+
+        /**
+         * 在 sample 的前 maxSamples 个元素上执行 probe，测量每个元素的耗时。sample 会被消费掉，不能再作为流的源。
+         * probe 在采样时可能还没有被 JIT 编译，测得的是偏大的上限，对简单的处理函数更倾向于选择并行
+         *
+         * @param sample
+         * @param probe
+         * @param maxSamples
+         * @return
+         */
+        public static <T> Cost sampled(Spliterator<T> sample, Consumer<? super T> probe, int maxSamples) {
+            long count = 0;
+            long start = System.nanoTime();
+            while (count < maxSamples && sample.tryAdvance(probe))
+                count++;
+            return perElement(elapsedPerElement(start, count));
+        }
+
+        public static Cost sampled(Spliterator.OfLong sample, LongConsumer probe, int maxSamples) {
+            long count = 0;
+            long start = System.nanoTime();
+            while (count < maxSamples && sample.tryAdvance(probe))
+                count++;
+            return perElement(elapsedPerElement(start, count));
+        }
+
+        public static Cost sampled(Spliterator.OfInt sample, IntConsumer probe, int maxSamples) {
+            long count = 0;
+            long start = System.nanoTime();
+            while (count < maxSamples && sample.tryAdvance(probe))
+                count++;
+            return perElement(elapsedPerElement(start, count));
+        }
+
+        public static Cost sampled(Spliterator.OfDouble sample, DoubleConsumer probe, int maxSamples) {
+            long count = 0;
+            long start = System.nanoTime();
+            while (count < maxSamples && sample.tryAdvance(probe))
+                count++;
+            return perElement(elapsedPerElement(start, count));
+        }
+
+        private static double elapsedPerElement(long start, long count) {
+            return count == 0 ? 1 : Math.max(1, System.nanoTime() - start) / (double) count;
+        }
+
+        /**
+         * 合并两个子任务结果的耗时，例如 Collector.combiner 需要合并两个大的 Map 时
+         */
+        public Cost withCombineNanos(double combineNanos) {
+            return new Cost(nanosPerElement, combineNanos, orderDependent);
+        }
+
+        /**
+         * 流水线中有 limit、findFirst、forEachOrdered 等依赖顺序的操作
+         */
+        public Cost orderDependent() {
+            return new Cost(nanosPerElement, combineNanos, true);
+        }
+
+        public double getNanosPerElement() {
+            return nanosPerElement;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cost{%.2f ns/element, combine=%.0f ns%s}", nanosPerElement, combineNanos,
+                    orderDependent ? ", order dependent" : "");
+        }
+    }
+
+    /**
+     * 一次选择的结果和原因
+     */
+    public static final class Decision {
+        private final boolean parallel;
+        private final long size;
+        private final double nanosPerElement;
+        private final long targetSplitSize;
+        private final String reason;
+
+        Decision(boolean parallel, long size, double nanosPerElement, long targetSplitSize, String reason) {
+            this.parallel = parallel;
+            this.size = size;
+            this.nanosPerElement = nanosPerElement;
+            this.targetSplitSize = targetSplitSize;
+            this.reason = reason;
+        }
+
+        public boolean isParallel() {
+            return parallel;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public double getNanosPerElement() {
+            return nanosPerElement;
+        }
+
+        /**
+         * 剩余元素不超过该值的 Spliterator 不再拆分；顺序执行时为 Long.MAX_VALUE
+         */
+        public long getTargetSplitSize() {
+            return targetSplitSize;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return (parallel ? "parallel" : "sequential") + " for "
+                    + (size == Long.MAX_VALUE ? "unknown size" : size + " elements")
+                    + String.format(" at %.2f ns/element: ", nanosPerElement) + reason;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.mcd.java8.parallel;
+
+import com.mcd.java8.perf.PerfRunner;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 自动选择顺序流/并行流：选择的结果、目标拆分大小，以及与手动 parallel() 的性能对比
+ */
+public class AutoStreamsTest {
+
+    static volatile long sink;
+
+    private final AutoStreams auto = new AutoStreams(4, 1_000);//固定的 fork 开销，结果与机器无关
+    private final AutoStreams.Cost cheap = AutoStreams.Cost.perElement(1);
+
+    @Test
+    public void decide() {
+        AutoStreams.Decision small = auto.decide(LongStream.rangeClosed(1, 1_000).spliterator(), cheap);
+        assertFalse(small.isParallel());
+        System.out.println(small);
+
+        AutoStreams.Decision large = auto.decide(LongStream.rangeClosed(1, 10_000_000).spliterator(), cheap);
+        assertTrue(large.isParallel());
+        assertEquals(100_000, large.getTargetSplitSize());//TARGET_WORK_RATIO * 1000ns / 1ns
+        System.out.println(large);
+
+        //每个元素的成本高时，少量元素也值得并行，但每个线程至少分到一个叶子任务
+        AutoStreams.Decision expensive = auto.decide(LongStream.rangeClosed(1, 1_000).spliterator(), AutoStreams.Cost.perElement(10_000));
+        assertTrue(expensive.isParallel());
+        assertEquals(10, expensive.getTargetSplitSize());
+
+        AutoStreams.Decision unknown = auto.decide(Stream.iterate(1L, i -> i + 1).spliterator(), AutoStreams.Cost.perElement(10_000));
+        assertFalse(unknown.isParallel());
+        System.out.println(unknown);
+
+        assertFalse(new AutoStreams(1, 1_000).decide(LongStream.rangeClosed(1, 10_000_000).spliterator(), cheap).isParallel());
+
+        //不均衡拆分、顺序依赖、合并开销都会增大目标拆分大小
+        Set<Long> set = LongStream.rangeClosed(1, 100_000).boxed().collect(Collectors.toCollection(HashSet::new));
+        AutoStreams.Decision unbalanced = auto.decide(set.spliterator(), AutoStreams.Cost.perElement(100).orderDependent().withCombineNanos(1_000));
+        assertEquals(8_000, unbalanced.getTargetSplitSize());//(1000 + 1000) * 2 * 2 * 100 / 100
+        System.out.println(unbalanced);
+    }
+
+    @Test
+    public void targetSplitSize() {
+        long target = 10_000;
+        List<Long> leaves = new ArrayList<>();
+        split(new TargetSizeSpliterator.OfLong(LongStream.range(0, 1_000_000).spliterator(), target), leaves);
+        for (long leaf : leaves)
+            assertTrue("leaf size " + leaf, leaf <= target && leaf > target / 2);
+        assertEquals(1_000_000L, leaves.stream().mapToLong(Long::longValue).sum());
+
+        assertEquals(ParallelTest.iterativeSum(10_000_000), auto.rangeClosed(1, 10_000_000, cheap).sum());
+        List<Integer> list = IntStream.range(0, 100_000).boxed().collect(Collectors.toList());
+        assertEquals(list, auto.stream(list, AutoStreams.Cost.perElement(50)).collect(Collectors.toList()));
+        assertEquals(list.size(), auto.stream(list, i -> Math.sqrt(i)).count());
+    }
+
+    private static void split(Spliterator<?> spliterator, List<Long> leaves) {
+        Spliterator<?> prefix = spliterator.trySplit();
+        if (prefix == null) {
+            leaves.add(spliterator.estimateSize());
+            return;
+        }
+        split(prefix, leaves);
+        split(spliterator, leaves);
+    }
+
+    @Test
+    public void autoPerf() {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        AutoStreams calibrated = new AutoStreams(pool, ThresholdCalibrator.calibrate(pool));//现场测量，不写入 ~/.java8chara
+        PerfRunner runner = new PerfRunner().iterations(30);
+        for (long n : new long[]{1_000, 100_000, 10_000_000}) {
+            AutoStreams.Cost cost = AutoStreams.Cost.sampled(LongStream.rangeClosed(1, n).spliterator(), (long i) -> sink += i * i, 1_000);
+            System.out.println(calibrated.decide(LongStream.rangeClosed(1, n).spliterator(), cost));
+            System.out.println("  " + runner.run("sequential n=" + n, () -> LongStream.rangeClosed(1, n).map(i -> i * i).sum()));
+            System.out.println("  " + runner.run("parallel n=" + n, () -> LongStream.rangeClosed(1, n).parallel().map(i -> i * i).sum()));
+            System.out.println("  " + runner.run("auto n=" + n, () -> calibrated.rangeClosed(1, n, cost).map(i -> i * i).sum()));
+        }
+    }
+}
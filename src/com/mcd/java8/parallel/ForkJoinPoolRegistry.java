@@ -0,0 +1,182 @@
+package com.mcd.java8.parallel;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Supplier;
+
+/**
+ * 具名、可单独设置并行度的 ForkJoinPool 注册表，用于让并行流水线不再共用公共线程池
+ * <p>
+ * ParallelTest.parallelSum 的注释中提到，并行流默认使用公共 ForkJoinPool，线程数只能通过全局的系统属性
+ * java.util.concurrent.ForkJoinPool.common.parallelism 修改，一个繁重的 parallelStream() 会拖慢 JVM 中所有其他并行流。
+ * <p>
+ * 解决办法：在某个 ForkJoinPool 的任务中执行整个流水线（包括终端操作），并行流就会在该线程池中拆分和执行子任务，而不是公共线程池。
+ * 这依赖的是 ForkJoinTask.fork() 总是把任务放进当前工作线程所属线程池的行为，JDK 8 至今都是如此。
+ * <p>
+ * 并行度可以在代码中指定，也可以用系统属性 java8chara.pool.名称.parallelism 按工作负载覆盖，例如：
+ * -Djava8chara.pool.batch.parallelism=12
+ */
+public final class ForkJoinPoolRegistry {
+
+    static final String PARALLELISM_PROPERTY = "java8chara.pool.%s.parallelism";
+
+    private static final ConcurrentMap<String, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private ForkJoinPoolRegistry() {
+    }
+
+    /**
+     * 获取或创建指定名称的线程池
+     *
+     * @param name        线程池名称，同时作为工作线程名的前缀
+     * @param parallelism 默认并行度，系统属性中配置了该线程池的并行度时以系统属性为准
+     * @return
+     */
+    public static ForkJoinPool register(String name, int parallelism) {
+        Objects.requireNonNull(name);
+        int configured = Integer.getInteger(String.format(PARALLELISM_PROPERTY, name), parallelism);
+        ForkJoinPool pool = POOLS.computeIfAbsent(name, key -> newPool(key, configured));
+        if (pool.getParallelism() != configured)
+            throw new IllegalStateException("pool '" + name + "' already registered with parallelism " + pool.getParallelism());
+        return pool;
+    }
+
+    public static ForkJoinPool get(String name) {
+        ForkJoinPool pool = POOLS.get(name);
+        if (pool == null)
+            throw new IllegalArgumentException("no pool registered as '" + name + "'");
+        return pool;
+    }
+
+    /**
+     * 在指定线程池中执行流水线并等待结果，例如：
+     * <pre>
+     * long sum = ForkJoinPoolRegistry.run("batch", () -> LongStream.rangeClosed(1, n).parallel().sum());
+     * </pre>
+     *
+     * @param name     已注册的线程池名称
+     * @param pipeline 包含终端操作的流水线，流必须在其中创建并执行
+     * @return
+     */
+    public static <T> T run(String name, Supplier<T> pipeline) {
+        ForkJoinPool pool = get(name);
+        return pool.submit(pipeline::get).join();
+    }
+
+    public static void run(String name, Runnable pipeline) {
+        get(name).submit(pipeline).join();
+    }
+
+    /**
+     * 各线程池当前的忙碌程度，按注册名称排序
+     *
+     * @return
+     */
+    public static Map<String, PoolStats> stats() {
+        Map<String, PoolStats> stats = new LinkedHashMap<>();
+        //ConcurrentHashMap 迭代出的条目自带值，不必再 get 一次：并发的 shutdown 可能恰好在两次访问之间移除线程池
+        POOLS.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> stats.put(e.getKey(), PoolStats.of(e.getValue())));
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * 关闭并移除线程池，之后可以用新的并行度重新注册
+     *
+     * @param name
+     */
+    public static void shutdown(String name) {
+        ForkJoinPool pool = POOLS.remove(name);
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    private static ForkJoinPool newPool(String name, int parallelism) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-worker-" + thread.getPoolIndex());
+            return thread;
+        };
+        return new ForkJoinPool(parallelism, factory, null, false);
+    }
+
+    /**
+     * 线程池的一次状态快照
+     */
+    public static final class PoolStats {
+        private final int parallelism;
+        private final int poolSize;
+        private final int activeThreads;
+        private final int runningThreads;
+        private final long queuedTasks;
+        private final int queuedSubmissions;
+        private final long steals;
+
+        private PoolStats(int parallelism, int poolSize, int activeThreads, int runningThreads,
+                          long queuedTasks, int queuedSubmissions, long steals) {
+            this.parallelism = parallelism;
+            this.poolSize = poolSize;
+            this.activeThreads = activeThreads;
+            this.runningThreads = runningThreads;
+            this.queuedTasks = queuedTasks;
+            this.queuedSubmissions = queuedSubmissions;
+            this.steals = steals;
+        }
+
+        public static PoolStats of(ForkJoinPool pool) {
+            return new PoolStats(pool.getParallelism(), pool.getPoolSize(), pool.getActiveThreadCount(),
+                    pool.getRunningThreadCount(), pool.getQueuedTaskCount(), pool.getQueuedSubmissionCount(),
+                    pool.getStealCount());
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public int getActiveThreads() {
+            return activeThreads;
+        }
+
+        public int getRunningThreads() {
+            return runningThreads;
+        }
+
+        public long getQueuedTasks() {
+            return queuedTasks;
+        }
+
+        public int getQueuedSubmissions() {
+            return queuedSubmissions;
+        }
+
+        public long getSteals() {
+            return steals;
+        }
+
+        /**
+         * 正在执行任务的线程占并行度的比例
+         *
+         * @return
+         */
+        public double getUtilization() {
+            return (double) activeThreads / parallelism;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("PoolStats{parallelism=%d, size=%d, active=%d, running=%d, queued=%d, submissions=%d, steals=%d, utilization=%.0f%%}",
+                    parallelism, poolSize, activeThreads, runningThreads, queuedTasks, queuedSubmissions, steals, getUtilization() * 100);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mcd.java8.parallel;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 为不同的工作负载使用各自的线程池执行并行流
+ */
+public class ForkJoinPoolRegistryTest {
+
+    @Test
+    public void runInNamedPool() {
+        ForkJoinPoolRegistry.register("batch", 2);
+        ForkJoinPoolRegistry.register("query", 1);
+        try {
+            assertEquals(ParallelTest.iterativeSum(1_000_000), ParallelTest.parallelSumInPool("batch", 1_000_000));
+
+            //并行流的子任务全部在 batch 线程池中执行
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            ForkJoinPoolRegistry.run("batch", () -> IntStream.range(0, 100_000).parallel()
+                    .forEach(i -> threads.add(Thread.currentThread().getName())));
+            System.out.println("Threads used: " + threads);
+            assertTrue(threads.stream().allMatch(name -> name.startsWith("batch-worker-")));
+
+            ForkJoinPoolRegistry.stats().forEach((name, stats) -> System.out.println(name + ": " + stats));
+            assertEquals(2, ForkJoinPoolRegistry.stats().get("batch").getParallelism());
+        } finally {
+            ForkJoinPoolRegistry.shutdown("batch");
+            ForkJoinPoolRegistry.shutdown("query");
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void conflictingParallelism() {
+        ForkJoinPoolRegistry.register("conflict", 2);
+        try {
+            ForkJoinPoolRegistry.register("conflict", 3);
+        } finally {
+            ForkJoinPoolRegistry.shutdown("conflict");
+        }
+    }
+}
@@ -0,0 +1,653 @@
+package com.mcd.java8.parallel;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongPredicate;
+
+/**
+ * 通用的原始类型数组分支/合并规约引擎
+ * <p>
+ * 由 ForkJoinSumCalculator 演化而来，区别在于：
+ * 1、支持 int[]、long[]、double[] 三种原始类型数组，以及任意满足结合律的 LongBinaryOperator / DoubleBinaryOperator 与其单位元（求和、最值、异或等）
+ * 2、叶子任务直接在原始类型上循环，子任务结果保存在 long/double 字段中，整个过程没有任何装箱
+ * 3、子任务只记录 [start, end) 下标区间，拆分时不复制数组
+ * 4、由调用方提供 ForkJoinPool 和拆分策略 SplitPolicy（固定阈值，或经 ThresholdCalibrator 校准并在运行时自适应的阈值）
+ * <p>
+ * 注意：op 必须满足结合律，且 identity 必须是 op 的单位元，否则并行结果与顺序结果不一致
+ */
+public final class ForkJoinReducer {
+
+    public static final int DEFAULT_THRESHOLD = 10_000;//默认的不再将任务分解为子任务的数组大小
+
+    private final ForkJoinPool pool;
+    private final SplitPolicy policy;
+
+    /**
+     * 使用公共线程池和默认阈值
+     */
+    public ForkJoinReducer() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param pool      执行规约的线程池
+     * @param threshold 叶子任务处理的最大元素个数
+     */
+    public ForkJoinReducer(ForkJoinPool pool, int threshold) {
+        this(pool, SplitPolicy.fixed(threshold));
+    }
+
+    /**
+     * @param pool   执行规约的线程池
+     * @param policy 决定子任务是否继续拆分的策略
+     */
+    public ForkJoinReducer(ForkJoinPool pool, SplitPolicy policy) {
+        this.pool = Objects.requireNonNull(pool);
+        this.policy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * 使用针对当前机器和线程池并行度校准过的自适应阈值。
+     * 校准结果会保存到本地文件，之后启动的 JVM 直接读取，无需重新校准
+     *
+     * @param pool
+     * @return
+     */
+    public static ForkJoinReducer calibrated(ForkJoinPool pool) {
+        return new ForkJoinReducer(pool, ThresholdCalibrator.calibratedPolicy(pool));
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public SplitPolicy getPolicy() {
+        return policy;
+    }
+
+    /* ---------------- 通用规约 ---------------- */
+
+    public long reduce(long[] numbers, long identity, LongBinaryOperator op) {
+        return invoke(new LongArrayReduceTask(numbers, 0, numbers.length, policy, identity, op));
+    }
+
+    /**
+     * int 元素会先拓宽为 long 再参与运算，因此求和不会溢出 int
+     */
+    public long reduce(int[] numbers, long identity, LongBinaryOperator op) {
+        return invoke(new IntArrayReduceTask(numbers, 0, numbers.length, policy, identity, op));
+    }
+
+    public double reduce(double[] numbers, double identity, DoubleBinaryOperator op) {
+        return invoke(new DoubleArrayReduceTask(numbers, 0, numbers.length, policy, identity, op));
+    }
+
+    /* ---------------- 条件计数 ---------------- */
+
+    public long countIf(long[] numbers, LongPredicate predicate) {
+        return invoke(new LongCountIfTask(numbers, 0, numbers.length, policy, predicate));
+    }
+
+    public long countIf(int[] numbers, IntPredicate predicate) {
+        return invoke(new IntCountIfTask(numbers, 0, numbers.length, policy, predicate));
+    }
+
+    public long countIf(double[] numbers, DoublePredicate predicate) {
+        return invoke(new DoubleCountIfTask(numbers, 0, numbers.length, policy, predicate));
+    }
+
+    /* ---------------- 常用规约的便捷方法 ---------------- */
+    /* 求和、最值、点积的叶子任务使用 LeafKernels 中多累加变量展开的内核，而不是逐个调用 op */
+
+    public long sum(long[] numbers) {
+        return invoke(new LongKernelTask(numbers, 0, numbers.length, policy, LongKernel.SUM));
+    }
+
+    public long sum(int[] numbers) {
+        return invoke(new IntSumKernelTask(numbers, 0, numbers.length, policy));
+    }
+
+    public double sum(double[] numbers) {
+        return invoke(new DoubleKernelTask(numbers, 0, numbers.length, policy, DoubleKernel.SUM));
+    }
+
+    public long min(long[] numbers) {
+        return invoke(new LongKernelTask(numbers, 0, numbers.length, policy, LongKernel.MIN));
+    }
+
+    public long max(long[] numbers) {
+        return invoke(new LongKernelTask(numbers, 0, numbers.length, policy, LongKernel.MAX));
+    }
+
+    public double min(double[] numbers) {
+        return invoke(new DoubleKernelTask(numbers, 0, numbers.length, policy, DoubleKernel.MIN));
+    }
+
+    public double max(double[] numbers) {
+        return invoke(new DoubleKernelTask(numbers, 0, numbers.length, policy, DoubleKernel.MAX));
+    }
+
+    /**
+     * 点积，两个数组长度必须相同
+     */
+    public double dot(double[] a, double[] b) {
+        if (a.length != b.length)
+            throw new IllegalArgumentException("length mismatch: " + a.length + " != " + b.length);
+        return invoke(new DotProductTask(a, b, 0, a.length, policy));
+    }
+
+    public long xor(long[] numbers) {
+        return reduce(numbers, 0L, (a, b) -> a ^ b);
+    }
+
+    /**
+     * 只有顺序代码才使用 invoke 启动并行计算，任务内部始终直接调用 compute 和 fork
+     */
+    private long invoke(LongResultTask task) {
+        pool.invoke(task);
+        return task.result;
+    }
+
+    private double invoke(DoubleResultTask task) {
+        pool.invoke(task);
+        return task.result;
+    }
+}
+
+/**
+ * 结果为 long 的区间任务。
+ * 结果保存在字段中而不是作为 RecursiveTask<Long> 的返回值，避免每个子任务装箱一次
+ */
+abstract class LongResultTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final int start;//子任务处理的数组的起始位置
+    final int end;//子任务处理的数组的终止位置（不包含）
+    final SplitPolicy policy;
+    long result;
+    int depth;//在拆分树中的深度，根为 0
+    final ForkJoinTelemetry telemetry = ForkJoinTelemetry.current();//未开启遥测时为 null
+
+    LongResultTask(int start, int end, SplitPolicy policy) {
+        this.start = start;
+        this.end = end;
+        this.policy = policy;
+    }
+
+    @Override
+    protected void compute() {
+        int length = end - start;
+        if (!policy.shouldSplit(length)) {
+            if (telemetry == null) {
+                result = computeSequentially();
+                return;
+            }
+            long begin = System.nanoTime();
+            result = computeSequentially();
+            telemetry.leaf(depth, length, begin);
+            return;
+        }
+        if (telemetry != null)
+            telemetry.split();
+        int mid = start + length / 2;
+        LongResultTask leftTask = subTask(start, mid);
+        leftTask.depth = depth + 1;
+        leftTask.fork();//利用另一个 ForkJoinPool 线程异步执行前一半
+        LongResultTask rightTask = subTask(mid, end);
+        rightTask.depth = depth + 1;
+        rightTask.compute();//同步执行后一半
+        leftTask.join();
+        result = combine(leftTask.result, rightTask.result);
+    }
+
+    abstract LongResultTask subTask(int start, int end);
+
+    abstract long computeSequentially();
+
+    abstract long combine(long left, long right);
+}
+
+/**
+ * 结果为 double 的区间任务
+ */
+abstract class DoubleResultTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final int start;
+    final int end;
+    final SplitPolicy policy;
+    double result;
+    int depth;//在拆分树中的深度，根为 0
+    final ForkJoinTelemetry telemetry = ForkJoinTelemetry.current();//未开启遥测时为 null
+
+    DoubleResultTask(int start, int end, SplitPolicy policy) {
+        this.start = start;
+        this.end = end;
+        this.policy = policy;
+    }
+
+    @Override
+    protected void compute() {
+        int length = end - start;
+        if (!policy.shouldSplit(length)) {
+            if (telemetry == null) {
+                result = computeSequentially();
+                return;
+            }
+            long begin = System.nanoTime();
+            result = computeSequentially();
+            telemetry.leaf(depth, length, begin);
+            return;
+        }
+        if (telemetry != null)
+            telemetry.split();
+        int mid = start + length / 2;
+        DoubleResultTask leftTask = subTask(start, mid);
+        leftTask.depth = depth + 1;
+        leftTask.fork();
+        DoubleResultTask rightTask = subTask(mid, end);
+        rightTask.depth = depth + 1;
+        rightTask.compute();
+        leftTask.join();
+        result = combine(leftTask.result, rightTask.result);
+    }
+
+    abstract DoubleResultTask subTask(int start, int end);
+
+    abstract double computeSequentially();
+
+    abstract double combine(double left, double right);
+}
+
+class LongArrayReduceTask extends LongResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] numbers;
+    private final long identity;
+    private final LongBinaryOperator op;
+
+    LongArrayReduceTask(long[] numbers, int start, int end, SplitPolicy policy, long identity, LongBinaryOperator op) {
+        super(start, end, policy);
+        this.numbers = numbers;
+        this.identity = identity;
+        this.op = op;
+    }
+
+    @Override
+    LongResultTask subTask(int start, int end) {
+        return new LongArrayReduceTask(numbers, start, end, policy, identity, op);
+    }
+
+    @Override
+    long computeSequentially() {
+        long acc = identity;
+        for (int i = start; i < end; i++)
+            acc = op.applyAsLong(acc, numbers[i]);
+        return acc;
+    }
+
+    @Override
+    long combine(long left, long right) {
+        return op.applyAsLong(left, right);
+    }
+}
+
+class IntArrayReduceTask extends LongResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] numbers;
+    private final long identity;
+    private final LongBinaryOperator op;
+
+    IntArrayReduceTask(int[] numbers, int start, int end, SplitPolicy policy, long identity, LongBinaryOperator op) {
+        super(start, end, policy);
+        this.numbers = numbers;
+        this.identity = identity;
+        this.op = op;
+    }
+
+    @Override
+    LongResultTask subTask(int start, int end) {
+        return new IntArrayReduceTask(numbers, start, end, policy, identity, op);
+    }
+
+    @Override
+    long computeSequentially() {
+        long acc = identity;
+        for (int i = start; i < end; i++)
+            acc = op.applyAsLong(acc, numbers[i]);
+        return acc;
+    }
+
+    @Override
+    long combine(long left, long right) {
+        return op.applyAsLong(left, right);
+    }
+}
+
+class DoubleArrayReduceTask extends DoubleResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] numbers;
+    private final double identity;
+    private final DoubleBinaryOperator op;
+
+    DoubleArrayReduceTask(double[] numbers, int start, int end, SplitPolicy policy, double identity, DoubleBinaryOperator op) {
+        super(start, end, policy);
+        this.numbers = numbers;
+        this.identity = identity;
+        this.op = op;
+    }
+
+    @Override
+    DoubleResultTask subTask(int start, int end) {
+        return new DoubleArrayReduceTask(numbers, start, end, policy, identity, op);
+    }
+
+    @Override
+    double computeSequentially() {
+        double acc = identity;
+        for (int i = start; i < end; i++)
+            acc = op.applyAsDouble(acc, numbers[i]);
+        return acc;
+    }
+
+    @Override
+    double combine(double left, double right) {
+        return op.applyAsDouble(left, right);
+    }
+}
+
+class LongCountIfTask extends LongResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] numbers;
+    private final LongPredicate predicate;
+
+    LongCountIfTask(long[] numbers, int start, int end, SplitPolicy policy, LongPredicate predicate) {
+        super(start, end, policy);
+        this.numbers = numbers;
+        this.predicate = predicate;
+    }
+
+    @Override
+    LongResultTask subTask(int start, int end) {
+        return new LongCountIfTask(numbers, start, end, policy, predicate);
+    }
+
+    @Override
+    long computeSequentially() {
+        long count = 0;
+        for (int i = start; i < end; i++)
+            if (predicate.test(numbers[i]))
+                count++;
+        return count;
+    }
+
+    @Override
+    long combine(long left, long right) {
+        return left + right;
+    }
+}
+
+class IntCountIfTask extends LongResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] numbers;
+    private final IntPredicate predicate;
+
+    IntCountIfTask(int[] numbers, int start, int end, SplitPolicy policy, IntPredicate predicate) {
+        super(start, end, policy);
+        this.numbers = numbers;
+        this.predicate = predicate;
+    }
+
+    @Override
+    LongResultTask subTask(int start, int end) {
+        return new IntCountIfTask(numbers, start, end, policy, predicate);
+    }
+
+    @Override
+    long computeSequentially() {
+        long count = 0;
+        for (int i = start; i < end; i++)
+            if (predicate.test(numbers[i]))
+                count++;
+        return count;
+    }
+
+    @Override
+    long combine(long left, long right) {
+        return left + right;
+    }
+}
+
+class DoubleCountIfTask extends LongResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] numbers;
+    private final DoublePredicate predicate;
+
+    DoubleCountIfTask(double[] numbers, int start, int end, SplitPolicy policy, DoublePredicate predicate) {
+        super(start, end, policy);
+        this.numbers = numbers;
+        this.predicate = predicate;
+    }
+
+    @Override
+    LongResultTask subTask(int start, int end) {
+        return new DoubleCountIfTask(numbers, start, end, policy, predicate);
+    }
+
+    @Override
+    long computeSequentially() {
+        long count = 0;
+        for (int i = start; i < end; i++)
+            if (predicate.test(numbers[i]))
+                count++;
+        return count;
+    }
+
+    @Override
+    long combine(long left, long right) {
+        return left + right;
+    }
+}
+
+/**
+ * 叶子任务直接调用 LeafKernels 的规约，combine 与内核的运算保持一致
+ */
+enum LongKernel {
+    SUM {
+        @Override
+        long apply(long[] a, int from, int to) {
+            return LeafKernels.sum(a, from, to);
+        }
+
+        @Override
+        long combine(long left, long right) {
+            return left + right;
+        }
+    },
+    MIN {
+        @Override
+        long apply(long[] a, int from, int to) {
+            return LeafKernels.min(a, from, to);
+        }
+
+        @Override
+        long combine(long left, long right) {
+            return Math.min(left, right);
+        }
+    },
+    MAX {
+        @Override
+        long apply(long[] a, int from, int to) {
+            return LeafKernels.max(a, from, to);
+        }
+
+        @Override
+        long combine(long left, long right) {
+            return Math.max(left, right);
+        }
+    };
+
+    abstract long apply(long[] a, int from, int to);
+
+    abstract long combine(long left, long right);
+}
+
+enum DoubleKernel {
+    SUM {
+        @Override
+        double apply(double[] a, int from, int to) {
+            return LeafKernels.sum(a, from, to);
+        }
+
+        @Override
+        double combine(double left, double right) {
+            return left + right;
+        }
+    },
+    MIN {
+        @Override
+        double apply(double[] a, int from, int to) {
+            return LeafKernels.min(a, from, to);
+        }
+
+        @Override
+        double combine(double left, double right) {
+            return Math.min(left, right);
+        }
+    },
+    MAX {
+        @Override
+        double apply(double[] a, int from, int to) {
+            return LeafKernels.max(a, from, to);
+        }
+
+        @Override
+        double combine(double left, double right) {
+            return Math.max(left, right);
+        }
+    };
+
+    abstract double apply(double[] a, int from, int to);
+
+    abstract double combine(double left, double right);
+}
+
+class LongKernelTask extends LongResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] numbers;
+    private final LongKernel kernel;
+
+    LongKernelTask(long[] numbers, int start, int end, SplitPolicy policy, LongKernel kernel) {
+        super(start, end, policy);
+        this.numbers = numbers;
+        this.kernel = kernel;
+    }
+
+    @Override
+    LongResultTask subTask(int start, int end) {
+        return new LongKernelTask(numbers, start, end, policy, kernel);
+    }
+
+    @Override
+    long computeSequentially() {
+        return kernel.apply(numbers, start, end);
+    }
+
+    @Override
+    long combine(long left, long right) {
+        return kernel.combine(left, right);
+    }
+}
+
+class IntSumKernelTask extends LongResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] numbers;
+
+    IntSumKernelTask(int[] numbers, int start, int end, SplitPolicy policy) {
+        super(start, end, policy);
+        this.numbers = numbers;
+    }
+
+    @Override
+    LongResultTask subTask(int start, int end) {
+        return new IntSumKernelTask(numbers, start, end, policy);
+    }
+
+    @Override
+    long computeSequentially() {
+        return LeafKernels.sum(numbers, start, end);
+    }
+
+    @Override
+    long combine(long left, long right) {
+        return left + right;
+    }
+}
+
+class DoubleKernelTask extends DoubleResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] numbers;
+    private final DoubleKernel kernel;
+
+    DoubleKernelTask(double[] numbers, int start, int end, SplitPolicy policy, DoubleKernel kernel) {
+        super(start, end, policy);
+        this.numbers = numbers;
+        this.kernel = kernel;
+    }
+
+    @Override
+    DoubleResultTask subTask(int start, int end) {
+        return new DoubleKernelTask(numbers, start, end, policy, kernel);
+    }
+
+    @Override
+    double computeSequentially() {
+        return kernel.apply(numbers, start, end);
+    }
+
+    @Override
+    double combine(double left, double right) {
+        return kernel.combine(left, right);
+    }
+}
+
+class DotProductTask extends DoubleResultTask {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] a;
+    private final double[] b;
+
+    DotProductTask(double[] a, double[] b, int start, int end, SplitPolicy policy) {
+        super(start, end, policy);
+        this.a = a;
+        this.b = b;
+    }
+
+    @Override
+    DoubleResultTask subTask(int start, int end) {
+        return new DotProductTask(a, b, start, end, policy);
+    }
+
+    @Override
+    double computeSequentially() {
+        return LeafKernels.dot(a, b, start, end);
+    }
+
+    @Override
+    double combine(double left, double right) {
+        return left + right;
+    }
+}
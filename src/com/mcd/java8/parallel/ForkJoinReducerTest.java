@@ -0,0 +1,96 @@
+package com.mcd.java8.parallel;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static com.mcd.java8.Utils.measureSumPerf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ForkJoinReducer 的正确性验证与性能对比
+ */
+public class ForkJoinReducerTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private final ForkJoinReducer reducer = new ForkJoinReducer(POOL, 1_000);
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void reduce() {
+        long[] longs = LongStream.rangeClosed(1, 100_000).toArray();
+        int[] ints = IntStream.rangeClosed(1, 100_000).toArray();
+        double[] doubles = LongStream.rangeClosed(1, 100_000).asDoubleStream().toArray();
+
+        assertEquals(5_000_050_000L, reducer.sum(longs));
+        assertEquals(5_000_050_000L, reducer.sum(ints));//int 拓宽为 long 后求和，不会溢出
+        assertEquals(5_000_050_000d, reducer.sum(doubles), 0d);
+
+        assertEquals(1L, reducer.min(longs));
+        assertEquals(100_000L, reducer.max(longs));
+        assertEquals(100_000d, reducer.max(doubles), 0d);
+        assertEquals(Arrays.stream(longs).reduce(0L, (a, b) -> a ^ b), reducer.xor(longs));
+
+        assertEquals(50_000L, reducer.countIf(longs, n -> (n & 1) == 0));
+        assertEquals(50_000L, reducer.countIf(ints, n -> (n & 1) == 1));
+        assertEquals(10L, reducer.countIf(doubles, d -> d > 99_990d));
+
+        //空数组返回单位元
+        assertEquals(Long.MAX_VALUE, reducer.min(new long[0]));
+    }
+
+    /**
+     * 校准阈值：第一次运行会测量并写入本地文件，之后直接读取
+     */
+    @Test
+    public void calibrate() throws Exception {
+        Path file = Files.createTempFile("forkjoin-threshold", ".properties");
+        Files.delete(file);
+        System.setProperty(ThresholdCalibrator.FILE_PROPERTY, file.toString());
+        try {
+            ThresholdCalibrator.Calibration calibration = ThresholdCalibrator.recalibrate(POOL);
+            System.out.println(calibration);
+            assertTrue(Files.exists(file));
+            assertEquals(calibration.getThreshold(), ThresholdCalibrator.calibration(POOL).getThreshold());
+
+            ForkJoinReducer calibrated = ForkJoinReducer.calibrated(POOL);
+            System.out.println(calibrated.getPolicy());
+            assertEquals(5_000_050_000L, calibrated.sum(LongStream.rangeClosed(1, 100_000).toArray()));
+        } finally {
+            System.clearProperty(ThresholdCalibrator.FILE_PROPERTY);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 与 ParallelTest.parallelRangedSum、Arrays.stream(...).parallel() 对比
+     * 注意：数组在计时之前就已经生成，对比的只是规约本身，parallelRangedSum 则包含了生成数字的开销
+     */
+    @Test
+    public void reducePerf() {
+        int n = 10_000_000;
+        long[] numbers = LongStream.rangeClosed(1, n).toArray();
+        ForkJoinReducer commonPoolReducer = new ForkJoinReducer();
+
+        System.out.println("Parallel range sum done in: " + measureSumPerf(ParallelTest::parallelRangedSum, n) + " msecs");
+        System.out.println("Parallel array stream sum done in: " + measureSumPerf(x -> Arrays.stream(numbers).parallel().sum(), n) + " msecs");
+        System.out.println("ForkJoinReducer sum done in: " + measureSumPerf(x -> commonPoolReducer.sum(numbers), n) + " msecs");
+        //只测量，不读写 ~/.java8chara 中的校准文件
+        ThresholdCalibrator.Calibration calibration = ThresholdCalibrator.calibrate(ForkJoinPool.commonPool());
+        ForkJoinReducer calibratedReducer = new ForkJoinReducer(ForkJoinPool.commonPool(), SplitPolicy.adaptive(calibration.getThreshold()));
+        System.out.println("Calibrated ForkJoinReducer sum done in: " + measureSumPerf(x -> calibratedReducer.sum(numbers), n) + " msecs");
+        System.out.println("ForkJoinSumCalculator sum done in: " + measureSumPerf(x -> ForkJoinPool.commonPool().invoke(new ForkJoinSumCalculator(numbers)), n) + " msecs");
+    }
+}
@@ -8,12 +8,16 @@ import java.util.stream.LongStream;
 
 /**
  * 利用分支/合并框架执行并行求和
+ * <p>
+ * 通用的（多种原始类型、任意规约操作、自定义线程池）版本见 ForkJoinReducer
  */
 public class ForkJoinSumCalculator extends java.util.concurrent.RecursiveTask<Long> {
 
     private final long[] numbers;//要求和的数组
     private final int start;//子任务处理的数组的起始和终止位置
     private final int end;//子任务处理的数组的起始和终止位置
+    private int depth;//在拆分树中的深度，见 ForkJoinTelemetry
+    private final ForkJoinTelemetry telemetry = ForkJoinTelemetry.current();
 
     public static final long THRESHOLD = 10_000;//不再将任务分解为子任务的数组大小
 
@@ -47,14 +51,24 @@ public class ForkJoinSumCalculator extends java.util.concurrent.RecursiveTask<Lo
     @Override
     protected Long compute() {
         int length = end - start;//负责求和的部分的大小
-        if (length <= THRESHOLD)//如果大小小于等于阈值，顺序计算结果
-            return computeSequentially();
+        if (length <= THRESHOLD) {//如果大小小于等于阈值，顺序计算结果
+            if (telemetry == null)
+                return computeSequentially();
+            long begin = System.nanoTime();
+            long sum = computeSequentially();
+            telemetry.leaf(depth, length, begin);
+            return sum;
+        }
+        if (telemetry != null)
+            telemetry.split();
         ForkJoinSumCalculator leftTask
                 = new ForkJoinSumCalculator(numbers, start, start + length / 2);//创建一个子任务来为数组的另一半求和
+        leftTask.depth = depth + 1;
         leftTask.fork();//利用另一个ForkJoinPool线程异步执行新创建的子任务
 
         ForkJoinSumCalculator rightTask
                 = new ForkJoinSumCalculator(numbers, start + length / 2, end);//创建一个任务为数组的后一半求和
+        rightTask.depth = depth + 1;
         Long rightResult = rightTask.compute();//同步执行第二个子任务，有可能允许进一步递归划分
         Long leftResult = leftTask.join();//读取第一个子任务的结果，如果尚未完成就等待
 
@@ -68,7 +82,7 @@ public class ForkJoinSumCalculator extends java.util.concurrent.RecursiveTask<Lo
      */
     private long computeSequentially() {
         long sum = 0;
-        for (int i = 0; i < end; i++)
+        for (int i = start; i < end; i++)//只累加本任务负责的 [start, end) 区间
             sum += numbers[i];
         return sum;
     }
@@ -101,6 +115,7 @@ class ForkJoinSumCalculatorTest {
  * 4、调试使用分支/合并框架的并行计算有点棘手。
  *      平常的程序可以通过栈跟踪来找问题，
  *      但是在分支/合并计算上因为调用 compute 的线程并不是概念上的调用方，后者是调用 fork 的那个，所以无法进行栈跟踪来找问题
+ *      可以用 ForkJoinTelemetry 查看拆分深度、叶子任务的大小和耗时、窃取次数和各线程的负载
  *
  * 5、和并行流一样。不能理所应当的认为在多核处理器上使用分支/并行框架就一定会比顺序计算快。
  *      一个任务分解成多个独立的子任务虽然可以让性能在并行化时有所提升，但是这个分解的过程同样需要消耗时间。
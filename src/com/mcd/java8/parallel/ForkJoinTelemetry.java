@@ -0,0 +1,358 @@
+package com.mcd.java8.parallel;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 分支/合并任务的可选遥测：拆分树的深度、叶子任务的大小和耗时、每个工作线程的忙碌时间、窃取次数
+ * <p>
+ * ForkJoinSumCalculator 末尾的说明提到，分支/合并计算很难调试：慢的时候分不清是拆分太少、拆分太多还是负载不均衡。
+ * 调用 enable() 之后，ForkJoinSumCalculator 和 ForkJoinReducer 的任务（LongResultTask、DoubleResultTask）会记录：
+ * 1、每次拆分和每个叶子任务的深度，最小与最大叶子深度相差很大说明拆分不均衡
+ * 2、叶子任务的元素个数和耗时（含微秒级直方图），叶子太小说明拆分开销占比过高，太大说明并行度不足
+ * 3、每个线程执行叶子任务的总耗时，最忙线程与平均值之比即负载不均衡的程度
+ * 4、run 期间线程池 getStealCount() 的增量
+ * 统计使用 Striped 系列计数器，多个工作线程同时记录也不会竞争同一条缓存行。
+ * <p>
+ * 关闭时（默认）任务只在创建时读取一次 volatile 字段并判断是否为 null，几乎没有开销。
+ * 开启后同时注册为 MBean（OBJECT_NAME），可以用 JConsole 查看；run 结束时把本次的汇总写入日志
+ */
+public final class ForkJoinTelemetry implements ForkJoinTelemetryMXBean {
+
+    public static final String OBJECT_NAME = "com.mcd.java8.parallel:type=ForkJoinTelemetry";
+
+    private static final Logger LOG = Logger.getLogger(ForkJoinTelemetry.class.getName());
+    private static final long[] LEAF_MICROS_BOUNDS = {1, 10, 100, 1_000, 10_000, 100_000};
+
+    private static volatile ForkJoinTelemetry current;
+
+    private final StripedLongAdder splits = new StripedLongAdder();
+    private final StripedLongAdder leaves = new StripedLongAdder();
+    private final StripedLongAdder leafElements = new StripedLongAdder();
+    private final StripedLongAdder leafNanos = new StripedLongAdder();
+    private final StripedLongMinMax leafDepth = new StripedLongMinMax();
+    private final StripedLongMinMax leafSize = new StripedLongMinMax();
+    private final StripedLongMinMax leafDuration = new StripedLongMinMax();
+    private final StripedHistogram leafMicros = new StripedHistogram(LEAF_MICROS_BOUNDS);
+    private final Map<String, LongAdder> workerBusyNanos = new ConcurrentHashMap<>();
+    private final LongAdder steals = new LongAdder();
+    private volatile Summary lastSummary;
+
+    private ForkJoinTelemetry() {
+    }
+
+    /**
+     * 开启遥测并注册 MBean，已开启时返回当前实例
+     *
+     * @return
+     */
+    public static synchronized ForkJoinTelemetry enable() {
+        if (current == null) {
+            ForkJoinTelemetry telemetry = new ForkJoinTelemetry();
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (!server.isRegistered(name))
+                    server.registerMBean(telemetry, name);
+            } catch (JMException ex) {
+                LOG.warning("Unable to register " + OBJECT_NAME + ": " + ex);
+            }
+            current = telemetry;
+        }
+        return current;
+    }
+
+    public static synchronized void disable() {
+        if (current == null)
+            return;
+        current = null;
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+        } catch (JMException ex) {
+            LOG.warning("Unable to unregister " + OBJECT_NAME + ": " + ex);
+        }
+    }
+
+    /**
+     * 当前开启的遥测，关闭时返回 null
+     */
+    public static ForkJoinTelemetry current() {
+        return current;
+    }
+
+    /**
+     * 清零后执行一次计算，记录期间线程池的窃取次数，并生成本次的汇总
+     * <p>
+     * 计数器属于整个 JVM 共用的 current 实例，run 开始时的清零也会清掉其他计算的统计：
+     * 两个 run 同时进行（或 run 期间还有其他分支/合并任务在执行）时，两者的统计会混在一起，应依次调用
+     *
+     * @param pool        执行计算的线程池，用于统计窃取次数
+     * @param computation
+     * @return 计算结果
+     */
+    public <T> T run(ForkJoinPool pool, Supplier<T> computation) {
+        reset();
+        long stealsBefore = pool.getStealCount();
+        long start = System.nanoTime();
+        T result = computation.get();
+        long wallNanos = System.nanoTime() - start;
+        steals.add(pool.getStealCount() - stealsBefore);
+        lastSummary = summary(pool.getParallelism(), wallNanos);
+        LOG.info(lastSummary.toString());
+        return result;
+    }
+
+    void split() {
+        splits.increment();
+    }
+
+    /**
+     * 记录一个叶子任务
+     *
+     * @param depth      在拆分树中的深度，根为 0
+     * @param size       处理的元素个数
+     * @param startNanos 开始计算时的 System.nanoTime()
+     */
+    void leaf(int depth, long size, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        leaves.increment();
+        leafElements.add(size);
+        leafNanos.add(nanos);
+        leafDepth.update(depth);
+        leafSize.update(size);
+        leafDuration.update(nanos);
+        leafMicros.record(nanos / 1_000);
+        workerBusyNanos.computeIfAbsent(Thread.currentThread().getName(), name -> new LongAdder()).add(nanos);
+    }
+
+    public Summary summary(int parallelism, long wallNanos) {
+        Map<String, Long> busy = new TreeMap<>();
+        workerBusyNanos.forEach((name, nanos) -> busy.put(name, nanos.sum()));
+        return new Summary(parallelism, wallNanos, splits.sum(), leaves.sum(), getMinLeafDepth(), getMaxLeafDepth(),
+                getMinLeafSize(), getMaxLeafSize(), getMeanLeafSize(), getMeanLeafMicros(), getMaxLeafMicros(),
+                LEAF_MICROS_BOUNDS, leafMicros.snapshot(), steals.sum(), busy);
+    }
+
+    public Summary lastSummary() {
+        return lastSummary;
+    }
+
+    @Override
+    public String getLastSummary() {
+        Summary summary = lastSummary;
+        return summary == null ? "" : summary.toString();
+    }
+
+    @Override
+    public long getSplits() {
+        return splits.sum();
+    }
+
+    @Override
+    public long getLeaves() {
+        return leaves.sum();
+    }
+
+    @Override
+    public long getMinLeafDepth() {
+        return getLeaves() == 0 ? 0 : leafDepth.getMin();
+    }
+
+    @Override
+    public long getMaxLeafDepth() {
+        return getLeaves() == 0 ? 0 : leafDepth.getMax();
+    }
+
+    @Override
+    public long getMinLeafSize() {
+        return getLeaves() == 0 ? 0 : leafSize.getMin();
+    }
+
+    @Override
+    public long getMaxLeafSize() {
+        return getLeaves() == 0 ? 0 : leafSize.getMax();
+    }
+
+    @Override
+    public double getMeanLeafSize() {
+        long count = getLeaves();
+        return count == 0 ? 0 : (double) leafElements.sum() / count;
+    }
+
+    @Override
+    public double getMeanLeafMicros() {
+        long count = getLeaves();
+        return count == 0 ? 0 : leafNanos.sum() / 1e3 / count;
+    }
+
+    @Override
+    public double getMaxLeafMicros() {
+        return getLeaves() == 0 ? 0 : leafDuration.getMax() / 1e3;
+    }
+
+    @Override
+    public long[] getLeafMicrosHistogram() {
+        return leafMicros.snapshot();
+    }
+
+    @Override
+    public long getSteals() {
+        return steals.sum();
+    }
+
+    @Override
+    public Map<String, Long> getWorkerBusyMillis() {
+        Map<String, Long> busy = new TreeMap<>();
+        workerBusyNanos.forEach((name, nanos) -> busy.put(name, nanos.sum() / 1_000_000));
+        return busy;
+    }
+
+    @Override
+    public double getImbalance() {
+        return imbalance(workerBusyNanos.values().stream().mapToLong(LongAdder::sum).toArray());
+    }
+
+    static double imbalance(long[] busy) {
+        if (busy.length == 0)
+            return 1;
+        long max = 0, total = 0;
+        for (long nanos : busy) {
+            max = Math.max(max, nanos);
+            total += nanos;
+        }
+        return total == 0 ? 1 : max / ((double) total / busy.length);
+    }
+
+    @Override
+    public void reset() {
+        splits.reset();
+        leaves.reset();
+        leafElements.reset();
+        leafNanos.reset();
+        leafDepth.reset();
+        leafSize.reset();
+        leafDuration.reset();
+        leafMicros.reset();
+        workerBusyNanos.clear();
+        steals.reset();
+    }
+
+    /**
+     * 一次 run 的汇总
+     */
+    public static final class Summary {
+        private final int parallelism;
+        private final long wallNanos;
+        private final long splits;
+        private final long leaves;
+        private final long minLeafDepth;
+        private final long maxLeafDepth;
+        private final long minLeafSize;
+        private final long maxLeafSize;
+        private final double meanLeafSize;
+        private final double meanLeafMicros;
+        private final double maxLeafMicros;
+        private final long[] leafMicrosBounds;
+        private final long[] leafMicrosHistogram;
+        private final long steals;
+        private final Map<String, Long> workerBusyNanos;
+
+        Summary(int parallelism, long wallNanos, long splits, long leaves, long minLeafDepth, long maxLeafDepth,
+                long minLeafSize, long maxLeafSize, double meanLeafSize, double meanLeafMicros, double maxLeafMicros,
+                long[] leafMicrosBounds, long[] leafMicrosHistogram, long steals, Map<String, Long> workerBusyNanos) {
+            this.parallelism = parallelism;
+            this.wallNanos = wallNanos;
+            this.splits = splits;
+            this.leaves = leaves;
+            this.minLeafDepth = minLeafDepth;
+            this.maxLeafDepth = maxLeafDepth;
+            this.minLeafSize = minLeafSize;
+            this.maxLeafSize = maxLeafSize;
+            this.meanLeafSize = meanLeafSize;
+            this.meanLeafMicros = meanLeafMicros;
+            this.maxLeafMicros = maxLeafMicros;
+            this.leafMicrosBounds = leafMicrosBounds;
+            this.leafMicrosHistogram = leafMicrosHistogram;
+            this.steals = steals;
+            this.workerBusyNanos = workerBusyNanos;
+        }
+
+        public long getSplits() {
+            return splits;
+        }
+
+        public long getLeaves() {
+            return leaves;
+        }
+
+        public long getMinLeafDepth() {
+            return minLeafDepth;
+        }
+
+        public long getMaxLeafDepth() {
+            return maxLeafDepth;
+        }
+
+        public long getMinLeafSize() {
+            return minLeafSize;
+        }
+
+        public long getMaxLeafSize() {
+            return maxLeafSize;
+        }
+
+        public double getMeanLeafSize() {
+            return meanLeafSize;
+        }
+
+        public long getSteals() {
+            return steals;
+        }
+
+        public Map<String, Long> getWorkerBusyNanos() {
+            return workerBusyNanos;
+        }
+
+        public double getImbalance() {
+            return imbalance(workerBusyNanos.values().stream().mapToLong(Long::longValue).toArray());
+        }
+
+        /**
+         * 叶子任务的总忙碌时间占 “墙钟时间 * 并行度” 的比例
+         */
+        public double getUtilization() {
+            long busy = workerBusyNanos.values().stream().mapToLong(Long::longValue).sum();
+            return wallNanos == 0 ? 0 : (double) busy / ((double) wallNanos * parallelism);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder histogram = new StringBuilder();
+            for (int i = 0; i < leafMicrosHistogram.length; i++) {
+                if (leafMicrosHistogram[i] == 0)
+                    continue;
+                histogram.append(histogram.length() == 0 ? "" : ", ")
+                        .append(i < leafMicrosBounds.length ? "<=" + leafMicrosBounds[i] : ">" + leafMicrosBounds[leafMicrosBounds.length - 1])
+                        .append("us: ").append(leafMicrosHistogram[i]);
+            }
+            return String.format("fork/join run: %.3f ms on parallelism %d, %d splits, %d leaves at depth %d..%d, "
+                            + "leaf size %d..%d (mean %.1f), leaf time mean %.1f us max %.1f us [%s], %d steals, "
+                            + "%d workers, imbalance %.2f, utilization %.0f%%",
+                    wallNanos / 1e6, parallelism, splits, leaves, minLeafDepth, maxLeafDepth, minLeafSize, maxLeafSize,
+                    meanLeafSize, meanLeafMicros, maxLeafMicros, histogram, steals, workerBusyNanos.size(),
+                    getImbalance(), getUtilization() * 100);
+        }
+    }
+}
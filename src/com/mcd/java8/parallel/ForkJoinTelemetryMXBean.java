@@ -0,0 +1,46 @@
+package com.mcd.java8.parallel;
+
+import java.util.Map;
+
+/**
+ * ForkJoinTelemetry 的 JMX 接口，注册名为 ForkJoinTelemetry.OBJECT_NAME。
+ * 所有数值都是自上次 reset（或上一次 run 开始）以来的累计值
+ */
+public interface ForkJoinTelemetryMXBean {
+
+    long getSplits();
+
+    long getLeaves();
+
+    long getMinLeafDepth();
+
+    long getMaxLeafDepth();
+
+    long getMinLeafSize();
+
+    long getMaxLeafSize();
+
+    double getMeanLeafSize();
+
+    double getMeanLeafMicros();
+
+    double getMaxLeafMicros();
+
+    long[] getLeafMicrosHistogram();
+
+    long getSteals();
+
+    /**
+     * 各工作线程执行叶子任务的总耗时（毫秒），按线程名索引
+     */
+    Map<String, Long> getWorkerBusyMillis();
+
+    /**
+     * 最忙的线程与平均值之比，1 表示完全均衡
+     */
+    double getImbalance();
+
+    String getLastSummary();
+
+    void reset();
+}
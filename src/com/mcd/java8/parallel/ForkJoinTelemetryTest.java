@@ -0,0 +1,143 @@
+package com.mcd.java8.parallel;
+
+import com.mcd.java8.perf.PerfResult;
+import com.mcd.java8.perf.PerfRunner;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongBinaryOperator;
+import java.util.stream.LongStream;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分支/合并遥测：拆分树的形状、JMX 注册，以及关闭时的开销
+ */
+public class ForkJoinTelemetryTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final long[] numbers = LongStream.rangeClosed(1, 1_000_000).toArray();
+
+    @After
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void recordsSplitTree() throws Exception {
+        ForkJoinReducer reducer = new ForkJoinReducer(pool, 10_000);
+        ForkJoinTelemetry telemetry = ForkJoinTelemetry.enable();
+        try {
+            long sum = telemetry.run(pool, () -> reducer.reduce(numbers, 0L, Long::sum));
+            assertEquals(500_000_500_000L, sum);
+            ForkJoinTelemetry.Summary summary = telemetry.lastSummary();
+            System.out.println(summary);
+            //1_000_000 对半拆分 7 次后每段 7812 或 7813 个元素，不超过阈值
+            assertEquals(128, summary.getLeaves());
+            assertEquals(127, summary.getSplits());
+            assertEquals(7, summary.getMinLeafDepth());
+            assertEquals(7, summary.getMaxLeafDepth());
+            assertEquals(7812, summary.getMinLeafSize());
+            assertEquals(7813, summary.getMaxLeafSize());
+            assertTrue(summary.getImbalance() >= 1);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(ForkJoinTelemetry.OBJECT_NAME);
+            assertEquals(128L, server.getAttribute(name, "Leaves"));
+            System.out.println(server.getAttribute(name, "WorkerBusyMillis"));
+
+            //ForkJoinSumCalculator 使用固定的 THRESHOLD
+            long calculated = telemetry.run(pool, () -> pool.invoke(new ForkJoinSumCalculator(numbers)));
+            assertEquals(sum, calculated);
+            assertEquals(128, telemetry.getLeaves());
+        } finally {
+            ForkJoinTelemetry.disable();
+        }
+        assertNull(ForkJoinTelemetry.current());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(ForkJoinTelemetry.OBJECT_NAME)));
+    }
+
+    /**
+     * 关闭时与一个没有任何遥测代码、拆分方式相同的任务对比，中位数不应明显变慢。
+     * 叶子循环中 op 调用点的类型剖析会影响结果：其他测试（如 ForkJoinReducerTest）先用多种运算调用过 reduce 时，
+     * 调用点变为多态、无法内联，会慢好几倍。所以先让两者都用同样几种运算各执行一次，在相同的条件下比较。
+     * 每次只有几毫秒、容易受调度和重新编译影响，所以两者交替测量多轮，各取最好的一轮的中位数，只做宽松的断言
+     */
+    @Test
+    public void overhead() {
+        ForkJoinReducer reducer = new ForkJoinReducer(pool, 10_000);
+        for (LongBinaryOperator op : new LongBinaryOperator[]{Long::sum, Math::min, Math::max, (a, b) -> a ^ b}) {
+            reducer.reduce(numbers, 0L, op);
+            pool.invoke(new PlainReduceTask(numbers, 0, numbers.length, 0L, op));
+        }
+        PerfRunner runner = new PerfRunner().iterations(10);
+        PerfResult baseline = null, off = null;
+        for (int round = 0; round < 5; round++) {
+            PerfResult b = runner.run("no telemetry code", () -> pool.invoke(new PlainReduceTask(numbers, 0, numbers.length, 0L, Long::sum)));
+            PerfResult o = runner.run("telemetry off", () -> reducer.reduce(numbers, 0L, Long::sum));
+            if (baseline == null || b.percentile(50) < baseline.percentile(50))
+                baseline = b;
+            if (off == null || o.percentile(50) < off.percentile(50))
+                off = o;
+        }
+        System.out.println(baseline);
+        System.out.println(off);
+        ForkJoinTelemetry.enable();
+        try {
+            System.out.println(runner.run("telemetry on", () -> reducer.reduce(numbers, 0L, Long::sum)));
+        } finally {
+            ForkJoinTelemetry.disable();
+        }
+        //在 ForkJoinReducerTest 之后运行时，关闭遥测也比基线慢 30% 到 40%（多种任务子类使 subTask 等调用点变为多态），所以允许 2 倍
+        assertTrue(off.percentile(50) < baseline.percentile(50) * 2 + 200_000);
+    }
+
+    /**
+     * 与 LongResultTask 相同的对半拆分，但没有遥测字段和判断
+     */
+    private static final class PlainReduceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] numbers;
+        private final int start;
+        private final int end;
+        private final long identity;
+        private final LongBinaryOperator op;
+        private long result;
+
+        PlainReduceTask(long[] numbers, int start, int end, long identity, LongBinaryOperator op) {
+            this.numbers = numbers;
+            this.start = start;
+            this.end = end;
+            this.identity = identity;
+            this.op = op;
+        }
+
+        @Override
+        protected void compute() {
+            int length = end - start;
+            if (length <= 10_000) {
+                long acc = identity;
+                for (int i = start; i < end; i++)
+                    acc = op.applyAsLong(acc, numbers[i]);
+                result = acc;
+                return;
+            }
+            int mid = start + length / 2;
+            PlainReduceTask left = new PlainReduceTask(numbers, start, mid, identity, op);
+            left.fork();
+            PlainReduceTask right = new PlainReduceTask(numbers, mid, end, identity, op);
+            right.compute();
+            left.join();
+            result = op.applyAsLong(left.result, right.result);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.mcd.java8.parallel;
+
+import java.util.Spliterator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 可以并行拆分的 iterate：由初始值、步进函数和 “跳到第 k 个元素” 的函数定义的 long 序列
+ * <p>
+ * Stream.iterate 的每个元素都依赖前一个元素，只能顺序生成，拆分时要先把前一半元素逐个生成出来缓存起来，所以并行反而更慢。
+ * 如果可以在 O(1) 或 O(log k) 时间内直接算出第 k 个元素，拆分就只需要记录下标区间 [index, end)：
+ * 1、trySplit 从中间对半拆分，不生成任何元素，所以是 SIZED + SUBSIZED，拆分效果与 LongStream.rangeClosed 相同
+ * 2、每个子区间开始遍历时跳到起点一次，之后用步进函数逐个生成，不装箱
+ * <p>
+ * 内置的序列都按 long 溢出回绕（即模 2^64）计算，与顺序逐个计算的结果完全一致：
+ * 等差数列 O(1) 跳转；线性同余（LCG）把仿射变换 x -> a * x + c 自乘 k 次，O(log k)；
+ * 二阶线性递推（斐波那契数列等）用 2x2 矩阵快速幂，O(log k)
+ */
+public abstract class JumpSequence {
+
+    private final long size;
+
+    JumpSequence(long size) {
+        if (size < 0)
+            throw new IllegalArgumentException("size must not be negative: " + size);
+        this.size = size;
+    }
+
+    /**
+     * start, start + step, start + 2 * step ...
+     */
+    public static JumpSequence arithmetic(long start, long step, long size) {
+        return new JumpSequence(size) {
+            @Override
+            Cursor cursorAt(long k) {
+                return new Cursor() {
+                    long next = start + k * step;
+
+                    @Override
+                    public long next() {
+                        long value = next;
+                        next += step;
+                        return value;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * 与 LongStream.rangeClosed(from, to) 相同的元素
+     */
+    public static JumpSequence rangeClosed(long from, long to) {
+        return arithmetic(from, 1, Math.max(0, to - from + 1));
+    }
+
+    /**
+     * 线性同余序列 seed, a * seed + c, ...（模 2^64）
+     */
+    public static JumpSequence linearCongruential(long seed, long multiplier, long increment, long size) {
+        return new JumpSequence(size) {
+            @Override
+            Cursor cursorAt(long k) {
+                return new Cursor() {
+                    long next = affinePower(multiplier, increment, k, seed);
+
+                    @Override
+                    public long next() {
+                        long value = next;
+                        next = multiplier * next + increment;
+                        return value;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * 二阶线性递推 x(k+2) = p * x(k+1) + q * x(k)（模 2^64）
+     */
+    public static JumpSequence linearRecurrence(long x0, long x1, long p, long q, long size) {
+        return new JumpSequence(size) {
+            @Override
+            Cursor cursorAt(long k) {
+                long[] start = matrixPower(p, q, k, x0, x1);
+                return new Cursor() {
+                    long current = start[0];
+                    long following = start[1];
+
+                    @Override
+                    public long next() {
+                        long value = current;
+                        long next = p * following + q * current;
+                        current = following;
+                        following = next;
+                        return value;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * 0, 1, 1, 2, 3, 5 ...，与 StreamTest 中 IntSupplier 生成的斐波那契数列相同（long，模 2^64）
+     */
+    public static JumpSequence fibonacci(long size) {
+        return linearRecurrence(0, 1, 1, 1, size);
+    }
+
+    /**
+     * 自定义序列
+     *
+     * @param seed 第 0 个元素
+     * @param step 由当前元素计算下一个元素，与 Stream.iterate 的参数相同
+     * @param jump (seed, k) -> 第 k 个元素，应当是 O(1) 或 O(log k) 的
+     * @param size 元素个数
+     * @return
+     */
+    public static JumpSequence of(long seed, LongUnaryOperator step, LongBinaryOperator jump, long size) {
+        return new JumpSequence(size) {
+            @Override
+            Cursor cursorAt(long k) {
+                return new Cursor() {
+                    long next = k == 0 ? seed : jump.applyAsLong(seed, k);
+
+                    @Override
+                    public long next() {
+                        long value = next;
+                        next = step.applyAsLong(next);
+                        return value;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * 从第 k 个元素开始逐个生成的游标
+     */
+    abstract Cursor cursorAt(long k);
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 第 k 个元素
+     */
+    public long get(long k) {
+        if (k < 0 || k >= size)
+            throw new IndexOutOfBoundsException("index " + k + " out of [0, " + size + ")");
+        return cursorAt(k).next();
+    }
+
+    public Spliterator.OfLong spliterator() {
+        return new JumpSpliterator(this, 0, size);
+    }
+
+    public LongStream stream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    public LongStream parallelStream() {
+        return StreamSupport.longStream(spliterator(), true);
+    }
+
+    /**
+     * 仿射变换 x -> a * x + c 自乘 k 次后作用于 x
+     */
+    static long affinePower(long a, long c, long k, long x) {
+        long resultA = 1, resultC = 0;
+        long baseA = a, baseC = c;
+        while (k > 0) {
+            if ((k & 1) != 0) {
+                resultC = baseA * resultC + baseC;
+                resultA = baseA * resultA;
+            }
+            baseC = baseA * baseC + baseC;
+            baseA = baseA * baseA;
+            k >>>= 1;
+        }
+        return resultA * x + resultC;
+    }
+
+    /**
+     * (x(k), x(k+1)) = M^k * (x0, x1)，其中 M = [[0, 1], [q, p]]
+     */
+    static long[] matrixPower(long p, long q, long k, long x0, long x1) {
+        long r00 = 1, r01 = 0, r10 = 0, r11 = 1;
+        long m00 = 0, m01 = 1, m10 = q, m11 = p;
+        while (k > 0) {
+            if ((k & 1) != 0) {
+                long t00 = r00 * m00 + r01 * m10, t01 = r00 * m01 + r01 * m11;
+                long t10 = r10 * m00 + r11 * m10, t11 = r10 * m01 + r11 * m11;
+                r00 = t00;
+                r01 = t01;
+                r10 = t10;
+                r11 = t11;
+            }
+            long t00 = m00 * m00 + m01 * m10, t01 = m00 * m01 + m01 * m11;
+            long t10 = m10 * m00 + m11 * m10, t11 = m10 * m01 + m11 * m11;
+            m00 = t00;
+            m01 = t01;
+            m10 = t10;
+            m11 = t11;
+            k >>>= 1;
+        }
+        return new long[]{r00 * x0 + r01 * x1, r10 * x0 + r11 * x1};
+    }
+
+    interface Cursor {
+        /**
+         * 返回当前元素并前进一个
+         */
+        long next();
+    }
+}
+
+/**
+ * 只记录下标区间 [index, end) 的 Spliterator，第一次遍历时才跳到 index 创建游标
+ */
+class JumpSpliterator implements Spliterator.OfLong {
+
+    private final JumpSequence sequence;
+    private long index;
+    private final long end;
+    private JumpSequence.Cursor cursor;
+
+    JumpSpliterator(JumpSequence sequence, long index, long end) {
+        this.sequence = sequence;
+        this.index = index;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(LongConsumer action) {
+        if (index >= end)
+            return false;
+        if (cursor == null)
+            cursor = sequence.cursorAt(index);
+        index++;
+        action.accept(cursor.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(LongConsumer action) {
+        if (index >= end)
+            return;
+        JumpSequence.Cursor c = cursor != null ? cursor : sequence.cursorAt(index);
+        for (long i = index; i < end; i++)
+            action.accept(c.next());
+        index = end;
+        cursor = c;
+    }
+
+    @Override
+    public Spliterator.OfLong trySplit() {
+        long mid = index + (end - index) / 2;
+        if (mid <= index || cursor != null)//已经开始遍历的不再拆分
+            return null;
+        Spliterator.OfLong prefix = new JumpSpliterator(sequence, index, mid);
+        index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+}
@@ -0,0 +1,86 @@
+package com.mcd.java8.parallel;
+
+import com.mcd.java8.perf.PerfRunner;
+import org.junit.Test;
+
+import java.util.Spliterator;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 可拆分的 iterate：与 LongStream.iterate 逐个生成的结果对比，以及与 parallelSum 的性能对比
+ */
+public class JumpSequenceTest {
+
+    private static final long A = 6364136223846793005L, C = 1442695040888963407L;//Knuth MMIX 的 LCG 参数
+
+    @Test
+    public void sameAsIterate() {
+        int n = 100_003;
+        assertSame(JumpSequence.arithmetic(7, -3, n), LongStream.iterate(7, i -> i - 3).limit(n).toArray());
+        assertSame(JumpSequence.linearCongruential(42, A, C, n), LongStream.iterate(42, x -> A * x + C).limit(n).toArray());
+
+        long[] fibonacci = new long[n];//与 StreamTest 中的 IntSupplier 相同，long 溢出后回绕
+        long prev = 0, curr = 1;
+        for (int i = 0; i < n; i++) {
+            fibonacci[i] = prev;
+            long next = prev + curr;
+            prev = curr;
+            curr = next;
+        }
+        assertSame(JumpSequence.fibonacci(n), fibonacci);
+
+        long[] recurrence = new long[n];//x(k+2) = 3 * x(k+1) - 2 * x(k)
+        recurrence[0] = 5;
+        recurrence[1] = -1;
+        for (int i = 2; i < n; i++)
+            recurrence[i] = 3 * recurrence[i - 1] - 2 * recurrence[i - 2];
+        assertSame(JumpSequence.linearRecurrence(5, -1, 3, -2, n), recurrence);
+
+        //自定义：每次乘 3，第 k 个元素为 seed * 3^k
+        LongUnaryOperator times3 = x -> x * 3;
+        JumpSequence powers = JumpSequence.of(2, times3, (seed, k) -> seed * JumpSequence.affinePower(3, 0, k, 1), n);
+        assertSame(powers, LongStream.iterate(2, times3).limit(n).toArray());
+
+        assertEquals(0, JumpSequence.rangeClosed(5, 4).stream().count());
+        assertEquals(12586269025L, JumpSequence.fibonacci(100).get(50));
+    }
+
+    private static void assertSame(JumpSequence sequence, long[] expected) {
+        assertArrayEquals(expected, sequence.stream().toArray());
+        assertArrayEquals(expected, sequence.parallelStream().toArray());
+        assertEquals(LongStream.of(expected).sum(), sequence.parallelStream().sum());
+        for (long k : new long[]{0, 1, 2, expected.length / 3, expected.length - 1})
+            assertEquals(expected[(int) k], sequence.get(k));
+    }
+
+    @Test
+    public void balancedSplit() {
+        Spliterator.OfLong spliterator = JumpSequence.fibonacci(1_000_001).spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        Spliterator.OfLong prefix = spliterator.trySplit();
+        assertEquals(500_000, prefix.estimateSize());
+        assertEquals(500_001, spliterator.estimateSize());
+        assertEquals(500_000, prefix.getExactSizeIfKnown());
+
+        Spliterator.OfLong single = JumpSequence.fibonacci(1).spliterator();
+        assertNull(single.trySplit());
+    }
+
+    @Test
+    public void jumpSumPerf() {
+        long n = 10_000_000;
+        assertEquals(ParallelTest.iterativeSum(n), ParallelTest.parallelSum(n));
+        assertEquals(ParallelTest.iterativeSum(n), ParallelTest.parallelJumpSum(n));
+        PerfRunner runner = new PerfRunner().warmup(3, 20).iterations(10);
+        System.out.println(runner.run("Parallel iterate sum", ParallelTest::parallelSum, n));
+        System.out.println(runner.run("Parallel jump sum", ParallelTest::parallelJumpSum, n));
+        System.out.println(runner.run("Parallel range sum", ParallelTest::parallelRangedSum, n));
+        System.out.println(runner.run("Parallel LCG sum", () -> JumpSequence.linearCongruential(1, A, C, n).parallelStream().sum()));
+    }
+}
@@ -0,0 +1,195 @@
+package com.mcd.java8.parallel;
+
+/**
+ * 叶子任务使用的顺序计算内核
+ * <p>
+ * ForkJoinSumCalculator.computeSequentially() 和 ParallelTest.iterativeSum 中的循环只有一个累加变量，
+ * 每次加法都必须等上一次加法完成，是一条串行的依赖链，CPU 的多个执行单元和 SIMD 寄存器都用不上。
+ * 这里的内核使用 4 个相互独立的累加变量并做 4 路展开：
+ * 1、4 条依赖链可以在流水线中重叠执行
+ * 2、循环体规整，C2 编译器更容易把它自动向量化
+ * <p>
+ * 运行时加了 --add-modules jdk.incubator.vector 时，较长的区间改用 VectorKernels 中基于 Vector API 的显式 SIMD 版本，
+ * 否则（包括 JDK 16 以前）使用这里的 unrolled* 版本，两者的结果只在 double 的舍入上可能不同
+ * <p>
+ * 注意：double 的加法不满足结合律，4 路累加改变了求和顺序，结果可能与逐个相加在最后几位上有差异（通常误差更小）
+ */
+public final class LeafKernels {
+
+    private LeafKernels() {
+    }
+
+    public static long sum(long[] a, int from, int to) {
+        if (VectorKernels.AVAILABLE && to - from >= VectorKernels.MIN_LENGTH)
+            return VectorKernels.sum(a, from, to);
+        return unrolledSum(a, from, to);
+    }
+
+    static long unrolledSum(long[] a, int from, int to) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < to; i++)//处理剩余不足 4 个的元素
+            s0 += a[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static long sum(int[] a, int from, int to) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < to; i++)
+            s0 += a[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static double sum(double[] a, int from, int to) {
+        if (VectorKernels.AVAILABLE && to - from >= VectorKernels.MIN_LENGTH)
+            return VectorKernels.sum(a, from, to);
+        return unrolledSum(a, from, to);
+    }
+
+    static double unrolledSum(double[] a, int from, int to) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < to; i++)
+            s0 += a[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static long min(long[] a, int from, int to) {
+        if (VectorKernels.AVAILABLE && to - from >= VectorKernels.MIN_LENGTH)
+            return VectorKernels.min(a, from, to);
+        return unrolledMin(a, from, to);
+    }
+
+    static long unrolledMin(long[] a, int from, int to) {
+        long m0 = Long.MAX_VALUE, m1 = Long.MAX_VALUE, m2 = Long.MAX_VALUE, m3 = Long.MAX_VALUE;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            m0 = Math.min(m0, a[i]);
+            m1 = Math.min(m1, a[i + 1]);
+            m2 = Math.min(m2, a[i + 2]);
+            m3 = Math.min(m3, a[i + 3]);
+        }
+        for (; i < to; i++)
+            m0 = Math.min(m0, a[i]);
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    public static long max(long[] a, int from, int to) {
+        if (VectorKernels.AVAILABLE && to - from >= VectorKernels.MIN_LENGTH)
+            return VectorKernels.max(a, from, to);
+        return unrolledMax(a, from, to);
+    }
+
+    static long unrolledMax(long[] a, int from, int to) {
+        long m0 = Long.MIN_VALUE, m1 = Long.MIN_VALUE, m2 = Long.MIN_VALUE, m3 = Long.MIN_VALUE;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            m0 = Math.max(m0, a[i]);
+            m1 = Math.max(m1, a[i + 1]);
+            m2 = Math.max(m2, a[i + 2]);
+            m3 = Math.max(m3, a[i + 3]);
+        }
+        for (; i < to; i++)
+            m0 = Math.max(m0, a[i]);
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    public static double min(double[] a, int from, int to) {
+        if (VectorKernels.AVAILABLE && to - from >= VectorKernels.MIN_LENGTH)
+            return VectorKernels.min(a, from, to);
+        return unrolledMin(a, from, to);
+    }
+
+    static double unrolledMin(double[] a, int from, int to) {
+        double m0 = Double.POSITIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            m0 = Math.min(m0, a[i]);
+            m1 = Math.min(m1, a[i + 1]);
+            m2 = Math.min(m2, a[i + 2]);
+            m3 = Math.min(m3, a[i + 3]);
+        }
+        for (; i < to; i++)
+            m0 = Math.min(m0, a[i]);
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    public static double max(double[] a, int from, int to) {
+        if (VectorKernels.AVAILABLE && to - from >= VectorKernels.MIN_LENGTH)
+            return VectorKernels.max(a, from, to);
+        return unrolledMax(a, from, to);
+    }
+
+    static double unrolledMax(double[] a, int from, int to) {
+        double m0 = Double.NEGATIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            m0 = Math.max(m0, a[i]);
+            m1 = Math.max(m1, a[i + 1]);
+            m2 = Math.max(m2, a[i + 2]);
+            m3 = Math.max(m3, a[i + 3]);
+        }
+        for (; i < to; i++)
+            m0 = Math.max(m0, a[i]);
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    /**
+     * 点积 a[from, to) · b[from, to)
+     */
+    public static double dot(double[] a, double[] b, int from, int to) {
+        if (VectorKernels.AVAILABLE && to - from >= VectorKernels.MIN_LENGTH)
+            return VectorKernels.dot(a, b, from, to);
+        return unrolledDot(a, b, from, to);
+    }
+
+    static double unrolledDot(double[] a, double[] b, int from, int to) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < to; i++)
+            s0 += a[i] * b[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * 1 到 n 的和，ParallelTest.iterativeSum 的 4 路累加版本
+     */
+    public static long sumRange(long n) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        long i = 1;
+        for (; i + 3 <= n; i += 4) {
+            s0 += i;
+            s1 += i + 1;
+            s2 += i + 2;
+            s3 += i + 3;
+        }
+        for (; i <= n; i++)
+            s0 += i;
+        return (s0 + s1) + (s2 + s3);
+    }
+}
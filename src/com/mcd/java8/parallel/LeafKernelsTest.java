@@ -0,0 +1,172 @@
+package com.mcd.java8.parallel;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 多累加变量展开内核、Vector API 内核与单累加变量循环的对比
+ */
+public class LeafKernelsTest {
+
+    private static long sink;//消费内核的结果，防止 JIT 把被测循环当作死代码消除
+
+    @Test
+    public void kernels() {
+        Random random = new Random(42);
+        for (int length : new int[]{0, 1, 3, 4, 5, 255, 256, 1_000, 1_003}) {
+            long[] longs = random.longs(length, -1_000_000, 1_000_000).toArray();
+            double[] a = random.doubles(length).toArray();
+            double[] b = random.doubles(length).toArray();
+
+            long sum = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            double dot = 0, dmax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < length; i++) {
+                sum += longs[i];
+                min = Math.min(min, longs[i]);
+                max = Math.max(max, longs[i]);
+                dot += a[i] * b[i];
+                dmax = Math.max(dmax, a[i]);
+            }
+            assertEquals(sum, LeafKernels.sum(longs, 0, length));
+            assertEquals(min, LeafKernels.min(longs, 0, length));
+            assertEquals(max, LeafKernels.max(longs, 0, length));
+            assertEquals(dmax, LeafKernels.max(a, 0, length), 0d);
+            assertEquals(dot, LeafKernels.dot(a, b, 0, length), 1e-9);//求和顺序不同，允许舍入误差
+            assertEquals(sum, LeafKernels.unrolledSum(longs, 0, length));
+            assertEquals(min, LeafKernels.unrolledMin(longs, 0, length));
+            assertEquals(max, LeafKernels.unrolledMax(longs, 0, length));
+            assertEquals(dmax, LeafKernels.unrolledMax(a, 0, length), 0d);
+            assertEquals(dot, LeafKernels.unrolledDot(a, b, 0, length), 1e-9);
+        }
+        for (long n = 0; n < 10; n++)
+            assertEquals(ParallelTest.iterativeSum(n), ParallelTest.unrolledIterativeSum(n));
+
+        ForkJoinReducer reducer = new ForkJoinReducer();
+        double[] ones = new double[100_000];
+        Arrays.fill(ones, 1d);
+        assertEquals(100_000d, reducer.dot(ones, ones), 0d);
+    }
+
+    /**
+     * 只在加了 --add-modules jdk.incubator.vector 时运行，覆盖不足一个向量、恰好整数个向量和有尾部元素的区间
+     */
+    @Test
+    public void vectorKernels() {
+        assumeTrue("jdk.incubator.vector is not loaded", VectorKernels.AVAILABLE);
+        Random random = new Random(7);
+        for (int length : new int[]{0, 1, 7, 8, 9, 64, 1_000, 1_003}) {
+            long[] longs = random.longs(length, -1_000_000, 1_000_000).toArray();
+            double[] a = random.doubles(length).toArray();
+            double[] b = random.doubles(length).toArray();
+            int from = Math.min(1, length);
+            assertEquals(LeafKernels.unrolledSum(longs, from, length), VectorKernels.sum(longs, from, length));
+            assertEquals(LeafKernels.unrolledMin(longs, from, length), VectorKernels.min(longs, from, length));
+            assertEquals(LeafKernels.unrolledMax(longs, from, length), VectorKernels.max(longs, from, length));
+            assertEquals(LeafKernels.unrolledMin(a, from, length), VectorKernels.min(a, from, length), 0d);
+            assertEquals(LeafKernels.unrolledMax(a, from, length), VectorKernels.max(a, from, length), 0d);
+            assertEquals(LeafKernels.unrolledSum(a, from, length), VectorKernels.sum(a, from, length), 1e-9);
+            assertEquals(LeafKernels.unrolledDot(a, b, from, length), VectorKernels.dot(a, b, from, length), 1e-9);
+        }
+    }
+
+    /**
+     * 单线程对比，即每个核上的提升。这里只取最快一次，更可靠的数据见 benchmarks 模块中的 ForkJoinBenchmark。
+     * 每次调用的结果都与单累加变量循环的结果核对，同时也保证被测循环不会被当作死代码消除
+     */
+    @Test
+    public void kernelPerf() {
+        for (int n : new int[]{1_000_000, 10_000_000}) {
+            long[] longs = new Random(n).longs(n).toArray();
+            double[] a = new Random(n + 1).doubles(n).toArray();
+            double[] b = new Random(n + 2).doubles(n).toArray();
+            long sum = scalarSum(longs), min = scalarMin(longs), max = scalarMax(longs);
+            double dot = scalarDot(a, b);
+
+            System.out.println("n = " + n + (VectorKernels.AVAILABLE ? ", vector kernels enabled" : ""));
+            report("scalar sum", measure(() -> scalarSum(longs), sum));
+            report("unrolled sum", measure(() -> LeafKernels.unrolledSum(longs, 0, n), sum));
+            report("scalar min", measure(() -> scalarMin(longs), min));
+            report("unrolled min", measure(() -> LeafKernels.unrolledMin(longs, 0, n), min));
+            report("scalar max", measure(() -> scalarMax(longs), max));
+            report("unrolled max", measure(() -> LeafKernels.unrolledMax(longs, 0, n), max));
+            report("scalar dot", measure(() -> scalarDot(a, b), dot));
+            report("unrolled dot", measure(() -> LeafKernels.unrolledDot(a, b, 0, n), dot));
+            if (VectorKernels.AVAILABLE) {
+                report("vector sum", measure(() -> VectorKernels.sum(longs, 0, n), sum));
+                report("vector min", measure(() -> VectorKernels.min(longs, 0, n), min));
+                report("vector max", measure(() -> VectorKernels.max(longs, 0, n), max));
+                report("vector dot", measure(() -> VectorKernels.dot(a, b, 0, n), dot));
+            }
+        }
+        long expected = 100_000_000L * (100_000_000L + 1) / 2;
+        report("iterativeSum", measure(() -> ParallelTest.iterativeSum(100_000_000), expected));
+        report("unrolledIterativeSum", measure(() -> ParallelTest.unrolledIterativeSum(100_000_000), expected));
+        System.out.println("sink = " + sink);
+    }
+
+    private static long scalarSum(long[] a) {
+        long sum = 0;
+        for (long x : a)
+            sum += x;
+        return sum;
+    }
+
+    private static long scalarMin(long[] a) {
+        long min = Long.MAX_VALUE;
+        for (long x : a)
+            min = Math.min(min, x);
+        return min;
+    }
+
+    private static long scalarMax(long[] a) {
+        long max = Long.MIN_VALUE;
+        for (long x : a)
+            max = Math.max(max, x);
+        return max;
+    }
+
+    private static double scalarDot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++)
+            sum += a[i] * b[i];
+        return sum;
+    }
+
+    private static void report(String name, long micros) {
+        System.out.printf("  %-21s %6d usecs%n", name + ":", micros);
+    }
+
+    /**
+     * 返回 20 次中最快一次的耗时（微秒）
+     */
+    private static long measure(LongSupplier kernel, long expected) {
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            long result = kernel.getAsLong();
+            fastest = Math.min(fastest, (System.nanoTime() - start) / 1_000);
+            assertEquals(expected, result);
+            sink += result;
+        }
+        return fastest;
+    }
+
+    private static long measure(DoubleSupplier kernel, double expected) {
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            double result = kernel.getAsDouble();
+            fastest = Math.min(fastest, (System.nanoTime() - start) / 1_000);
+            assertEquals(expected, result, 1e-6);
+            sink += (long) result;
+        }
+        return fastest;
+    }
+}
@@ -0,0 +1,270 @@
+package com.mcd.java8.parallel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+
+/**
+ * 对内存映射文件做分支/合并规约
+ * <p>
+ * ForkJoinSumCalculatorTest.forkJoinSum 需要先用 LongStream.rangeClosed(1, n).toArray() 在堆上生成全部数据，数据量受限于堆大小。
+ * 这里的输入是一个由小端序 long 或 double 组成的文件，任务只记录元素下标区间 [start, end)，
+ * 每个叶子任务用 FileChannel.map 映射自己负责的那一段窗口直接读取，不复制到堆上，因此可以用很小的堆规约数 GB 的数据，且几乎没有 GC 压力
+ */
+public final class MappedFileReducer implements Closeable {
+
+    public static final int DEFAULT_THRESHOLD = 1 << 20;//每个叶子任务默认映射 1M 个元素，即 8MB 的窗口
+    static final int MAX_WINDOW_ELEMENTS = 1 << 27;//单次映射的元素上限（1GB），MappedByteBuffer 的容量不能超过 Integer.MAX_VALUE
+
+    private final FileChannel channel;
+    private final long size;//文件包含的元素个数
+    private final ForkJoinPool pool;
+    private final SplitPolicy policy;
+
+    private MappedFileReducer(FileChannel channel, ForkJoinPool pool, SplitPolicy policy) throws IOException {
+        this.channel = channel;
+        this.pool = Objects.requireNonNull(pool);
+        this.policy = Objects.requireNonNull(policy);
+        long bytes = channel.size();
+        if (bytes % Long.BYTES != 0)
+            throw new IllegalArgumentException("file size " + bytes + " is not a multiple of " + Long.BYTES + " bytes");
+        this.size = bytes / Long.BYTES;
+    }
+
+    public static MappedFileReducer open(Path file, ForkJoinPool pool) throws IOException {
+        return open(file, pool, SplitPolicy.fixed(DEFAULT_THRESHOLD));
+    }
+
+    public static MappedFileReducer open(Path file, ForkJoinPool pool, SplitPolicy policy) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedFileReducer(channel, pool, policy);
+        } catch (RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * 文件中的元素个数
+     *
+     * @return
+     */
+    public long size() {
+        return size;
+    }
+
+    public long reduceLongs(long identity, LongBinaryOperator op) {
+        MappedLongReduceTask task = new MappedLongReduceTask(channel, 0, size, policy, identity, op);
+        pool.invoke(task);
+        return task.result;
+    }
+
+    public double reduceDoubles(double identity, DoubleBinaryOperator op) {
+        MappedDoubleReduceTask task = new MappedDoubleReduceTask(channel, 0, size, policy, identity, op);
+        pool.invoke(task);
+        return task.result;
+    }
+
+    public long sumLongs() {
+        return reduceLongs(0L, Long::sum);
+    }
+
+    public double sumDoubles() {
+        return reduceDoubles(0d, Double::sum);
+    }
+
+    public long minLong() {
+        return reduceLongs(Long.MAX_VALUE, Math::min);
+    }
+
+    public double minDouble() {
+        return reduceDoubles(Double.POSITIVE_INFINITY, Math::min);
+    }
+
+    public long maxLong() {
+        return reduceLongs(Long.MIN_VALUE, Math::max);
+    }
+
+    public double maxDouble() {
+        return reduceDoubles(Double.NEGATIVE_INFINITY, Math::max);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 把 long 流按小端序写入文件，用来生成测试数据或导出指标
+     *
+     * @param file
+     * @param numbers
+     * @throws IOException
+     */
+    public static void writeLongs(Path file, LongStream numbers) throws IOException {
+        try (FileChannel out = openForWrite(file)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            PrimitiveIterator.OfLong it = numbers.iterator();
+            while (it.hasNext()) {
+                buffer.putLong(it.nextLong());
+                if (!buffer.hasRemaining())
+                    drain(out, buffer);
+            }
+            drain(out, buffer);
+        }
+    }
+
+    public static void writeDoubles(Path file, DoubleStream numbers) throws IOException {
+        try (FileChannel out = openForWrite(file)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            PrimitiveIterator.OfDouble it = numbers.iterator();
+            while (it.hasNext()) {
+                buffer.putDouble(it.nextDouble());
+                if (!buffer.hasRemaining())
+                    drain(out, buffer);
+            }
+            drain(out, buffer);
+        }
+    }
+
+    private static FileChannel openForWrite(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            out.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * 映射 [start, start + count) 这些元素所在的文件窗口
+     */
+    static ByteBuffer map(FileChannel channel, long start, long count) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start * Long.BYTES, count * Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
+
+/**
+ * 文件下标区间用 long 表示，所以不能复用以 int 为下标的 LongResultTask
+ */
+class MappedLongReduceTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+    private final SplitPolicy policy;
+    private final long identity;
+    private final LongBinaryOperator op;
+    long result;
+
+    MappedLongReduceTask(FileChannel channel, long start, long end, SplitPolicy policy, long identity, LongBinaryOperator op) {
+        this.channel = channel;
+        this.start = start;
+        this.end = end;
+        this.policy = policy;
+        this.identity = identity;
+        this.op = op;
+    }
+
+    @Override
+    protected void compute() {
+        long length = end - start;
+        if (!policy.shouldSplit(length)) {
+            result = computeSequentially();
+            return;
+        }
+        long mid = start + length / 2;
+        MappedLongReduceTask leftTask = new MappedLongReduceTask(channel, start, mid, policy, identity, op);
+        leftTask.fork();
+        MappedLongReduceTask rightTask = new MappedLongReduceTask(channel, mid, end, policy, identity, op);
+        rightTask.compute();
+        leftTask.join();
+        result = op.applyAsLong(leftTask.result, rightTask.result);
+    }
+
+    /**
+     * 叶子任务映射自己的窗口，直接在映射的内存上循环
+     */
+    private long computeSequentially() {
+        long acc = identity;
+        for (long from = start; from < end; from += MappedFileReducer.MAX_WINDOW_ELEMENTS) {
+            int count = (int) Math.min(end - from, MappedFileReducer.MAX_WINDOW_ELEMENTS);
+            LongBuffer window = MappedFileReducer.map(channel, from, count).asLongBuffer();
+            for (int i = 0; i < count; i++)
+                acc = op.applyAsLong(acc, window.get(i));
+        }
+        return acc;
+    }
+}
+
+class MappedDoubleReduceTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+    private final SplitPolicy policy;
+    private final double identity;
+    private final DoubleBinaryOperator op;
+    double result;
+
+    MappedDoubleReduceTask(FileChannel channel, long start, long end, SplitPolicy policy, double identity, DoubleBinaryOperator op) {
+        this.channel = channel;
+        this.start = start;
+        this.end = end;
+        this.policy = policy;
+        this.identity = identity;
+        this.op = op;
+    }
+
+    @Override
+    protected void compute() {
+        long length = end - start;
+        if (!policy.shouldSplit(length)) {
+            result = computeSequentially();
+            return;
+        }
+        long mid = start + length / 2;
+        MappedDoubleReduceTask leftTask = new MappedDoubleReduceTask(channel, start, mid, policy, identity, op);
+        leftTask.fork();
+        MappedDoubleReduceTask rightTask = new MappedDoubleReduceTask(channel, mid, end, policy, identity, op);
+        rightTask.compute();
+        leftTask.join();
+        result = op.applyAsDouble(leftTask.result, rightTask.result);
+    }
+
+    private double computeSequentially() {
+        double acc = identity;
+        for (long from = start; from < end; from += MappedFileReducer.MAX_WINDOW_ELEMENTS) {
+            int count = (int) Math.min(end - from, MappedFileReducer.MAX_WINDOW_ELEMENTS);
+            DoubleBuffer window = MappedFileReducer.map(channel, from, count).asDoubleBuffer();
+            for (int i = 0; i < count; i++)
+                acc = op.applyAsDouble(acc, window.get(i));
+        }
+        return acc;
+    }
+}
@@ -0,0 +1,47 @@
+package com.mcd.java8.parallel;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 内存映射文件规约：数据不进堆，规约规模不再受堆大小限制
+ */
+public class MappedFileReducerTest {
+
+    @Test
+    public void reduceLongs() throws Exception {
+        Path file = Files.createTempFile("longs", ".bin");
+        try {
+            long n = 3_000_000;
+            MappedFileReducer.writeLongs(file, LongStream.rangeClosed(1, n));
+            //阈值取小一些，让文件被拆成多个映射窗口
+            try (MappedFileReducer reducer = MappedFileReducer.open(file, new ForkJoinPool(), SplitPolicy.fixed(100_000))) {
+                assertEquals(n, reducer.size());
+                assertEquals(ParallelTest.iterativeSum(n), reducer.sumLongs());
+                assertEquals(n, reducer.maxLong());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void reduceDoubles() throws Exception {
+        Path file = Files.createTempFile("doubles", ".bin");
+        try {
+            MappedFileReducer.writeDoubles(file, LongStream.rangeClosed(1, 1_000_000).asDoubleStream().map(d -> d / 2));
+            try (MappedFileReducer reducer = MappedFileReducer.open(file, ForkJoinPool.commonPool())) {
+                assertEquals(250_000_250_000d, reducer.sumDoubles(), 0d);
+                assertEquals(500_000d, reducer.maxDouble(), 0d);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
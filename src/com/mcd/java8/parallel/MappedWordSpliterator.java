@@ -0,0 +1,146 @@
+package com.mcd.java8.parallel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 基于内存映射文件的单词计数 Spliterator
+ * <p>
+ * WordCounterSpliterator 需要把全部输入放进一个 String，而且每次 trySplit 都用 substring 复制一半的剩余文本。
+ * 这个实现只记录文件中的偏移区间 [position, end)：
+ * 1、拆分时只移动偏移量，不复制任何数据；拆分点同样前进到下一个空白字符，保证单词不会被切成两半，countWords 的并行结果依然正确
+ * 2、遍历时按需映射 WINDOW 大小的窗口，直接读取映射的内存，文件大小不受堆和 2GB 的限制
+ * <p>
+ * 每个字节按 ISO-8859-1 转为 Character。对于 UTF-8 文本，多字节字符的每个字节都不会被当作空白，
+ * 而 ASCII 空白字符在 UTF-8 中也只占一个字节，所以单词数与按字符解码后统计的结果相同（U+3000 等非 ASCII 空白除外）
+ */
+public class MappedWordSpliterator implements Spliterator<Character> {
+
+    static final int WINDOW = 1 << 26;//每次映射 64MB
+    static final int MIN_SPLIT_SIZE = 1 << 16;//剩余字节少于该值就不再拆分
+    private static final int PROBE_SIZE = 256;//查找拆分点时每次读取的字节数
+
+    private final FileChannel channel;
+    private long position;//下一个要处理的字节
+    private final long end;
+    private MappedByteBuffer window;//当前映射的窗口
+    private long windowStart;
+
+    MappedWordSpliterator(FileChannel channel, long position, long end) {
+        this.channel = channel;
+        this.position = position;
+        this.end = end;
+    }
+
+    /**
+     * 以文件内容创建字符流，流关闭时关闭文件
+     *
+     * @param file
+     * @param parallel
+     * @return
+     * @throws IOException
+     */
+    public static Stream<Character> characters(Path file, boolean parallel) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return StreamSupport.stream(new MappedWordSpliterator(channel, 0, channel.size()), parallel)
+                .onClose(() -> {
+                    try {
+                        channel.close();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Character> action) {
+        if (position >= end)
+            return false;
+        if (window == null || position >= windowStart + window.limit())
+            map(position);
+        action.accept((char) (window.get((int) (position++ - windowStart)) & 0xFF));
+        return true;
+    }
+
+    /**
+     * 逐个窗口批量遍历，省去每个字符一次 tryAdvance 的判断
+     */
+    @Override
+    public void forEachRemaining(Consumer<? super Character> action) {
+        while (position < end) {
+            if (window == null || position >= windowStart + window.limit())
+                map(position);
+            MappedByteBuffer buffer = window;
+            int from = (int) (position - windowStart);
+            int to = buffer.limit();
+            for (int i = from; i < to; i++)
+                action.accept((char) (buffer.get(i) & 0xFF));
+            position = windowStart + to;
+        }
+    }
+
+    @Override
+    public Spliterator<Character> trySplit() {
+        long currentSize = end - position;
+        if (currentSize < MIN_SPLIT_SIZE)
+            return null;
+        long splitPos = nextWhitespace(position + currentSize / 2);
+        if (splitPos >= end)
+            return null;
+        //前一半交给新的 Spliterator，它与当前对象共享同一个 FileChannel，只是偏移区间不同
+        Spliterator<Character> prefix = new MappedWordSpliterator(channel, position, splitPos);
+        position = splitPos;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED + SIZED + SUBSIZED + NONNULL + IMMUTABLE;
+    }
+
+    private void map(long from) {
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(WINDOW, end - from));
+            windowStart = from;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * 从 from 开始查找第一个空白字节的位置，找不到时返回 end。
+     * 用 FileChannel 的定位读取，不影响当前映射的窗口
+     */
+    private long nextWhitespace(long from) {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        try {
+            for (long pos = from; pos < end; pos += probe.limit()) {
+                probe.clear();
+                probe.limit((int) Math.min(PROBE_SIZE, end - pos));
+                while (probe.hasRemaining() && channel.read(probe, pos + probe.position()) >= 0) {
+                }
+                probe.flip();
+                for (int i = 0; i < probe.limit(); i++)
+                    if (Character.isWhitespace((char) (probe.get(i) & 0xFF)))
+                        return pos + i;
+            }
+            return end;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.mcd.java8.parallel;
+
+import java.util.stream.IntStream;
+
+/**
+ * 可变、可合并的单词计数器，用于 IntStream.collect
+ * <p>
+ * 与 WordCounter 的区别：
+ * 1、处理的是 int 字符，不需要 Stream<Character> 的装箱
+ * 2、accept 直接修改自身状态，不会在空格/非空格切换时创建新对象，每个线程的整个子任务只分配一个计数器
+ * 3、额外记录首尾字符是否属于单词，combine 时如果左半部分以单词结尾、右半部分以单词开头，说明一个单词被拆开了，要减去 1。
+ * 因此可以在任意位置拆分，不再需要 WordCounterSpliterator 那样只在空格处拆分
+ */
+public final class MutableWordCounter {
+
+    private int counter;
+    private boolean empty = true;//还没有处理任何字符
+    private boolean startsInWord;//第一个字符不是空白
+    private boolean endsInWord;//最后一个字符不是空白（即 WordCounter 中的 !lastSpace）
+
+    /**
+     * 统计字符流中的单词数，顺序流和并行流都可以
+     *
+     * @param chars
+     * @return
+     */
+    public static int countWords(IntStream chars) {
+        return chars.collect(MutableWordCounter::new, MutableWordCounter::accept, MutableWordCounter::combine).getCounter();
+    }
+
+    public static int countWords(CharSequence s, boolean parallel) {
+        IntStream chars = IntStream.range(0, s.length()).map(s::charAt);
+        return countWords(parallel ? chars.parallel() : chars);
+    }
+
+    /**
+     * 与 SpliteratorTest.countWordsIteratively 的循环体相同
+     *
+     * @param c
+     */
+    public void accept(int c) {
+        boolean space = Character.isWhitespace(c);
+        if (empty) {
+            empty = false;
+            startsInWord = !space;
+        }
+        if (!space && !endsInWord)//上一个是空格，而当前位置字符不是空格时， +1
+            counter++;
+        endsInWord = !space;
+    }
+
+    /**
+     * 把右侧（后面一段字符）的计数器合并进来
+     *
+     * @param right
+     */
+    public void combine(MutableWordCounter right) {
+        if (right.empty)
+            return;
+        if (empty) {
+            counter = right.counter;
+            empty = false;
+            startsInWord = right.startsInWord;
+            endsInWord = right.endsInWord;
+            return;
+        }
+        counter += right.counter;
+        if (endsInWord && right.startsInWord)//同一个单词被拆到了两边，被数了两次
+            counter--;
+        endsInWord = right.endsInWord;
+    }
+
+    public int getCounter() {
+        return counter;
+    }
+}
@@ -0,0 +1,289 @@
+package com.mcd.java8.parallel;
+
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 原始类型数组的并行前缀扫描（累计和、偏移表等）
+ * <p>
+ * 采用分块的两遍算法：
+ * 1、把数组切成若干块，并行计算每一块的规约结果（最后一块不需要）
+ * 2、顺序扫描各块的规约结果，得到每一块的起始值（块数很少，这一步几乎不花时间）
+ * 3、以起始值为初值，并行地对每一块做顺序扫描并写出结果
+ * <p>
+ * 与 Arrays.parallelPrefix 相比：块的数量只与并行度相关，任务更少更粗；运算直接作用在原始类型上；支持不包含当前元素的 EXCLUSIVE 模式和单位元
+ * <p>
+ * 注意：op 必须满足结合律，identity 必须是 op 的单位元
+ */
+public final class ParallelPrefixScan {
+
+    /**
+     * INCLUSIVE：out[i] = in[0] op ... op in[i]
+     * EXCLUSIVE：out[i] = identity op in[0] op ... op in[i - 1]，即 out[0] = identity
+     */
+    public enum Mode {INCLUSIVE, EXCLUSIVE}
+
+    public static final int MIN_BLOCK_SIZE = 1 << 14;//块太小时，调度开销会超过扫描本身
+    static final int BLOCKS_PER_THREAD = 4;//每个线程分到多块，便于负载均衡
+
+    private final ForkJoinPool pool;
+
+    public ParallelPrefixScan() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelPrefixScan(ForkJoinPool pool) {
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    /* ---------------- long[] ---------------- */
+
+    /**
+     * 非原地扫描，返回新数组
+     */
+    public long[] scan(long[] in, long identity, LongBinaryOperator op, Mode mode) {
+        long[] out = new long[in.length];
+        scan(in, out, identity, op, mode);
+        return out;
+    }
+
+    /**
+     * 原地扫描，结果覆盖原数组
+     */
+    public void scanInPlace(long[] a, long identity, LongBinaryOperator op, Mode mode) {
+        scan(a, a, identity, op, mode);
+    }
+
+    /**
+     * @param in  输入
+     * @param out 输出，可以与 in 是同一个数组
+     */
+    public void scan(long[] in, long[] out, long identity, LongBinaryOperator op, Mode mode) {
+        if (out.length != in.length)
+            throw new IllegalArgumentException("length mismatch: " + in.length + " != " + out.length);
+        scan(in, out, in.length, identity, identity, op, mode);
+    }
+
+    /**
+     * 扫描前 n 个元素
+     *
+     * @param initial 扫描的初值，流式扫描时是之前所有块的累计值，否则就是 identity
+     * @return 扫描结束时的累计值，即 initial op in[0] op ... op in[n - 1]
+     */
+    long scan(long[] in, long[] out, int n, long identity, long initial, LongBinaryOperator op, Mode mode) {
+        int blockSize = blockSize(n);
+        int blocks = (n + blockSize - 1) / blockSize;
+        if (blocks <= 1)
+            return scanBlock(in, out, 0, n, initial, op, mode);
+        //第一遍：各块的规约结果
+        long[] carries = new long[blocks];
+        forEachBlock(blocks - 1, b -> {
+            long acc = identity;
+            for (int i = b * blockSize, end = i + blockSize; i < end; i++)
+                acc = op.applyAsLong(acc, in[i]);
+            carries[b] = acc;
+        });
+        //各块的起始值
+        long carry = initial;
+        for (int b = 0; b < blocks; b++) {
+            long total = carries[b];
+            carries[b] = carry;
+            carry = op.applyAsLong(carry, total);
+        }
+        //第二遍：以起始值为初值扫描各块
+        long[] last = new long[1];
+        forEachBlock(blocks, b -> {
+            int from = b * blockSize;
+            long acc = scanBlock(in, out, from, Math.min(from + blockSize, n), carries[b], op, mode);
+            if (b == blocks - 1)
+                last[0] = acc;
+        });
+        return last[0];
+    }
+
+    /**
+     * 顺序扫描 [from, to)，返回扫描结束时的累计值
+     */
+    static long scanBlock(long[] in, long[] out, int from, int to, long initial, LongBinaryOperator op, Mode mode) {
+        long acc = initial;
+        if (mode == Mode.INCLUSIVE) {
+            for (int i = from; i < to; i++)
+                out[i] = acc = op.applyAsLong(acc, in[i]);
+        } else {
+            for (int i = from; i < to; i++) {
+                long value = in[i];//原地扫描时 out[i] 会覆盖 in[i]，先取出
+                out[i] = acc;
+                acc = op.applyAsLong(acc, value);
+            }
+        }
+        return acc;
+    }
+
+    /* ---------------- double[] ---------------- */
+
+    public double[] scan(double[] in, double identity, DoubleBinaryOperator op, Mode mode) {
+        double[] out = new double[in.length];
+        scan(in, out, identity, op, mode);
+        return out;
+    }
+
+    public void scanInPlace(double[] a, double identity, DoubleBinaryOperator op, Mode mode) {
+        scan(a, a, identity, op, mode);
+    }
+
+    public void scan(double[] in, double[] out, double identity, DoubleBinaryOperator op, Mode mode) {
+        if (out.length != in.length)
+            throw new IllegalArgumentException("length mismatch: " + in.length + " != " + out.length);
+        int n = in.length;
+        int blockSize = blockSize(n);
+        int blocks = (n + blockSize - 1) / blockSize;
+        if (blocks <= 1) {
+            scanBlock(in, out, 0, n, identity, op, mode);
+            return;
+        }
+        double[] carries = new double[blocks];
+        forEachBlock(blocks - 1, b -> {
+            double acc = identity;
+            for (int i = b * blockSize, end = i + blockSize; i < end; i++)
+                acc = op.applyAsDouble(acc, in[i]);
+            carries[b] = acc;
+        });
+        double carry = identity;
+        for (int b = 0; b < blocks; b++) {
+            double total = carries[b];
+            carries[b] = carry;
+            carry = op.applyAsDouble(carry, total);
+        }
+        forEachBlock(blocks, b -> {
+            int from = b * blockSize;
+            scanBlock(in, out, from, Math.min(from + blockSize, n), carries[b], op, mode);
+        });
+    }
+
+    static double scanBlock(double[] in, double[] out, int from, int to, double initial, DoubleBinaryOperator op, Mode mode) {
+        double acc = initial;
+        if (mode == Mode.INCLUSIVE) {
+            for (int i = from; i < to; i++)
+                out[i] = acc = op.applyAsDouble(acc, in[i]);
+        } else {
+            for (int i = from; i < to; i++) {
+                double value = in[i];
+                out[i] = acc;
+                acc = op.applyAsDouble(acc, value);
+            }
+        }
+        return acc;
+    }
+
+    /* ---------------- 流式扫描 ---------------- */
+
+    /**
+     * 逐块扫描 LongStream，不把整个流物化成数组：每次从源流取 chunkSize 个元素，以之前所有块的累计值为初值扫描这一块（块足够大时并行扫描）后再输出。
+     * 返回的流是顺序、有序的，可以是无限流
+     *
+     * @param source    源流
+     * @param chunkSize 每块的元素个数
+     * @return
+     */
+    public LongStream scan(LongStream source, long identity, LongBinaryOperator op, Mode mode, int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        ChunkedScanSpliterator spliterator = new ChunkedScanSpliterator(this, source.iterator(), identity, op, mode, chunkSize);
+        return StreamSupport.longStream(spliterator, false).onClose(source::close);
+    }
+
+    private int blockSize(int n) {
+        int blocks = pool.getParallelism() * BLOCKS_PER_THREAD;
+        return Math.max(MIN_BLOCK_SIZE, (n + blocks - 1) / blocks);
+    }
+
+    /**
+     * 在线程池中对块下标 [0, blocks) 并行执行 body
+     */
+    private void forEachBlock(int blocks, IntConsumer body) {
+        pool.invoke(new BlockTask(0, blocks, body));
+    }
+}
+
+class BlockTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final IntConsumer body;
+
+    BlockTask(int from, int to, IntConsumer body) {
+        this.from = from;
+        this.to = to;
+        this.body = body;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from == 1) {
+            body.accept(from);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        BlockTask left = new BlockTask(from, mid, body);
+        left.fork();
+        new BlockTask(mid, to, body).compute();
+        left.join();
+    }
+}
+
+/**
+ * 每次从源迭代器读取一块，扫描后逐个输出
+ */
+class ChunkedScanSpliterator extends Spliterators.AbstractLongSpliterator {
+    private final ParallelPrefixScan scanner;
+    private final PrimitiveIterator.OfLong source;
+    private final LongBinaryOperator op;
+    private final ParallelPrefixScan.Mode mode;
+    private final long[] chunk;
+    private final long identity;
+    private long carry;//之前所有块的累计值
+    private int size;//当前块中的元素个数
+    private int position;//当前块中下一个要输出的位置
+
+    ChunkedScanSpliterator(ParallelPrefixScan scanner, PrimitiveIterator.OfLong source, long identity,
+                           LongBinaryOperator op, ParallelPrefixScan.Mode mode, int chunkSize) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.scanner = scanner;
+        this.source = source;
+        this.op = op;
+        this.mode = mode;
+        this.chunk = new long[chunkSize];
+        this.identity = identity;
+        this.carry = identity;
+    }
+
+    @Override
+    public boolean tryAdvance(LongConsumer action) {
+        if (position == size && !fill())
+            return false;
+        action.accept(chunk[position++]);
+        return true;
+    }
+
+    private boolean fill() {
+        size = 0;
+        position = 0;
+        while (size < chunk.length && source.hasNext())
+            chunk[size++] = source.nextLong();
+        if (size == 0)
+            return false;
+        carry = scanner.scan(chunk, chunk, size, identity, carry, op, mode);
+        return true;
+    }
+}
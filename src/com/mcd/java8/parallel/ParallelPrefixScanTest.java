@@ -0,0 +1,92 @@
+package com.mcd.java8.parallel;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+
+import static com.mcd.java8.parallel.ParallelPrefixScan.Mode.EXCLUSIVE;
+import static com.mcd.java8.parallel.ParallelPrefixScan.Mode.INCLUSIVE;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * 并行前缀扫描：与顺序扫描的结果对比，以及与 Arrays.parallelPrefix 的性能对比
+ */
+public class ParallelPrefixScanTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    private final ParallelPrefixScan scanner = new ParallelPrefixScan(POOL);
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void scan() {
+        Random random = new Random(7);
+        for (int n : new int[]{0, 1, 100, ParallelPrefixScan.MIN_BLOCK_SIZE + 1, 1_000_003}) {
+            long[] in = random.longs(n, 0, 1_000).toArray();
+
+            long[] inclusive = in.clone();
+            Arrays.parallelPrefix(inclusive, Long::sum);
+            long[] exclusive = new long[n];
+            for (int i = 1; i < n; i++)
+                exclusive[i] = exclusive[i - 1] + in[i - 1];
+
+            assertArrayEquals(inclusive, scanner.scan(in, 0L, Long::sum, INCLUSIVE));
+            assertArrayEquals(exclusive, scanner.scan(in, 0L, Long::sum, EXCLUSIVE));
+
+            long[] inPlace = in.clone();
+            scanner.scanInPlace(inPlace, 0L, Long::sum, EXCLUSIVE);
+            assertArrayEquals(exclusive, inPlace);
+
+            //最大值也满足结合律
+            long[] runningMax = in.clone();
+            Arrays.parallelPrefix(runningMax, Math::max);
+            assertArrayEquals(runningMax, scanner.scan(in, Long.MIN_VALUE, Math::max, INCLUSIVE));
+
+            double[] doubles = Arrays.stream(in).asDoubleStream().toArray();
+            double[] expected = doubles.clone();
+            Arrays.parallelPrefix(expected, Double::sum);
+            assertArrayEquals(expected, scanner.scan(doubles, 0d, Double::sum, INCLUSIVE), 0d);//整数值的 double 求和没有舍入误差
+        }
+    }
+
+    @Test
+    public void scanStream() {
+        long[] expected = LongStream.rangeClosed(1, 200_000).toArray();
+        Arrays.parallelPrefix(expected, Long::sum);
+        //块大小不能整除元素个数，验证跨块的累计值传递
+        long[] actual = scanner.scan(LongStream.rangeClosed(1, 200_000), 0L, Long::sum, INCLUSIVE, 70_001).toArray();
+        assertArrayEquals(expected, actual);
+
+        //无限流只会按需读取
+        long[] firstFive = scanner.scan(LongStream.iterate(1, i -> i + 1), 0L, Long::sum, EXCLUSIVE, 1_000).limit(5).toArray();
+        assertArrayEquals(new long[]{0, 1, 3, 6, 10}, firstFive);
+    }
+
+    @Test
+    public void scanPerf() {
+        ParallelPrefixScan commonPoolScanner = new ParallelPrefixScan();
+        long[] in = new Random(1).longs(20_000_000, 0, 1_000).toArray();
+        long[] out = new long[in.length];
+        long fastestArrays = Long.MAX_VALUE, fastestScan = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.arraycopy(in, 0, out, 0, in.length);
+            long start = System.nanoTime();
+            Arrays.parallelPrefix(out, Long::sum);
+            fastestArrays = Math.min(fastestArrays, (System.nanoTime() - start) / 1_000_000);
+
+            start = System.nanoTime();
+            commonPoolScanner.scan(in, out, 0L, Long::sum, INCLUSIVE);
+            fastestScan = Math.min(fastestScan, (System.nanoTime() - start) / 1_000_000);
+        }
+        System.out.println("Arrays.parallelPrefix done in: " + fastestArrays + " msecs");
+        System.out.println("ParallelPrefixScan done in: " + fastestScan + " msecs");
+    }
+}
@@ -24,7 +24,7 @@ public class ParallelTest {
         return Stream.iterate(1L, i -> i + 1)   //
                 .limit(n)
                 .parallel()                           //顺序流转换为并行流
-                .reduce(1L, Long::sum);
+                .reduce(0L, Long::sum);
 
         /* 不要以为可以通过 parallel 和 sequential 方法可以细化的控制遍历流时的操作。 最后一个 parallel 或 sequential 将会影响整个流水线 */
 
@@ -37,9 +37,29 @@ public class ParallelTest {
          * 但是，这是一个全局设置，它将影响代码中所有并行流。
          *
          * 换句话说，目前，还没有办法专门为某个并行流执行这个值。
+         *
+         * 变通的办法是在自定义 ForkJoinPool 的任务中执行整个流水线，并行流会在该线程池中执行，见 ForkJoinPoolRegistry 和 parallelSumInPool
          */
     }
 
+    /**
+     * 在注册表中指定名称的线程池里执行并行流，不占用公共线程池
+     *
+     * @param poolName
+     * @param n
+     * @return
+     */
+    public static long parallelSumInPool(String poolName, long n) {
+        return ForkJoinPoolRegistry.run(poolName, () -> LongStream.rangeClosed(1, n).parallel().sum());
+    }
+
+    /**
+     * parallelSum 的可拆分版本：iterate 无法拆分，而 JumpSequence 可以直接跳到第 k 个元素，从中间对半拆分，也不会装箱
+     */
+    public static long parallelJumpSum(long n) {
+        return JumpSequence.arithmetic(1, 1, n).parallelStream().sum();
+    }
+
     public static long iterativeSum(long n) {
         long result = 0;
         for (long i = 1L; i <= n; i++)
@@ -47,6 +67,13 @@ public class ParallelTest {
         return result;
     }
 
+    /**
+     * iterativeSum 的 4 路累加版本：4 条独立的依赖链可以重叠执行，也更容易被 JIT 自动向量化
+     */
+    public static long unrolledIterativeSum(long n) {
+        return LeafKernels.sumRange(n);
+    }
+
 
     /**
      * 生成随机数，求和
@@ -73,6 +100,15 @@ public class ParallelTest {
         LongStream.rangeClosed(1, n).parallel().forEach(accumulator::add);
         return accumulator.total;
     }
+
+    /**
+     * parallelSideEffectSum 的正确写法：共享的累加器换成线程安全的分段累加器
+     */
+    public static long parallelStripedSum(long n) {
+        StripedLongAdder adder = new StripedLongAdder();
+        LongStream.rangeClosed(1, n).parallel().forEach(adder::add);
+        return adder.sum();
+    }
 }
 
 class Accumulator {
@@ -0,0 +1,70 @@
+package com.mcd.java8.parallel;
+
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 分支/合并任务的拆分策略：决定一个长度为 length 的子任务是否继续拆分
+ * <p>
+ * 1、fixed：只看阈值，与 ForkJoinSumCalculator.THRESHOLD 的做法相同
+ * 2、adaptive：在阈值之上，再参考当前工作线程的 getSurplusQueuedTaskCount()。
+ * 如果本线程队列中积压的任务已经多于其他线程可能窃取的数量，说明大家都有活干，继续拆分只会增加开销，于是直接顺序计算。
+ * 为避免在积压时把一个很大的区间整块顺序计算、造成负载不均，只有长度不超过 threshold * MAX_LEAF_FACTOR 的任务才参考积压数
+ */
+public final class SplitPolicy {
+
+    public static final int DEFAULT_SURPLUS_LIMIT = 3;//积压任务数超过该值就不再拆分
+    public static final int MAX_LEAF_FACTOR = 8;//自适应模式下叶子任务最多是阈值的几倍
+
+    private final int threshold;
+    private final int surplusLimit;//小于 0 表示不参考积压数
+
+    private SplitPolicy(int threshold, int surplusLimit) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        this.threshold = threshold;
+        this.surplusLimit = surplusLimit;
+    }
+
+    public static SplitPolicy fixed(int threshold) {
+        return new SplitPolicy(threshold, -1);
+    }
+
+    public static SplitPolicy adaptive(int threshold) {
+        return new SplitPolicy(threshold, DEFAULT_SURPLUS_LIMIT);
+    }
+
+    public static SplitPolicy adaptive(int threshold, int surplusLimit) {
+        if (surplusLimit < 0)
+            throw new IllegalArgumentException("surplusLimit must not be negative: " + surplusLimit);
+        return new SplitPolicy(threshold, surplusLimit);
+    }
+
+    /**
+     * 只能在 ForkJoinPool 的工作线程中调用（即任务的 compute 方法里）
+     *
+     * @param length 子任务负责的元素个数
+     * @return
+     */
+    public boolean shouldSplit(long length) {
+        if (length <= threshold)
+            return false;
+        if (surplusLimit < 0 || length > (long) threshold * MAX_LEAF_FACTOR)
+            return true;
+        return ForkJoinTask.getSurplusQueuedTaskCount() <= surplusLimit;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public boolean isAdaptive() {
+        return surplusLimit >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return isAdaptive()
+                ? "SplitPolicy{threshold=" + threshold + ", adaptive, surplusLimit=" + surplusLimit + '}'
+                : "SplitPolicy{threshold=" + threshold + '}';
+    }
+}
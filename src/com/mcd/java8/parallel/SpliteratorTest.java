@@ -2,12 +2,19 @@ package com.mcd.java8.parallel;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.Spliterator;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import static org.junit.Assert.assertEquals;
+
 public class SpliteratorTest {
 
     final String SENTENCE = "The memories about home begin with a old tale, which is warm and fortunate. ";
@@ -40,6 +47,58 @@ public class SpliteratorTest {
     }
 
 
+    /**
+     * 大文件的并行单词计数：MappedWordSpliterator 直接在内存映射的文件上按偏移量拆分，不需要先把文件读成 String
+     */
+    @Test
+    public void countWordsInMappedFile() throws IOException {
+        Path file = Files.createTempFile("words", ".txt");
+        try {
+            String text = String.join("", Collections.nCopies(20_000, SENTENCE));
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+
+            int expected = countWordsIteratively(text);
+            try (Stream<Character> stream = MappedWordSpliterator.characters(file, true)) {
+                int actual = countWords(stream);
+                System.out.println("Found " + actual + " words");
+                assertEquals(expected, actual);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * 无装箱、无额外分配的版本：MutableWordCounter 可以在任意位置拆分，顺序和并行的结果都与迭代版本一致
+     */
+    @Test
+    public void countWordsPrimitive() {
+        String text = String.join("", Collections.nCopies(100_000, SENTENCE));
+        int expected = countWordsIteratively(text);
+        assertEquals(expected, MutableWordCounter.countWords(text, false));
+        assertEquals(expected, MutableWordCounter.countWords(text, true));
+        assertEquals(14, MutableWordCounter.countWords(SENTENCE.chars().parallel()));
+        assertEquals(0, MutableWordCounter.countWords("", true));
+
+        long fastestIterative = Long.MAX_VALUE, fastestBoxed = Long.MAX_VALUE, fastestPrimitive = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            countWordsIteratively(text);
+            fastestIterative = Math.min(fastestIterative, (System.nanoTime() - start) / 1_000_000);
+
+            start = System.nanoTime();
+            countWords(StreamSupport.stream(new WordCounterSpliterator(text), true));
+            fastestBoxed = Math.min(fastestBoxed, (System.nanoTime() - start) / 1_000_000);
+
+            start = System.nanoTime();
+            MutableWordCounter.countWords(text, true);
+            fastestPrimitive = Math.min(fastestPrimitive, (System.nanoTime() - start) / 1_000_000);
+        }
+        System.out.println("Iterative done in: " + fastestIterative + " msecs");
+        System.out.println("WordCounter (Stream<Character>) done in: " + fastestBoxed + " msecs");
+        System.out.println("MutableWordCounter (IntStream) done in: " + fastestPrimitive + " msecs");
+    }
+
     /**
      * 迭代式字数（单词）统计
      *
@@ -81,6 +140,7 @@ public class SpliteratorTest {
         //可以对这个流做规约。规约时，保留两个变量组成的状态。
         //一个 int 用来计算字数，一个 boolean 用来记得上一个遇到的 Character 是否空格
         //因为 Java 中没有 tuple （元组），所以必须创建一个新类（WordCounter）封装这个状态
+        //如果改用 IntStream.collect 和可变的累加器，则可以避免装箱，见 MutableWordCounter
     }
 }
 
@@ -70,6 +70,8 @@ public class StreamPerfTest {
          *  6、考虑数据结构是否易分解。（如：ArrayList 拆分效率远高于 LinkedList， range 工厂创建的原始类型流更易分解，等）
          *  7、考虑流自身的特点及流水线中间操作修改流的方式。这些都可能改变分解过程的性能。（如 SIZED 流可以分成大小相等的两部分，但筛选操作可能丢弃的元素无法预测，导致流的本身大小未知）
          *  8、考虑终端合并代价。（如：Collector.combiner 方法）合并代价太大，就会导致组合每个子流的结果时付出的代价超过通过并行化获得到的性能提升。
+         *
+         *  其中数据量、流水线成本、是否易分解、顺序依赖和合并代价可以量化，AutoStreams 根据这些自动选择顺序流或并行流
          */
     }
 }
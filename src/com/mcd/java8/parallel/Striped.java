@@ -0,0 +1,64 @@
+package com.mcd.java8.parallel;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段（striped）累加器的公共部分，思路与 java.util.concurrent.atomic.LongAdder 相同：
+ * <p>
+ * 1、不让所有线程更新同一个变量，而是准备若干个单元格（cell），每个线程按自己的探针值（probe）选一个单元格更新
+ * 2、CAS 失败说明有其他线程在同一个单元格上竞争，换一个探针值，下次落到别的单元格
+ * 3、每个单元格独占 128 字节（两条缓存行，防止相邻行预取造成的伪共享）
+ * 4、读取时把所有单元格合并起来
+ * <p>
+ * 与 LongAdder 的区别是单元格的数量在创建时就固定为不小于 CPU 数的 2 的幂，不会动态扩容
+ */
+abstract class Striped {
+
+    static final int PAD = 16;//每个单元格占 16 个 long，即 128 字节
+
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> new int[]{ThreadLocalRandom.current().nextInt() | 1});
+
+    final int stripes;
+    final int mask;
+
+    Striped() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    Striped(int minStripes) {
+        int n = 1;
+        while (n < minStripes)
+            n <<= 1;
+        this.stripes = n;
+        this.mask = n - 1;
+    }
+
+    /**
+     * 为 stripes 个单元格（每个 slots 个 long）分配带填充的数组。
+     * 下标 0 所在的缓存行与数组对象头相邻，所以第一个单元格从 PAD 开始
+     */
+    static AtomicLongArray newCells(int stripes, int slots) {
+        return new AtomicLongArray((stripes + 1) * Math.max(PAD, slots) + PAD);
+    }
+
+    /**
+     * 当前线程的探针值
+     */
+    static int probe() {
+        return PROBE.get()[0];
+    }
+
+    /**
+     * 发生竞争后换一个探针值（xorshift）
+     */
+    static int advanceProbe() {
+        int[] holder = PROBE.get();
+        int probe = holder[0];
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+        holder[0] = probe;
+        return probe;
+    }
+}
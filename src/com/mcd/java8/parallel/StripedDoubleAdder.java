@@ -0,0 +1,42 @@
+package com.mcd.java8.parallel;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的 double 累加器，单元格中保存 double 的二进制位（Double.doubleToRawLongBits）
+ * <p>
+ * 注意：double 加法不满足结合律，多线程下累加的顺序不确定，结果可能在最后几位上有差异
+ */
+public class StripedDoubleAdder extends Striped {
+
+    private final AtomicLongArray cells = newCells(stripes, 1);
+
+    public void add(double value) {
+        int probe = probe();
+        for (; ; ) {
+            int index = ((probe & mask) + 1) * PAD;
+            long current = cells.get(index);
+            long next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value);
+            if (cells.compareAndSet(index, current, next))
+                return;
+            probe = advanceProbe();
+        }
+    }
+
+    public double sum() {
+        double sum = 0;
+        for (int i = 1; i <= stripes; i++)
+            sum += Double.longBitsToDouble(cells.get(i * PAD));
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 1; i <= stripes; i++)
+            cells.set(i * PAD, Double.doubleToRawLongBits(0d));
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(sum());
+    }
+}
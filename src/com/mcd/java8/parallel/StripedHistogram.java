@@ -0,0 +1,71 @@
+package com.mcd.java8.parallel;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的直方图。
+ * 桶由升序的上界数组定义：值 v 落入第一个满足 v <= bounds[i] 的桶 i，大于所有上界的值落入最后一个溢出桶，所以一共有 bounds.length + 1 个桶。
+ * 每个线程条带拥有一整行计数（按 128 字节对齐），不同线程记录同一个桶也不会竞争同一条缓存行
+ */
+public class StripedHistogram extends Striped {
+
+    private final long[] bounds;
+    private final int rowStride;//每一行占用的 long 个数，向上取整到 PAD 的倍数
+    private final AtomicLongArray cells;
+
+    public StripedHistogram(long... bounds) {
+        for (int i = 1; i < bounds.length; i++)
+            if (bounds[i - 1] >= bounds[i])
+                throw new IllegalArgumentException("bounds must be strictly increasing: " + Arrays.toString(bounds));
+        this.bounds = bounds.clone();
+        int buckets = bounds.length + 1;
+        this.rowStride = (buckets + PAD - 1) / PAD * PAD;
+        this.cells = new AtomicLongArray((stripes + 1) * rowStride + PAD);
+    }
+
+    public void record(long value) {
+        int bucket = Arrays.binarySearch(bounds, value);
+        if (bucket < 0)
+            bucket = -bucket - 1;//插入点就是第一个大于 value 的上界
+        int probe = probe();
+        for (; ; ) {
+            int index = ((probe & mask) + 1) * rowStride + bucket;
+            long current = cells.get(index);
+            if (cells.compareAndSet(index, current, current + 1))
+                return;
+            probe = advanceProbe();
+        }
+    }
+
+    /**
+     * 各个桶的计数，长度为 bounds.length + 1
+     *
+     * @return
+     */
+    public long[] snapshot() {
+        long[] counts = new long[bounds.length + 1];
+        for (int row = 1; row <= stripes; row++)
+            for (int bucket = 0; bucket < counts.length; bucket++)
+                counts[bucket] += cells.get(row * rowStride + bucket);
+        return counts;
+    }
+
+    public long count() {
+        return Arrays.stream(snapshot()).sum();
+    }
+
+    public long[] getBounds() {
+        return bounds.clone();
+    }
+
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++)
+            cells.set(i, 0L);
+    }
+
+    @Override
+    public String toString() {
+        return "StripedHistogram{bounds=" + Arrays.toString(bounds) + ", counts=" + Arrays.toString(snapshot()) + '}';
+    }
+}
@@ -0,0 +1,56 @@
+package com.mcd.java8.parallel;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的 long 累加器，用来替代 ParallelTest 中会丢失更新的 Accumulator。
+ * <p>
+ * sum() 在没有并发更新时是精确值；并发更新期间读取，得到的是某个介于更新前后之间的值（与 LongAdder 相同）。
+ * 并行流的 forEach 返回之后再调用 sum()，结果一定是精确的
+ */
+public class StripedLongAdder extends Striped {
+
+    private final AtomicLongArray cells = newCells(stripes, 1);
+
+    public void add(long value) {
+        int probe = probe();
+        for (; ; ) {
+            int index = ((probe & mask) + 1) * PAD;
+            long current = cells.get(index);
+            if (cells.compareAndSet(index, current, current + value))
+                return;
+            probe = advanceProbe();
+        }
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 1; i <= stripes; i++)
+            sum += cells.get(i * PAD);
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 1; i <= stripes; i++)
+            cells.set(i * PAD, 0L);
+    }
+
+    /**
+     * 读取并清零。与 sum() 之后再 reset() 不同，并发更新不会在两步之间丢失
+     */
+    public long sumThenReset() {
+        long sum = 0;
+        for (int i = 1; i <= stripes; i++)
+            sum += cells.getAndSet(i * PAD, 0L);
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,63 @@
+package com.mcd.java8.parallel;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全地同时记录最小值和最大值。
+ * 每个单元格中第 0 个 long 是最小值，第 1 个是最大值；只有新值更小/更大时才写入，大多数更新只读不写，几乎没有竞争
+ */
+public class StripedLongMinMax extends Striped {
+
+    private final AtomicLongArray cells = newCells(stripes, 2);
+
+    public StripedLongMinMax() {
+        reset();
+    }
+
+    public void update(long value) {
+        int probe = probe();
+        int index = ((probe & mask) + 1) * PAD;
+        for (long min; value < (min = cells.get(index)); ) {
+            if (cells.compareAndSet(index, min, value))
+                break;
+            index = ((advanceProbe() & mask) + 1) * PAD;
+        }
+        for (long max; value > (max = cells.get(index + 1)); ) {
+            if (cells.compareAndSet(index + 1, max, value))
+                break;
+            index = ((advanceProbe() & mask) + 1) * PAD;
+        }
+    }
+
+    /**
+     * 没有任何更新时返回 Long.MAX_VALUE
+     */
+    public long getMin() {
+        long min = Long.MAX_VALUE;
+        for (int i = 1; i <= stripes; i++)
+            min = Math.min(min, cells.get(i * PAD));
+        return min;
+    }
+
+    /**
+     * 没有任何更新时返回 Long.MIN_VALUE
+     */
+    public long getMax() {
+        long max = Long.MIN_VALUE;
+        for (int i = 1; i <= stripes; i++)
+            max = Math.max(max, cells.get(i * PAD + 1));
+        return max;
+    }
+
+    public void reset() {
+        for (int i = 1; i <= stripes; i++) {
+            cells.set(i * PAD, Long.MAX_VALUE);
+            cells.set(i * PAD + 1, Long.MIN_VALUE);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StripedLongMinMax{min=" + getMin() + ", max=" + getMax() + '}';
+    }
+}
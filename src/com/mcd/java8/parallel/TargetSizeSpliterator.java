@@ -0,0 +1,132 @@
+package com.mcd.java8.parallel;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 剩余元素不超过目标大小时不再拆分，其余操作全部委托给源 Spliterator
+ */
+class TargetSizeSpliterator<T> implements Spliterator<T> {
+
+    final Spliterator<T> source;
+    final long targetSize;
+
+    TargetSizeSpliterator(Spliterator<T> source, long targetSize) {
+        this.source = source;
+        this.targetSize = targetSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        return source.tryAdvance(action);
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        source.forEachRemaining(action);
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (source.estimateSize() <= targetSize)
+            return null;
+        Spliterator<T> prefix = source.trySplit();
+        return prefix == null ? null : new TargetSizeSpliterator<>(prefix, targetSize);
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public long getExactSizeIfKnown() {
+        return source.getExactSizeIfKnown();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics();
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return source.getComparator();
+    }
+
+    static final class OfLong extends TargetSizeSpliterator<Long> implements Spliterator.OfLong {
+        OfLong(Spliterator.OfLong source, long targetSize) {
+            super(source, targetSize);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            return ((Spliterator.OfLong) source).tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            ((Spliterator.OfLong) source).forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            if (source.estimateSize() <= targetSize)
+                return null;
+            Spliterator.OfLong prefix = ((Spliterator.OfLong) source).trySplit();
+            return prefix == null ? null : new TargetSizeSpliterator.OfLong(prefix, targetSize);
+        }
+    }
+
+    static final class OfInt extends TargetSizeSpliterator<Integer> implements Spliterator.OfInt {
+        OfInt(Spliterator.OfInt source, long targetSize) {
+            super(source, targetSize);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            return ((Spliterator.OfInt) source).tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            ((Spliterator.OfInt) source).forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            if (source.estimateSize() <= targetSize)
+                return null;
+            Spliterator.OfInt prefix = ((Spliterator.OfInt) source).trySplit();
+            return prefix == null ? null : new TargetSizeSpliterator.OfInt(prefix, targetSize);
+        }
+    }
+
+    static final class OfDouble extends TargetSizeSpliterator<Double> implements Spliterator.OfDouble {
+        OfDouble(Spliterator.OfDouble source, long targetSize) {
+            super(source, targetSize);
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            return ((Spliterator.OfDouble) source).tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            ((Spliterator.OfDouble) source).forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            if (source.estimateSize() <= targetSize)
+                return null;
+            Spliterator.OfDouble prefix = ((Spliterator.OfDouble) source).trySplit();
+            return prefix == null ? null : new TargetSizeSpliterator.OfDouble(prefix, targetSize);
+        }
+    }
+}
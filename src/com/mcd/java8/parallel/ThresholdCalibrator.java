@@ -0,0 +1,272 @@
+package com.mcd.java8.parallel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * 在当前机器上校准分支/合并任务的拆分阈值
+ * <p>
+ * ForkJoinSumCalculator.THRESHOLD = 10_000 只是一个猜测值：核数多时任务太碎，核数少时任务又太少。
+ * 这里分别测量：
+ * 1、叶子任务每处理一个元素的耗时（leafNanosPerElement）
+ * 2、在给定线程池中 fork + join 一个任务的开销（forkNanos）
+ * 然后让叶子任务的计算时间至少是拆分开销的 TARGET_WORK_RATIO 倍，由此得到阈值。
+ * <p>
+ * 校准结果按 “线程池并行度 + 可用处理器数” 保存在本地 properties 文件中（默认 ~/.java8chara/forkjoin-threshold.properties，
+ * 可通过系统属性 java8chara.forkjoin.thresholdFile 指定），之后启动的 JVM 直接读取，无需再次校准
+ */
+public final class ThresholdCalibrator {
+
+    public static final String FILE_PROPERTY = "java8chara.forkjoin.thresholdFile";
+
+    static final double TARGET_WORK_RATIO = 100;//叶子计算时间 / 拆分开销，即拆分开销控制在 1% 左右
+    static final int MIN_THRESHOLD = 1_000;
+    static final int MAX_THRESHOLD = 1 << 20;
+
+    private static final int LEAF_SAMPLE_SIZE = 1 << 16;
+    private static final int FORK_TREE_DEPTH = 12;//每轮 fork 2^13 - 1 个空任务
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURE_ROUNDS = 30;
+
+    private static final Logger LOG = Logger.getLogger(ThresholdCalibrator.class.getName());
+
+    private static final Map<String, Calibration> CACHE = new ConcurrentHashMap<>();
+
+    static volatile long sink;//防止 JIT 把测量用的循环当作死代码消除
+
+    private ThresholdCalibrator() {
+    }
+
+    /**
+     * 返回针对该线程池校准过的自适应拆分策略：优先使用本进程缓存，其次读取本地文件，都没有时才现场校准并写回文件
+     *
+     * @param pool
+     * @return
+     */
+    public static SplitPolicy calibratedPolicy(ForkJoinPool pool) {
+        return SplitPolicy.adaptive(calibration(pool).getThreshold());
+    }
+
+    public static Calibration calibration(ForkJoinPool pool) {
+        return CACHE.computeIfAbsent(key(pool.getParallelism()), key -> {
+            Path file = file();
+            Calibration loaded = load(file, key);
+            if (loaded != null)
+                return loaded;
+            Calibration calibration = calibrate(pool);
+            save(file, key, calibration);
+            return calibration;
+        });
+    }
+
+    /**
+     * 按需重新校准（例如机器负载特征变化之后），结果会覆盖缓存和本地文件
+     *
+     * @param pool
+     * @return
+     */
+    public static Calibration recalibrate(ForkJoinPool pool) {
+        Calibration calibration = calibrate(pool);
+        String key = key(pool.getParallelism());
+        CACHE.put(key, calibration);
+        save(file(), key, calibration);
+        return calibration;
+    }
+
+    /**
+     * 只测量，不读写缓存和文件
+     *
+     * @param pool
+     * @return
+     */
+    public static Calibration calibrate(ForkJoinPool pool) {
+        double leafNanosPerElement = measureLeafNanosPerElement();
+        double forkNanos = measureForkNanos(pool);
+        long threshold = (long) Math.ceil(TARGET_WORK_RATIO * forkNanos / leafNanosPerElement);
+        threshold = Math.max(MIN_THRESHOLD, Math.min(MAX_THRESHOLD, threshold));
+        return new Calibration(pool.getParallelism(), leafNanosPerElement, forkNanos, (int) threshold);
+    }
+
+    /**
+     * 测量顺序求和每个元素的耗时，取多轮中最快的一轮
+     */
+    private static double measureLeafNanosPerElement() {
+        long[] numbers = ThreadLocalRandom.current().longs(LEAF_SAMPLE_SIZE).toArray();
+        long fastest = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            for (long number : numbers)
+                sum += number;
+            long duration = System.nanoTime() - start;
+            sink += sum;
+            if (round >= WARMUP_ROUNDS)
+                fastest = Math.min(fastest, duration);
+        }
+        return Math.max(fastest, 1L) / (double) LEAF_SAMPLE_SIZE;
+    }
+
+    /**
+     * 在线程池中执行一棵只拆分不计算的任务树，测量每个任务的平均开销。
+     * 这棵树由 parallelism 个工作线程同时执行，墙钟时间只是每个线程的忙碌时间，
+     * 所以要乘以并行度换算成所有线程的总忙碌时间，再除以任务数；
+     * 否则核数越多测出的开销越小，阈值反而越小，正是大机器上任务过碎的原因
+     */
+    private static double measureForkNanos(ForkJoinPool pool) {
+        long tasks = (1L << (FORK_TREE_DEPTH + 1)) - 1;
+        long fastest = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+            long start = System.nanoTime();
+            pool.invoke(new EmptyForkTask(FORK_TREE_DEPTH));
+            long duration = System.nanoTime() - start;
+            if (round >= WARMUP_ROUNDS)
+                fastest = Math.min(fastest, duration);
+        }
+        return Math.max(fastest, 1L) * (double) pool.getParallelism() / tasks;
+    }
+
+    /**
+     * v2：forkNanos 改为所有工作线程的总忙碌时间，旧版本保存的结果偏小，不再读取
+     */
+    private static String key(int parallelism) {
+        return "v2.p" + parallelism + ".cpus" + Runtime.getRuntime().availableProcessors();
+    }
+
+    static Path file() {
+        String configured = System.getProperty(FILE_PROPERTY);
+        return configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".java8chara", "forkjoin-threshold.properties");
+    }
+
+    private static Calibration load(Path file, String key) {
+        if (!Files.isRegularFile(file))
+            return null;
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            return Calibration.from(properties, key);
+        } catch (IOException | RuntimeException ex) {
+            return null;//文件损坏时重新校准
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，避免多个 JVM 同时启动时读到写了一半的文件
+     */
+    private static synchronized void save(Path file, String key, Calibration calibration) {
+        Properties properties = new Properties();
+        try {
+            if (Files.isRegularFile(file))
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                }
+            calibration.store(properties, key);
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "forkjoin-threshold", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "fork/join split thresholds calibrated by " + ThresholdCalibrator.class.getName());
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            //保存失败只影响下次启动是否需要重新校准，不影响本次结果
+            LOG.warning("Unable to save fork/join calibration to " + file + ": " + ex);
+        }
+    }
+
+    /**
+     * 一次校准的结果
+     */
+    public static final class Calibration {
+        private final int parallelism;
+        private final double leafNanosPerElement;
+        private final double forkNanos;
+        private final int threshold;
+
+        Calibration(int parallelism, double leafNanosPerElement, double forkNanos, int threshold) {
+            this.parallelism = parallelism;
+            this.leafNanosPerElement = leafNanosPerElement;
+            this.forkNanos = forkNanos;
+            this.threshold = threshold;
+        }
+
+        static Calibration from(Properties properties, String key) {
+            String threshold = properties.getProperty(key + ".threshold");
+            if (threshold == null)
+                return null;
+            return new Calibration(
+                    Integer.parseInt(properties.getProperty(key + ".parallelism")),
+                    Double.parseDouble(properties.getProperty(key + ".leafNanosPerElement")),
+                    Double.parseDouble(properties.getProperty(key + ".forkNanos")),
+                    Integer.parseInt(threshold));
+        }
+
+        void store(Properties properties, String key) {
+            properties.setProperty(key + ".parallelism", String.valueOf(parallelism));
+            properties.setProperty(key + ".leafNanosPerElement", String.valueOf(leafNanosPerElement));
+            properties.setProperty(key + ".forkNanos", String.valueOf(forkNanos));
+            properties.setProperty(key + ".threshold", String.valueOf(threshold));
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public double getLeafNanosPerElement() {
+            return leafNanosPerElement;
+        }
+
+        /**
+         * 每个任务 fork + join 的开销（纳秒），按所有工作线程的总忙碌时间计算
+         */
+        public double getForkNanos() {
+            return forkNanos;
+        }
+
+        public int getThreshold() {
+            return threshold;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Calibration{parallelism=%d, leaf=%.3f ns/element, fork=%.1f ns/task, threshold=%d}",
+                    parallelism, leafNanosPerElement, forkNanos, threshold);
+        }
+    }
+}
+
+/**
+ * 只拆分、不做任何计算的任务，用来测量 fork/join 本身的开销
+ */
+class EmptyForkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int depth;
+
+    EmptyForkTask(int depth) {
+        this.depth = depth;
+    }
+
+    @Override
+    protected void compute() {
+        if (depth == 0)
+            return;
+        EmptyForkTask left = new EmptyForkTask(depth - 1);
+        left.fork();
+        new EmptyForkTask(depth - 1).compute();
+        left.join();
+    }
+}
@@ -0,0 +1,251 @@
+package com.mcd.java8.parallel;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * 基于 JDK 孵化模块 jdk.incubator.vector 的叶子内核，只在运行时加了 --add-modules jdk.incubator.vector 时启用
+ * <p>
+ * 项目按 Java 11 编译，不能直接引用 LongVector 等类，这里与 ShopExecutors.findVirtualExecutorFactory 一样，
+ * 在类初始化时探测一次：能加载 Vector API 就把用到的方法查找为 MethodHandle，否则 AVAILABLE 为 false，
+ * LeafKernels 退回 4 路展开的标量内核。
+ * <p>
+ * 句柄都是 static final 常量，C2 会把 invokeExact 内联成直接调用，循环中的向量对象经逃逸分析后不会真正分配；
+ * 解释执行和 C1 阶段仍然会分配，所以只对足够长的区间（MIN_LENGTH）使用
+ */
+final class VectorKernels {
+
+    static final int MIN_LENGTH = 256;
+
+    private static final MethodHandle LONG_FROM_ARRAY;//(long[], int)Object，已绑定 SPECIES_PREFERRED
+    private static final MethodHandle LONG_BROADCAST;//(long)Object
+    private static final MethodHandle LONG_ADD;//(Object, Object)Object
+    private static final MethodHandle LONG_MIN;
+    private static final MethodHandle LONG_MAX;
+    private static final MethodHandle LONG_REDUCE;//(Object, Object)long，第二个参数为 VectorOperators 中的运算
+    private static final int LONG_LANES;
+
+    private static final MethodHandle DOUBLE_FROM_ARRAY;
+    private static final MethodHandle DOUBLE_BROADCAST;
+    private static final MethodHandle DOUBLE_ADD;
+    private static final MethodHandle DOUBLE_MIN;
+    private static final MethodHandle DOUBLE_MAX;
+    private static final MethodHandle DOUBLE_FMA;//(Object, Object, Object)Object，a * b + c
+    private static final MethodHandle DOUBLE_REDUCE;
+    private static final int DOUBLE_LANES;
+
+    private static final Object ADD;
+    private static final Object MIN;
+    private static final Object MAX;
+
+    static final boolean AVAILABLE;
+
+    static {
+        MethodHandle[] handles = new MethodHandle[13];
+        Object[] operators = new Object[3];
+        int[] lanes = new int[2];
+        boolean available;
+        try {
+            available = probe(handles, operators, lanes);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            available = false;
+        }
+        LONG_FROM_ARRAY = handles[0];
+        LONG_BROADCAST = handles[1];
+        LONG_ADD = handles[2];
+        LONG_MIN = handles[3];
+        LONG_MAX = handles[4];
+        LONG_REDUCE = handles[5];
+        DOUBLE_FROM_ARRAY = handles[6];
+        DOUBLE_BROADCAST = handles[7];
+        DOUBLE_ADD = handles[8];
+        DOUBLE_MIN = handles[9];
+        DOUBLE_MAX = handles[10];
+        DOUBLE_FMA = handles[11];
+        DOUBLE_REDUCE = handles[12];
+        ADD = operators[0];
+        MIN = operators[1];
+        MAX = operators[2];
+        LONG_LANES = lanes[0];
+        DOUBLE_LANES = lanes[1];
+        AVAILABLE = available && LONG_LANES > 1 && DOUBLE_LANES > 1;
+    }
+
+    private VectorKernels() {
+    }
+
+    /**
+     * 查找 Vector API 的方法并统一适配为 Object 类型。模块未加载时 Class.forName 抛出 ClassNotFoundException
+     */
+    private static boolean probe(MethodHandle[] handles, Object[] operators, int[] lanes) throws ReflectiveOperationException {
+        Class<?> vector = Class.forName("jdk.incubator.vector.Vector");
+        Class<?> species = Class.forName("jdk.incubator.vector.VectorSpecies");
+        Class<?> operatorsClass = Class.forName("jdk.incubator.vector.VectorOperators");
+        Class<?> associative = Class.forName("jdk.incubator.vector.VectorOperators$Associative");
+        Class<?> longVector = Class.forName("jdk.incubator.vector.LongVector");
+        Class<?> doubleVector = Class.forName("jdk.incubator.vector.DoubleVector");
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        Object longSpecies = longVector.getField("SPECIES_PREFERRED").get(null);
+        Object doubleSpecies = doubleVector.getField("SPECIES_PREFERRED").get(null);
+        lanes[0] = (Integer) species.getMethod("length").invoke(longSpecies);
+        lanes[1] = (Integer) species.getMethod("length").invoke(doubleSpecies);
+
+        handles[0] = erase(MethodHandles.insertArguments(
+                lookup.findStatic(longVector, "fromArray", MethodType.methodType(longVector, species, long[].class, int.class)), 0, longSpecies));
+        handles[1] = erase(MethodHandles.insertArguments(
+                lookup.findStatic(longVector, "broadcast", MethodType.methodType(longVector, species, long.class)), 0, longSpecies));
+        handles[2] = erase(lookup.findVirtual(longVector, "add", MethodType.methodType(longVector, vector)));
+        handles[3] = erase(lookup.findVirtual(longVector, "min", MethodType.methodType(longVector, vector)));
+        handles[4] = erase(lookup.findVirtual(longVector, "max", MethodType.methodType(longVector, vector)));
+        handles[5] = erase(lookup.findVirtual(longVector, "reduceLanes", MethodType.methodType(long.class, associative)));
+
+        handles[6] = erase(MethodHandles.insertArguments(
+                lookup.findStatic(doubleVector, "fromArray", MethodType.methodType(doubleVector, species, double[].class, int.class)), 0, doubleSpecies));
+        handles[7] = erase(MethodHandles.insertArguments(
+                lookup.findStatic(doubleVector, "broadcast", MethodType.methodType(doubleVector, species, double.class)), 0, doubleSpecies));
+        handles[8] = erase(lookup.findVirtual(doubleVector, "add", MethodType.methodType(doubleVector, vector)));
+        handles[9] = erase(lookup.findVirtual(doubleVector, "min", MethodType.methodType(doubleVector, vector)));
+        handles[10] = erase(lookup.findVirtual(doubleVector, "max", MethodType.methodType(doubleVector, vector)));
+        handles[11] = erase(lookup.findVirtual(doubleVector, "fma", MethodType.methodType(doubleVector, vector, vector)));
+        handles[12] = erase(lookup.findVirtual(doubleVector, "reduceLanes", MethodType.methodType(double.class, associative)));
+
+        operators[0] = operatorsClass.getField("ADD").get(null);
+        operators[1] = operatorsClass.getField("MIN").get(null);
+        operators[2] = operatorsClass.getField("MAX").get(null);
+        return true;
+    }
+
+    /**
+     * Vector API 类型的参数和返回值都改为 Object（数组和原始类型不变），以便在 Java 11 的源码中用 invokeExact 调用
+     */
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++)
+            if (type.parameterType(i).getName().startsWith("jdk.incubator.vector."))
+                type = type.changeParameterType(i, Object.class);
+        if (type.returnType().getName().startsWith("jdk.incubator.vector."))
+            type = type.changeReturnType(Object.class);
+        return handle.asType(type);
+    }
+
+    static long sum(long[] a, int from, int to) {
+        try {
+            Object acc = (Object) LONG_BROADCAST.invokeExact(0L);
+            int i = from;
+            for (int limit = to - LONG_LANES; i <= limit; i += LONG_LANES)
+                acc = (Object) LONG_ADD.invokeExact(acc, (Object) LONG_FROM_ARRAY.invokeExact(a, i));
+            long sum = (long) LONG_REDUCE.invokeExact(acc, ADD);
+            for (; i < to; i++)
+                sum += a[i];
+            return sum;
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    static long min(long[] a, int from, int to) {
+        try {
+            Object acc = (Object) LONG_BROADCAST.invokeExact(Long.MAX_VALUE);
+            int i = from;
+            for (int limit = to - LONG_LANES; i <= limit; i += LONG_LANES)
+                acc = (Object) LONG_MIN.invokeExact(acc, (Object) LONG_FROM_ARRAY.invokeExact(a, i));
+            long min = (long) LONG_REDUCE.invokeExact(acc, MIN);
+            for (; i < to; i++)
+                min = Math.min(min, a[i]);
+            return min;
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    static long max(long[] a, int from, int to) {
+        try {
+            Object acc = (Object) LONG_BROADCAST.invokeExact(Long.MIN_VALUE);
+            int i = from;
+            for (int limit = to - LONG_LANES; i <= limit; i += LONG_LANES)
+                acc = (Object) LONG_MAX.invokeExact(acc, (Object) LONG_FROM_ARRAY.invokeExact(a, i));
+            long max = (long) LONG_REDUCE.invokeExact(acc, MAX);
+            for (; i < to; i++)
+                max = Math.max(max, a[i]);
+            return max;
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    static double sum(double[] a, int from, int to) {
+        try {
+            Object acc = (Object) DOUBLE_BROADCAST.invokeExact(0d);
+            int i = from;
+            for (int limit = to - DOUBLE_LANES; i <= limit; i += DOUBLE_LANES)
+                acc = (Object) DOUBLE_ADD.invokeExact(acc, (Object) DOUBLE_FROM_ARRAY.invokeExact(a, i));
+            double sum = (double) DOUBLE_REDUCE.invokeExact(acc, ADD);
+            for (; i < to; i++)
+                sum += a[i];
+            return sum;
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    static double min(double[] a, int from, int to) {
+        try {
+            Object acc = (Object) DOUBLE_BROADCAST.invokeExact(Double.POSITIVE_INFINITY);
+            int i = from;
+            for (int limit = to - DOUBLE_LANES; i <= limit; i += DOUBLE_LANES)
+                acc = (Object) DOUBLE_MIN.invokeExact(acc, (Object) DOUBLE_FROM_ARRAY.invokeExact(a, i));
+            double min = (double) DOUBLE_REDUCE.invokeExact(acc, MIN);
+            for (; i < to; i++)
+                min = Math.min(min, a[i]);
+            return min;
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    static double max(double[] a, int from, int to) {
+        try {
+            Object acc = (Object) DOUBLE_BROADCAST.invokeExact(Double.NEGATIVE_INFINITY);
+            int i = from;
+            for (int limit = to - DOUBLE_LANES; i <= limit; i += DOUBLE_LANES)
+                acc = (Object) DOUBLE_MAX.invokeExact(acc, (Object) DOUBLE_FROM_ARRAY.invokeExact(a, i));
+            double max = (double) DOUBLE_REDUCE.invokeExact(acc, MAX);
+            for (; i < to; i++)
+                max = Math.max(max, a[i]);
+            return max;
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    /**
+     * 每条通道用 fma 累加，最后把各通道相加。与标量内核的求和顺序不同，允许舍入误差
+     */
+    static double dot(double[] a, double[] b, int from, int to) {
+        try {
+            Object acc = (Object) DOUBLE_BROADCAST.invokeExact(0d);
+            int i = from;
+            for (int limit = to - DOUBLE_LANES; i <= limit; i += DOUBLE_LANES)
+                acc = (Object) DOUBLE_FMA.invokeExact((Object) DOUBLE_FROM_ARRAY.invokeExact(a, i), (Object) DOUBLE_FROM_ARRAY.invokeExact(b, i), acc);
+            double sum = (double) DOUBLE_REDUCE.invokeExact(acc, ADD);
+            for (; i < to; i++)
+                sum += a[i] * b[i];
+            return sum;
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    /**
+     * 向量方法只会抛出下标越界等非受检异常
+     */
+    private static RuntimeException propagate(Throwable ex) {
+        if (ex instanceof RuntimeException)
+            throw (RuntimeException) ex;
+        if (ex instanceof Error)
+            throw (Error) ex;
+        throw new IllegalStateException(ex);
+    }
+}
@@ -0,0 +1,298 @@
+package com.mcd.java8.perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 把一次运行与保存的基线对比，找出性能回退
+ * <p>
+ * 对每个同名基准，用 Welch t 检验（不要求两组样本方差相同）检验 “当前平均耗时 > 基线平均耗时 * (1 + margin)”：
+ * 单侧 p 值小于 alpha 时判定为耗时回退。平均耗时变长等价于吞吐量下降，所以同一个检验同时覆盖延迟和吞吐量。
+ * 反方向同样检验 “当前 < 基线 * (1 - margin)”，用于报告性能提升。
+ * <p>
+ * 分配的字节数几乎是确定的，不做统计检验：超过基线 (1 + margin) 倍并且多出 allocationSlackBytes 以上时判定为分配回退，
+ * allocationSlackBytes 用于吸收测量本身和后台线程的少量分配
+ */
+public final class BaselineComparator {
+
+    public static final double DEFAULT_MARGIN = 0.10;
+    public static final double DEFAULT_ALPHA = 0.01;
+    public static final long DEFAULT_ALLOCATION_SLACK_BYTES = 64 * 1024;
+
+    public enum Status {
+        REGRESSION, ALLOCATION_REGRESSION, IMPROVEMENT, UNCHANGED, MISSING
+    }
+
+    private final double margin;
+    private final double alpha;
+    private final long allocationSlackBytes;
+
+    public BaselineComparator() {
+        this(DEFAULT_MARGIN, DEFAULT_ALPHA, DEFAULT_ALLOCATION_SLACK_BYTES);
+    }
+
+    /**
+     * @param margin               允许的相对变化，如 0.10 表示慢 10% 以内不算回退
+     * @param alpha                显著性水平
+     * @param allocationSlackBytes 每次运行允许多分配的字节数
+     */
+    public BaselineComparator(double margin, double alpha, long allocationSlackBytes) {
+        if (margin < 0 || alpha <= 0 || alpha >= 1 || allocationSlackBytes < 0)
+            throw new IllegalArgumentException("margin must be >= 0, alpha in (0, 1), allocationSlackBytes >= 0");
+        this.margin = margin;
+        this.alpha = alpha;
+        this.allocationSlackBytes = allocationSlackBytes;
+    }
+
+    /**
+     * 逐个对比当前运行中的基准；基线中没有的基准状态为 MISSING
+     *
+     * @param baseline
+     * @param current
+     * @return
+     */
+    public Report compare(PerfRun baseline, PerfRun current) {
+        List<Comparison> comparisons = new ArrayList<>();
+        for (PerfResult result : current.getResults())
+            comparisons.add(compare(baseline.get(result.getName()), result));
+        return new Report(baseline, current, comparisons);
+    }
+
+    public Comparison compare(PerfResult baseline, PerfResult current) {
+        if (baseline == null)
+            return new Comparison(current.getName(), Status.MISSING, Double.NaN, current.getMean(), Double.NaN, Double.NaN,
+                    -1, current.getAllocatedBytesPerRun());
+        double slower = welchPValue(current, baseline, 1 + margin);//H1: current > baseline * (1 + margin)
+        double faster = welchPValue(baseline, current, 1 / (1 - Math.min(margin, 0.99)));//H1: baseline > current / (1 - margin)
+        long baselineAlloc = baseline.getAllocatedBytesPerRun();
+        long currentAlloc = current.getAllocatedBytesPerRun();
+
+        Status status;
+        if (slower < alpha)
+            status = Status.REGRESSION;
+        else if (baselineAlloc >= 0 && currentAlloc >= 0
+                && currentAlloc > baselineAlloc * (1 + margin) && currentAlloc - baselineAlloc > allocationSlackBytes)
+            status = Status.ALLOCATION_REGRESSION;
+        else if (faster < alpha)
+            status = Status.IMPROVEMENT;
+        else
+            status = Status.UNCHANGED;
+        return new Comparison(current.getName(), status, baseline.getMean(), current.getMean(), slower, faster,
+                baselineAlloc, currentAlloc);
+    }
+
+    /**
+     * 有回退时抛出 AssertionError，可以直接在测试中调用使测试失败
+     *
+     * @param baseline
+     * @param current
+     * @return 对比报告
+     */
+    public Report assertNoRegression(PerfRun baseline, PerfRun current) {
+        Report report = compare(baseline, current);
+        if (report.hasRegression())
+            throw new AssertionError("performance regression in suite " + current.getSuite() + System.lineSeparator() + report);
+        return report;
+    }
+
+    /**
+     * Welch t 检验的单侧 p 值，备择假设为 mean(a) > factor * mean(b)
+     */
+    static double welchPValue(PerfResult a, PerfResult b, double factor) {
+        double meanA = a.getMean(), meanB = factor * b.getMean();
+        double varA = square(a.getStddev()) / a.getIterations();
+        double varB = square(factor * b.getStddev()) / b.getIterations();
+        double se = Math.sqrt(varA + varB);
+        if (se == 0)
+            return meanA > meanB ? 0 : 1;
+        double t = (meanA - meanB) / se;
+        int nA = a.getIterations(), nB = b.getIterations();
+        double df = square(varA + varB)
+                / ((nA > 1 ? square(varA) / (nA - 1) : 0) + (nB > 1 ? square(varB) / (nB - 1) : 0));
+        if (Double.isNaN(df) || Double.isInfinite(df))
+            df = Math.max(1, nA + nB - 2);
+        return studentTUpperTail(t, df);
+    }
+
+    /**
+     * 自由度为 df 的 t 分布 P(T > t)
+     */
+    static double studentTUpperTail(double t, double df) {
+        double tail = 0.5 * regularizedIncompleteBeta(df / (df + t * t), df / 2, 0.5);
+        return t > 0 ? tail : 1 - tail;
+    }
+
+    /**
+     * 正则化不完全 Beta 函数 I_x(a, b)，用连分式展开计算
+     */
+    static double regularizedIncompleteBeta(double x, double a, double b) {
+        if (x <= 0)
+            return 0;
+        if (x >= 1)
+            return 1;
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+        if (x < (a + 1) / (a + b + 2))
+            return front * betaContinuedFraction(x, a, b) / a;
+        return 1 - front * betaContinuedFraction(1 - x, b, a) / b;
+    }
+
+    private static double betaContinuedFraction(double x, double a, double b) {
+        final double tiny = 1e-300;
+        double c = 1, d = 1 - (a + b) * x / (a + 1);
+        d = 1 / (Math.abs(d) < tiny ? tiny : d);
+        double h = d;
+        for (int m = 1; m <= 300; m++) {
+            int m2 = 2 * m;
+            double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+            d = 1 / nonZero(1 + aa * d, tiny);
+            c = nonZero(1 + aa / c, tiny);
+            h *= d * c;
+            aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+            d = 1 / nonZero(1 + aa * d, tiny);
+            c = nonZero(1 + aa / c, tiny);
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-12)
+                break;
+        }
+        return h;
+    }
+
+    private static double nonZero(double value, double tiny) {
+        return Math.abs(value) < tiny ? tiny : value;
+    }
+
+    /**
+     * Lanczos 近似
+     */
+    static double logGamma(double x) {
+        double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+                -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x, tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+        for (double coefficient : coefficients)
+            series += coefficient / ++y;
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    private static double square(double x) {
+        return x * x;
+    }
+
+    /**
+     * 单个基准的对比结果
+     */
+    public static final class Comparison {
+        private final String name;
+        private final Status status;
+        private final double baselineMean;
+        private final double currentMean;
+        private final double regressionPValue;
+        private final double improvementPValue;
+        private final long baselineAllocatedBytes;
+        private final long currentAllocatedBytes;
+
+        Comparison(String name, Status status, double baselineMean, double currentMean, double regressionPValue,
+                   double improvementPValue, long baselineAllocatedBytes, long currentAllocatedBytes) {
+            this.name = name;
+            this.status = status;
+            this.baselineMean = baselineMean;
+            this.currentMean = currentMean;
+            this.regressionPValue = regressionPValue;
+            this.improvementPValue = improvementPValue;
+            this.baselineAllocatedBytes = baselineAllocatedBytes;
+            this.currentAllocatedBytes = currentAllocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public double getBaselineMean() {
+            return baselineMean;
+        }
+
+        public double getCurrentMean() {
+            return currentMean;
+        }
+
+        /**
+         * 平均耗时的相对变化，正数表示变慢
+         */
+        public double getChange() {
+            return currentMean / baselineMean - 1;
+        }
+
+        public double getRegressionPValue() {
+            return regressionPValue;
+        }
+
+        public double getImprovementPValue() {
+            return improvementPValue;
+        }
+
+        public long getBaselineAllocatedBytes() {
+            return baselineAllocatedBytes;
+        }
+
+        public long getCurrentAllocatedBytes() {
+            return currentAllocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            if (status == Status.MISSING)
+                return String.format("%-24s %-21s current %.3f ms (no baseline)", name, status, currentMean / 1e6);
+            return String.format("%-24s %-21s %.3f ms -> %.3f ms (%+.1f%%, p=%.4f), alloc %s -> %s",
+                    name, status, baselineMean / 1e6, currentMean / 1e6, getChange() * 100,
+                    status == Status.IMPROVEMENT ? improvementPValue : regressionPValue,
+                    baselineAllocatedBytes < 0 ? "n/a" : PerfResult.formatBytes(baselineAllocatedBytes),
+                    currentAllocatedBytes < 0 ? "n/a" : PerfResult.formatBytes(currentAllocatedBytes));
+        }
+    }
+
+    /**
+     * 一次运行与基线的完整对比
+     */
+    public static final class Report {
+        private final PerfRun baseline;
+        private final PerfRun current;
+        private final List<Comparison> comparisons;
+
+        Report(PerfRun baseline, PerfRun current, List<Comparison> comparisons) {
+            this.baseline = baseline;
+            this.current = current;
+            this.comparisons = Collections.unmodifiableList(comparisons);
+        }
+
+        public List<Comparison> getComparisons() {
+            return comparisons;
+        }
+
+        public boolean hasRegression() {
+            for (Comparison comparison : comparisons)
+                if (comparison.getStatus() == Status.REGRESSION || comparison.getStatus() == Status.ALLOCATION_REGRESSION)
+                    return true;
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("baseline %s (java %s, %d cores) vs current %s (java %s, %d cores)",
+                    baseline.getTimestamp(), baseline.getJvmVersion(), baseline.getCores(),
+                    current.getTimestamp(), current.getJvmVersion(), current.getCores()));
+            if (!baseline.getParams().equals(current.getParams()))
+                sb.append(System.lineSeparator()).append("  params differ: ").append(baseline.getParams()).append(" vs ").append(current.getParams());
+            for (Comparison comparison : comparisons)
+                sb.append(System.lineSeparator()).append("  ").append(comparison);
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.mcd.java8.perf;
+
+import com.mcd.java8.completableFuture.PriceFanOut;
+import com.mcd.java8.completableFuture.Shop;
+import com.mcd.java8.completableFuture.ShopExecutors;
+import com.mcd.java8.parallel.ParallelTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static com.mcd.java8.perf.BaselineComparator.Status.ALLOCATION_REGRESSION;
+import static com.mcd.java8.perf.BaselineComparator.Status.IMPROVEMENT;
+import static com.mcd.java8.perf.BaselineComparator.Status.MISSING;
+import static com.mcd.java8.perf.BaselineComparator.Status.REGRESSION;
+import static com.mcd.java8.perf.BaselineComparator.Status.UNCHANGED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 结果保存、基线对比与回退检查
+ */
+public class PerfRegressionTest {
+
+    @Test
+    public void storeRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("perf");
+        try {
+            PerfResultStore store = new PerfResultStore(dir);
+            Map<String, String> params = Collections.singletonMap("n", "1000");
+            PerfRun first = store.record("sum", params, Arrays.asList(result("a", 100, 5, 1), result("b", 200, 5, 2)));
+            store.record("sum", params, Collections.singletonList(result("a", 110, 5, 3)));
+            store.saveBaseline(first);
+
+            List<PerfRun> history = store.history("sum");
+            assertEquals(2, history.size());
+            assertEquals(2, history.get(0).getResults().size());
+            assertEquals(params, history.get(0).getParams());
+            assertEquals(first.getTimestamp(), history.get(0).getTimestamp());
+            assertArrayEquals(first.get("b").getSamples(), history.get(0).get("b").getSamples());
+            assertEquals(first.get("a").getAllocatedBytesPerRun(), history.get(0).get("a").getAllocatedBytesPerRun());
+            assertEquals(110, store.latest("sum").get().get("a").getMean(), 5);
+            assertEquals(first.getTimestamp(), store.baseline("sum").get().getTimestamp());
+            assertFalse(store.baseline("other").isPresent());
+            System.out.println(new String(Files.readAllBytes(store.historyFile("sum"))));
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void compare() {
+        BaselineComparator comparator = new BaselineComparator(0.10, 0.01, 1024);
+        PerfResult baseline = result("sum", 100, 3, 1);
+        assertEquals(UNCHANGED, comparator.compare(baseline, result("sum", 101, 3, 2)).getStatus());
+        assertEquals(UNCHANGED, comparator.compare(baseline, result("sum", 105, 3, 3)).getStatus());//在 margin 以内
+        assertEquals(REGRESSION, comparator.compare(baseline, result("sum", 130, 3, 4)).getStatus());
+        assertEquals(IMPROVEMENT, comparator.compare(baseline, result("sum", 70, 3, 5)).getStatus());
+        //噪声很大时，平均值的差异不显著
+        assertEquals(UNCHANGED, comparator.compare(result("sum", 100, 60, 6), result("sum", 125, 60, 7)).getStatus());
+
+        PerfResult allocating = new PerfResult("sum", baseline.getSamples(), 0, 20 * 1_000_000L, 0, 0);
+        assertEquals(ALLOCATION_REGRESSION, comparator.compare(baseline, allocating).getStatus());
+
+        PerfRun before = PerfRun.of("sum", Collections.emptyMap(), Collections.singletonList(baseline));
+        PerfRun after = PerfRun.of("sum", Collections.emptyMap(), Arrays.asList(result("sum", 130, 3, 8), result("new", 1, 0, 9)));
+        BaselineComparator.Report report = comparator.compare(before, after);
+        assertEquals(MISSING, report.getComparisons().get(1).getStatus());
+        System.out.println(report);
+        try {
+            comparator.assertNoRegression(before, after);
+            fail("regression not detected");
+        } catch (AssertionError expected) {
+            assertTrue(expected.getMessage().contains("REGRESSION"));
+        }
+    }
+
+    @Test
+    public void studentT() {
+        assertEquals(0.5, BaselineComparator.studentTUpperTail(0, 10), 1e-9);
+        assertEquals(0.03669, BaselineComparator.studentTUpperTail(2, 10), 1e-4);
+        assertEquals(1 - 0.03669, BaselineComparator.studentTUpperTail(-2, 10), 1e-4);
+        assertEquals(0.02275, BaselineComparator.studentTUpperTail(2, 1e6), 1e-4);//自由度很大时接近正态分布
+    }
+
+    /**
+     * 与基线对比并在回退时失败；第一次运行（还没有基线）时把本次结果保存为基线。
+     * 结果保存在系统属性 java8chara.perf.dir 指定的目录中，例如 -Djava8chara.perf.dir=target/perf；
+     * 没有指定时使用临时目录并在结束后删除，只做一次测量而不对比，不会在用户目录下留下文件
+     */
+    @Test
+    public void parallelSumGate() throws IOException {
+        long n = 10_000_000;
+        int shopCount = 10;
+        PerfRunner runner = new PerfRunner().iterations(30);
+        ExecutorService executor = ShopExecutors.virtualOrBounded(shopCount);
+        List<PerfResult> results;
+        try {
+            //10 个固定延迟 10ms 的商店，测量的是 PriceFanOut 的调度和合并开销，理想值为一次延迟
+            List<Shop> shops = new ArrayList<>();
+            for (int i = 0; i < shopCount; i++)
+                shops.add(new Shop("Shop" + i, executor, 10));
+            PriceFanOut fanOut = new PriceFanOut();
+            results = Arrays.asList(
+                    runner.run("iterativeSum", ParallelTest::iterativeSum, n),
+                    runner.run("parallelRangedSum", ParallelTest::parallelRangedSum, n),
+                    runner.run("toListCollector", () -> LongStream.range(0, 1_000_000).boxed().collect(Collectors.toList())),
+                    runner.run("priceFanOut", () -> fanOut.search(shops, "myPhone27S").join()));
+        } finally {
+            executor.shutdown();
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("n", String.valueOf(n));
+        params.put("shops", String.valueOf(shopCount));
+
+        String configured = System.getProperty(PerfResultStore.DIR_PROPERTY);
+        Path dir = configured != null ? Paths.get(configured) : Files.createTempDirectory("perf-gate");
+        try {
+            PerfResultStore store = new PerfResultStore(dir);
+            PerfRun run = store.record("parallel-sum", params, results);
+            PerfRun baseline = store.baseline("parallel-sum").orElse(null);
+            if (baseline == null) {
+                store.saveBaseline(run);
+                System.out.println(configured != null ? "baseline saved to " + dir
+                        : "no baseline, set -D" + PerfResultStore.DIR_PROPERTY + " to keep one between runs: " + run.getResults());
+                return;
+            }
+            System.out.println(new BaselineComparator(0.25, 0.001, BaselineComparator.DEFAULT_ALLOCATION_SLACK_BYTES)
+                    .assertNoRegression(baseline, run));
+        } finally {
+            if (configured == null)
+                deleteRecursively(dir);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(path);
+        }
+    }
+
+    /**
+     * 平均值约为 mean、噪声幅度为 noise 的 30 个样本
+     */
+    private static PerfResult result(String name, long mean, long noise, long seed) {
+        Random random = new Random(seed);
+        long[] samples = new long[30];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = mean + (noise == 0 ? 0 : (long) (random.nextGaussian() * noise));
+        return new PerfResult(name, samples, 0, 0, 0, 0);
+    }
+}
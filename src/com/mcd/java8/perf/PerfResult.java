@@ -0,0 +1,126 @@
+package com.mcd.java8.perf;
+
+import java.util.Arrays;
+
+/**
+ * 一次 PerfRunner 测量的结果：每次运行的耗时样本（纳秒）、预热次数、平均每次运行分配的字节数和 GC 开销
+ */
+public final class PerfResult {
+
+    private final String name;
+    private final long[] samples;//按测量顺序排列的耗时样本
+    private final long[] sorted;
+    private final int warmupIterations;
+    private final long allocatedBytes;//测量阶段所有线程分配的总字节数，不可用时为 -1
+    private final long gcCount;
+    private final long gcMillis;
+
+    PerfResult(String name, long[] samples, int warmupIterations, long allocatedBytes, long gcCount, long gcMillis) {
+        if (samples.length == 0)
+            throw new IllegalArgumentException("no samples");
+        this.name = name;
+        this.samples = samples.clone();
+        this.sorted = samples.clone();
+        Arrays.sort(this.sorted);
+        this.warmupIterations = warmupIterations;
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long[] getSamples() {
+        return samples.clone();
+    }
+
+    public int getIterations() {
+        return samples.length;
+    }
+
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    public double getMean() {
+        double sum = 0;
+        for (long sample : samples)
+            sum += sample;
+        return sum / samples.length;
+    }
+
+    /**
+     * 样本标准差
+     */
+    public double getStddev() {
+        if (samples.length < 2)
+            return 0;
+        double mean = getMean();
+        double squares = 0;
+        for (long sample : samples)
+            squares += (sample - mean) * (sample - mean);
+        return Math.sqrt(squares / (samples.length - 1));
+    }
+
+    public long getMin() {
+        return sorted[0];
+    }
+
+    public long getMax() {
+        return sorted[sorted.length - 1];
+    }
+
+    /**
+     * 百分位数（最近秩法），如 percentile(99) 即 p99
+     *
+     * @param p 0 ~ 100
+     * @return
+     */
+    public long percentile(double p) {
+        if (p < 0 || p > 100)
+            throw new IllegalArgumentException("percentile out of range: " + p);
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * 平均每次运行分配的字节数，JVM 不支持线程分配统计时返回 -1
+     */
+    public long getAllocatedBytesPerRun() {
+        return allocatedBytes < 0 ? -1 : allocatedBytes / samples.length;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    /**
+     * 平均每次运行的 GC 耗时（毫秒）
+     */
+    public double getGcMillisPerRun() {
+        return (double) gcMillis / samples.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: mean=%.3f ms, stddev=%.3f ms, p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, min=%.3f ms, max=%.3f ms, "
+                        + "n=%d (warmup %d), alloc=%s/run, gc=%d (%d ms)",
+                name, getMean() / 1e6, getStddev() / 1e6, percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6,
+                getMin() / 1e6, getMax() / 1e6, samples.length, warmupIterations,
+                allocatedBytes < 0 ? "n/a" : formatBytes(getAllocatedBytesPerRun()), gcCount, gcMillis);
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        if (bytes < 1024 * 1024)
+            return String.format("%.1f KB", bytes / 1024d);
+        return String.format("%.1f MB", bytes / (1024d * 1024));
+    }
+}
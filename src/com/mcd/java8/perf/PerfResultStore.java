@@ -0,0 +1,209 @@
+package com.mcd.java8.perf;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 把性能测试结果保存为 CSV，便于在每次升级之后与基线对比
+ * <p>
+ * 每个测试集（suite）对应目录下的两个文件：
+ * 1、suite.csv：历史记录，每次 record 追加写入
+ * 2、suite-baseline.csv：基线，saveBaseline 时整体覆盖
+ * <p>
+ * 每行是一个基准的一次运行，列见 HEADER；samples 列保存全部纳秒样本（空格分隔），读回后可以重新做统计检验，
+ * 其余的 mean、p50、p99 等列只是为了方便用表格工具直接查看。
+ * 默认目录为 ~/.java8chara/perf，可通过系统属性 java8chara.perf.dir 指定
+ */
+public final class PerfResultStore {
+
+    public static final String DIR_PROPERTY = "java8chara.perf.dir";
+
+    static final String HEADER = "timestamp,suite,benchmark,jvm,cores,params,iterations,warmup,"
+            + "mean_ns,stddev_ns,p50_ns,p99_ns,alloc_bytes_per_run,gc_count,gc_ms,samples";
+
+    private final Path dir;
+
+    public PerfResultStore() {
+        this(defaultDir());
+    }
+
+    public PerfResultStore(Path dir) {
+        this.dir = dir;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * 以当前环境创建一次运行并追加到历史记录中
+     *
+     * @param suite
+     * @param params
+     * @param results
+     * @return
+     */
+    public PerfRun record(String suite, Map<String, String> params, List<PerfResult> results) {
+        PerfRun run = PerfRun.of(suite, params, results);
+        append(run);
+        return run;
+    }
+
+    public void append(PerfRun run) {
+        write(historyFile(run.getSuite()), run, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    public void saveBaseline(PerfRun run) {
+        write(baselineFile(run.getSuite()), run, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    public Optional<PerfRun> baseline(String suite) {
+        List<PerfRun> runs = read(baselineFile(suite));
+        return runs.isEmpty() ? Optional.empty() : Optional.of(runs.get(runs.size() - 1));
+    }
+
+    /**
+     * 历史记录中的所有运行，按写入顺序
+     */
+    public List<PerfRun> history(String suite) {
+        return read(historyFile(suite));
+    }
+
+    public Optional<PerfRun> latest(String suite) {
+        List<PerfRun> runs = history(suite);
+        return runs.isEmpty() ? Optional.empty() : Optional.of(runs.get(runs.size() - 1));
+    }
+
+    Path historyFile(String suite) {
+        return dir.resolve(suite + ".csv");
+    }
+
+    Path baselineFile(String suite) {
+        return dir.resolve(suite + "-baseline.csv");
+    }
+
+    private void write(Path file, PerfRun run, StandardOpenOption... options) {
+        try {
+            Files.createDirectories(dir);
+            boolean header = !Files.exists(file) || Files.size(file) == 0 || contains(options, StandardOpenOption.TRUNCATE_EXISTING);
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, options)) {
+                if (header) {
+                    writer.write(HEADER);
+                    writer.newLine();
+                }
+                for (PerfResult result : run.getResults()) {
+                    writer.write(format(run, result));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static String format(PerfRun run, PerfResult result) {
+        StringBuilder params = new StringBuilder();
+        run.getParams().forEach((key, value) -> params.append(params.length() == 0 ? "" : ";").append(key).append('=').append(value));
+        StringBuilder samples = new StringBuilder();
+        for (long sample : result.getSamples())
+            samples.append(samples.length() == 0 ? "" : " ").append(sample);
+        return String.join(",",
+                run.getTimestamp().toString(),
+                run.getSuite(),
+                result.getName(),
+                run.getJvmVersion(),
+                String.valueOf(run.getCores()),
+                params,
+                String.valueOf(result.getIterations()),
+                String.valueOf(result.getWarmupIterations()),
+                String.format(Locale.ROOT, "%.1f", result.getMean()),
+                String.format(Locale.ROOT, "%.1f", result.getStddev()),
+                String.valueOf(result.percentile(50)),
+                String.valueOf(result.percentile(99)),
+                String.valueOf(result.getAllocatedBytesPerRun()),
+                String.valueOf(result.getGcCount()),
+                String.valueOf(result.getGcMillis()),
+                samples);
+    }
+
+    /**
+     * 读取文件中的所有运行，timestamp 和 suite 相同的相邻行属于同一次运行
+     */
+    static List<PerfRun> read(Path file) {
+        List<PerfRun> runs = new ArrayList<>();
+        if (!Files.exists(file))
+            return runs;
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        String[] current = null;
+        List<PerfResult> results = new ArrayList<>();
+        for (String line : lines) {
+            if (line.isEmpty() || line.equals(HEADER))
+                continue;
+            String[] columns = line.split(",", -1);
+            if (columns.length != 16)
+                throw new IllegalStateException("malformed line in " + file + ": " + line);
+            if (current != null && !(current[0].equals(columns[0]) && current[1].equals(columns[1]))) {
+                runs.add(toRun(current, results));
+                results = new ArrayList<>();
+            }
+            current = columns;
+            results.add(toResult(columns));
+        }
+        if (current != null)
+            runs.add(toRun(current, results));
+        return runs;
+    }
+
+    private static PerfRun toRun(String[] columns, List<PerfResult> results) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (!columns[5].isEmpty())
+            for (String pair : columns[5].split(";")) {
+                int eq = pair.indexOf('=');
+                params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        return new PerfRun(columns[1], Instant.parse(columns[0]), columns[3], Integer.parseInt(columns[4]), params, results);
+    }
+
+    private static PerfResult toResult(String[] columns) {
+        String[] parts = columns[15].split(" ");
+        long[] samples = new long[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            samples[i] = Long.parseLong(parts[i]);
+        long allocatedPerRun = Long.parseLong(columns[12]);
+        return new PerfResult(columns[2], samples, Integer.parseInt(columns[7]),
+                allocatedPerRun < 0 ? -1 : allocatedPerRun * samples.length,
+                Long.parseLong(columns[13]), Long.parseLong(columns[14]));
+    }
+
+    private static boolean contains(StandardOpenOption[] options, StandardOpenOption option) {
+        for (StandardOpenOption o : options)
+            if (o == option)
+                return true;
+        return false;
+    }
+
+    static Path defaultDir() {
+        String configured = System.getProperty(DIR_PROPERTY);
+        return configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".java8chara", "perf");
+    }
+}
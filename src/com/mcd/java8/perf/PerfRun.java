@@ -0,0 +1,91 @@
+package com.mcd.java8.perf;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 一次完整的性能测试运行：同一套（suite）基准的所有 PerfResult，以及运行时的环境和参数
+ */
+public final class PerfRun {
+
+    private static final Pattern UNSAFE = Pattern.compile("[,;=\\r\\n]");//CSV 中用作分隔符的字符
+
+    private final String suite;
+    private final Instant timestamp;
+    private final String jvmVersion;
+    private final int cores;
+    private final Map<String, String> params;
+    private final List<PerfResult> results;
+
+    PerfRun(String suite, Instant timestamp, String jvmVersion, int cores, Map<String, String> params, List<PerfResult> results) {
+        checkSafe(suite);
+        params.forEach((key, value) -> {
+            checkSafe(key);
+            checkSafe(value);
+        });
+        results.forEach(result -> checkSafe(result.getName()));
+        this.suite = suite;
+        this.timestamp = timestamp;
+        this.jvmVersion = jvmVersion;
+        this.cores = cores;
+        this.params = Collections.unmodifiableMap(new LinkedHashMap<>(params));
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+    }
+
+    /**
+     * 以当前 JVM 的版本和可用处理器数创建
+     *
+     * @param suite   基准测试集的名字，如 "parallel-sum"
+     * @param params  影响结果的参数，如 n、线程池大小
+     * @param results
+     * @return
+     */
+    public static PerfRun of(String suite, Map<String, String> params, List<PerfResult> results) {
+        return new PerfRun(suite, Instant.now(), System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(), params, results);
+    }
+
+    public String getSuite() {
+        return suite;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public String getJvmVersion() {
+        return jvmVersion;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    public List<PerfResult> getResults() {
+        return results;
+    }
+
+    /**
+     * 按名字查找结果，不存在时返回 null
+     */
+    public PerfResult get(String name) {
+        for (PerfResult result : results)
+            if (result.getName().equals(name))
+                return result;
+        return null;
+    }
+
+    private static void checkSafe(String s) {
+        if (s == null || s.isEmpty() || UNSAFE.matcher(s).find())
+            throw new IllegalArgumentException("name must be non-empty and must not contain ',', ';', '=' or line breaks: " + s);
+    }
+}
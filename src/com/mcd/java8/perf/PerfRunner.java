@@ -0,0 +1,171 @@
+package com.mcd.java8.perf;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * 轻量级的进程内性能测量，可以在预发布环境中直接运行
+ * <p>
+ * Utils.measureSumPerf 只保留 10 次中最快的一次，以毫秒为单位，且参数是装箱的 Function<Long, Long>。这里：
+ * 1、提供 LongUnaryOperator、Runnable、Supplier 三种原始类型特化的入口，不会因为装箱影响结果
+ * 2、自动判断预热是否结束：最近 warmupWindow 次运行耗时的变异系数（标准差 / 平均值）不超过 stableCv 时，认为 JIT 编译已经稳定
+ * 3、保留每次运行的纳秒级样本，给出平均值、标准差和百分位数
+ * 4、通过 ThreadMXBean 统计测量期间所有线程分配的字节数（并行流在其他线程中的分配也包含在内），
+ * 通过 GarbageCollectorMXBean 统计 GC 次数和耗时，一次调用同时得到延迟和分配开销
+ * <p>
+ * 注意：分配统计针对整个 JVM 中存活的线程，测量期间后台线程的分配也会计入；需要精确的离线数据时请使用 benchmarks 模块中的 JMH
+ */
+public final class PerfRunner {
+
+    static volatile long sink;//防止结果没有被使用而被 JIT 消除
+
+    private int minWarmup = 5;
+    private int maxWarmup = 100;
+    private int warmupWindow = 5;
+    private double stableCv = 0.05;
+    private int iterations = 20;
+
+    /**
+     * @param min 最少预热次数
+     * @param max 最多预热次数，达到后即使还不稳定也开始测量
+     * @return
+     */
+    public PerfRunner warmup(int min, int max) {
+        if (min < 0 || max < min)
+            throw new IllegalArgumentException("invalid warmup range: " + min + ".." + max);
+        this.minWarmup = min;
+        this.maxWarmup = max;
+        return this;
+    }
+
+    /**
+     * @param window   判断是否稳定时参考的最近运行次数
+     * @param stableCv 变异系数不超过该值即认为稳定
+     * @return
+     */
+    public PerfRunner stability(int window, double stableCv) {
+        if (window < 2 || stableCv <= 0)
+            throw new IllegalArgumentException("window must be >= 2 and stableCv > 0");
+        this.warmupWindow = window;
+        this.stableCv = stableCv;
+        return this;
+    }
+
+    public PerfRunner iterations(int iterations) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        this.iterations = iterations;
+        return this;
+    }
+
+    public PerfResult run(String name, LongUnaryOperator function, long n) {
+        return measure(name, () -> sink += function.applyAsLong(n));
+    }
+
+    public <T> PerfResult run(String name, Supplier<T> supplier) {
+        return measure(name, () -> {
+            T result = supplier.get();
+            sink += result == null ? 0 : System.identityHashCode(result);
+        });
+    }
+
+    public PerfResult run(String name, Runnable task) {
+        return measure(name, task);
+    }
+
+    private PerfResult measure(String name, Runnable task) {
+        int warmup = warmup(task);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean allocationSupported = isAllocationSupported(threads);
+        Map<Long, Long> allocatedBefore = allocationSupported ? allocatedBytes(threads) : null;
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            task.run();
+            samples[i] = System.nanoTime() - start;
+        }
+
+        long gcCount = gcCount() - gcCountBefore;
+        long gcMillis = gcMillis() - gcMillisBefore;
+        long allocated = -1;
+        if (allocationSupported) {
+            allocated = 0;
+            for (Map.Entry<Long, Long> entry : allocatedBytes(threads).entrySet())
+                allocated += entry.getValue() - allocatedBefore.getOrDefault(entry.getKey(), 0L);//测量期间新建的线程，全部计入
+        }
+        return new PerfResult(name, samples, warmup, allocated, gcCount, gcMillis);
+    }
+
+    /**
+     * 运行到耗时稳定为止，返回预热次数
+     */
+    private int warmup(Runnable task) {
+        long[] window = new long[warmupWindow];
+        int count = 0;
+        while (count < maxWarmup) {
+            long start = System.nanoTime();
+            task.run();
+            window[count % warmupWindow] = System.nanoTime() - start;
+            count++;
+            if (count >= minWarmup && count >= warmupWindow && coefficientOfVariation(window) <= stableCv)
+                break;
+        }
+        return count;
+    }
+
+    static double coefficientOfVariation(long[] values) {
+        double mean = 0;
+        for (long value : values)
+            mean += value;
+        mean /= values.length;
+        if (mean == 0)
+            return 0;
+        double squares = 0;
+        for (long value : values)
+            squares += (value - mean) * (value - mean);
+        return Math.sqrt(squares / (values.length - 1)) / mean;
+    }
+
+    private static boolean isAllocationSupported(ThreadMXBean threads) {
+        return threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * 所有存活线程已分配的字节数，按线程 id 索引
+     */
+    private static Map<Long, Long> allocatedBytes(ThreadMXBean threads) {
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = sunThreads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++)
+            if (bytes[i] >= 0)//线程已经结束时为 -1
+                result.put(ids[i], bytes[i]);
+        return result;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+}
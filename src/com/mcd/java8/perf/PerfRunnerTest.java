@@ -0,0 +1,45 @@
+package com.mcd.java8.perf;
+
+import com.mcd.java8.parallel.ParallelTest;
+import org.junit.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PerfRunner：与 StreamPerfTest 中相同的几种求和方式，同时输出延迟分布和分配开销
+ */
+public class PerfRunnerTest {
+
+    private final PerfRunner runner = new PerfRunner().warmup(5, 50).iterations(20);
+
+    @Test
+    public void sumPerf() {
+        long n = 10_000_000;
+        System.out.println(runner.run("Iterative sum", ParallelTest::iterativeSum, n));
+        System.out.println(runner.run("Sequential sum", ParallelTest::sequentialSum, n));
+        System.out.println(runner.run("Parallel range sum", ParallelTest::parallelRangedSum, n));
+        System.out.println(runner.run("Boxed collect", () -> LongStream.rangeClosed(1, 1_000_000).boxed().collect(Collectors.toList())));
+    }
+
+    @Test
+    public void statistics() {
+        PerfResult result = new PerfResult("fixed", new long[]{5, 1, 4, 2, 3}, 0, 500, 0, 0);
+        assertEquals(3d, result.getMean(), 0d);
+        assertEquals(Math.sqrt(2.5), result.getStddev(), 1e-12);
+        assertEquals(1L, result.getMin());
+        assertEquals(5L, result.getMax());
+        assertEquals(3L, result.percentile(50));
+        assertEquals(5L, result.percentile(99));
+        assertEquals(100L, result.getAllocatedBytesPerRun());
+
+        //装箱 100 万个 Long 至少分配 16MB
+        PerfResult boxed = new PerfRunner().warmup(1, 5).iterations(3)
+                .run("boxed", () -> LongStream.range(0, 1_000_000).boxed().collect(Collectors.toList()));
+        assertTrue(boxed.getAllocatedBytesPerRun() < 0 || boxed.getAllocatedBytesPerRun() > 16_000_000);
+        assertEquals(3, boxed.getIterations());
+    }
+}
@@ -0,0 +1,173 @@
+package com.mcd.java8.stream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 内存有界的高频词（heavy hitters）统计：Count-Min Sketch + 候选集
+ * <p>
+ * 词汇量太大、无法用 TokenCountMap 精确计数时使用。
+ * 1、Count-Min Sketch 是 depth 行 width 列的计数矩阵，每个单词在每一行按不同的哈希落到一列并 +1，
+ * 估计值取各行中最小的那个。估计值只会偏大不会偏小，误差不超过 epsilon * 总词数的概率至少为 1 - delta
+ * 2、候选集最多保留 k * CANDIDATE_FACTOR 个估计值最高的单词，新单词的估计值超过候选集中最小的估计值时，替换掉最小的那个
+ * 3、两个 HeavyHitters 合并时，矩阵按元素相加，候选集取并集后用合并后的矩阵重新估计，再保留估计值最高的那些，因此可以配合并行流的 collect 使用
+ * <p>
+ * 内存占用只与 depth * width 和 k 有关，与词汇量无关
+ */
+public final class HeavyHitters extends TokenCounter {
+
+    static final int CANDIDATE_FACTOR = 4;
+
+    private final int k;
+    private final int capacity;//候选集容量
+    private final int depth;
+    private final int width;
+    private final long[] sketch;//depth 行 width 列，按行展开
+    private long total;//统计过的单词总数
+
+    private TokenCountMap candidates;//单词 → 估计值
+    private String minKey;//候选集中估计值最小的单词
+    private long minEstimate;
+    private boolean minDirty = true;//minKey / minEstimate 需要重新计算
+
+    /**
+     * @param k          需要的高频词个数
+     * @param epsilon    相对误差，估计值超出真实值的部分不超过 epsilon * 总词数
+     * @param delta      超出误差上限的概率
+     * @param ignoreCase 是否忽略大小写
+     */
+    public HeavyHitters(int k, double epsilon, double delta, boolean ignoreCase) {
+        this(k, (int) Math.ceil(Math.log(1 / delta)), (int) Math.ceil(Math.E / epsilon), ignoreCase);
+    }
+
+    HeavyHitters(int k, int depth, int width, boolean ignoreCase) {
+        super(ignoreCase);
+        if (k < 1 || depth < 1 || width < 1)
+            throw new IllegalArgumentException("k, depth and width must be positive");
+        this.k = k;
+        this.capacity = k * CANDIDATE_FACTOR;
+        this.depth = depth;
+        this.width = width;
+        this.sketch = new long[depth * width];
+        this.candidates = new TokenCountMap(ignoreCase);
+    }
+
+    /**
+     * 统计所有行中的高频词。lines 是并行流时并行统计
+     */
+    public static HeavyHitters of(Stream<String> lines, int k, double epsilon, double delta, boolean ignoreCase) {
+        return lines.collect(() -> new HeavyHitters(k, epsilon, delta, ignoreCase), HeavyHitters::addLine, HeavyHitters::merge);
+    }
+
+    @Override
+    void accept(char[] chars, int len, int hash) {
+        total++;
+        long estimate = increment(hash);
+        if (candidates.contains(chars, len, hash)) {
+            candidates.put(chars, len, hash, estimate);
+            if (minKey != null && regionEquals(minKey, chars, len))//最小的那个变大了
+                minDirty = true;
+            return;
+        }
+        if (candidates.size() < capacity) {
+            candidates.put(chars, len, hash, estimate);
+            minDirty = true;
+            return;
+        }
+        //候选集已满：只有估计值超过候选集中最小的估计值时才替换，长尾的低频词在这里就返回了，不会创建 String
+        refreshMin();
+        if (estimate <= minEstimate)
+            return;
+        candidates.remove(minKey);
+        candidates.put(chars, len, hash, estimate);
+        minDirty = true;
+    }
+
+    /**
+     * 合并另一个 HeavyHitters，两者的 depth、width 必须相同
+     *
+     * @param other
+     */
+    public void merge(HeavyHitters other) {
+        if (other.depth != depth || other.width != width)
+            throw new IllegalArgumentException("sketch dimensions differ");
+        for (int i = 0; i < sketch.length; i++)
+            sketch[i] += other.sketch[i];
+        total += other.total;
+
+        TokenCountMap union = new TokenCountMap(ignoreCase);
+        candidates.forEach((key, ignored) -> union.put(key, estimate(key.hashCode())));
+        other.candidates.forEach((key, ignored) -> union.put(key, estimate(key.hashCode())));
+        candidates = new TokenCountMap(ignoreCase);
+        for (Map.Entry<String, Long> entry : union.topK(capacity))
+            candidates.put(entry.getKey(), entry.getValue());
+        minDirty = true;
+    }
+
+    /**
+     * 估计出现次数最多的 k 个单词，按估计值降序
+     *
+     * @return
+     */
+    public List<Map.Entry<String, Long>> topK() {
+        return candidates.topK(k);
+    }
+
+    /**
+     * 任意单词的估计次数（不小于真实次数）
+     */
+    public long estimate(String token) {
+        return estimate(token.hashCode());
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    private long increment(int hash) {
+        long h = mix(hash);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int column = Math.floorMod(h1 + row * h2, width);
+            min = Math.min(min, ++sketch[row * width + column]);
+        }
+        return min;
+    }
+
+    private long estimate(int hash) {
+        long h = mix(hash);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++)
+            min = Math.min(min, sketch[row * width + Math.floorMod(h1 + row * h2, width)]);
+        return min;
+    }
+
+    private void refreshMin() {
+        if (!minDirty)
+            return;
+        minKey = null;
+        minEstimate = Long.MAX_VALUE;
+        candidates.forEach((key, estimate) -> {
+            if (estimate < minEstimate) {
+                minEstimate = estimate;
+                minKey = key;
+            }
+        });
+        minDirty = false;
+    }
+
+    /**
+     * 把 32 位哈希扩展为 64 位（SplitMix64 的终结函数），高低 32 位作为两个独立的哈希
+     */
+    private static long mix(int hash) {
+        long z = hash * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
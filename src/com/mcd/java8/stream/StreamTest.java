@@ -205,6 +205,7 @@ public class StreamTest {
             uniqueWords = lines.flatMap(line -> Arrays.stream(line.split(" ")))
                     .distinct()
                     .count();
+            //如果需要每个单词的出现次数或出现最多的前 k 个单词，见 TokenCountMap.count 与 HeavyHitters.of
         } catch (IOException e) {
 
         }
@@ -0,0 +1,234 @@
+package com.mcd.java8.stream;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * 单词 → 出现次数的开放寻址（线性探测）哈希表，用来做精确的词频统计
+ * <p>
+ * StreamTest.test 中的 flatMap(line -> Arrays.stream(line.split(" "))).distinct().count() 只能得到不同单词的个数，
+ * 而且每个单词都要创建一个 String。这里：
+ * 1、键、哈希值、计数分别保存在三个平行数组中，计数是原始类型 long，没有 Long 装箱，也没有 HashMap.Node
+ * 2、查找时直接比较缓冲区中的字符，已经出现过的单词不会再创建 String
+ * 3、配合 Stream.collect 使用时，每个叶子子任务各自统计到一个 TokenCountMap 中，再在分支/合并树上两两并行合并
+ */
+public final class TokenCountMap extends TokenCounter {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int size;
+
+    public TokenCountMap() {
+        this(false);
+    }
+
+    /**
+     * @param ignoreCase 是否忽略大小写（统一转为小写）
+     */
+    public TokenCountMap(boolean ignoreCase) {
+        super(ignoreCase);
+    }
+
+    /**
+     * 统计所有行的词频。lines 是并行流时并行统计
+     *
+     * @param lines
+     * @param ignoreCase
+     * @return
+     */
+    public static TokenCountMap count(Stream<String> lines, boolean ignoreCase) {
+        return lines.collect(() -> new TokenCountMap(ignoreCase), TokenCountMap::addLine, TokenCountMap::merge);
+    }
+
+    @Override
+    void accept(char[] chars, int len, int hash) {
+        add(chars, len, hash, 1L);
+    }
+
+    public void add(String token, long delta) {
+        char[] chars = token.toCharArray();
+        add(chars, chars.length, token.hashCode(), delta);
+    }
+
+    /**
+     * @return 增加后的计数
+     */
+    long add(char[] chars, int len, int hash, long delta) {
+        int slot = find(chars, len, hash);
+        if (slot >= 0)
+            return counts[slot] += delta;
+        insert(-slot - 1, new String(chars, 0, len), hash, delta);
+        return delta;
+    }
+
+    /**
+     * 设置计数，返回之前是否已经存在
+     */
+    boolean put(char[] chars, int len, int hash, long count) {
+        int slot = find(chars, len, hash);
+        if (slot >= 0) {
+            counts[slot] = count;
+            return true;
+        }
+        insert(-slot - 1, new String(chars, 0, len), hash, count);
+        return false;
+    }
+
+    void put(String key, long count) {
+        char[] chars = key.toCharArray();
+        put(chars, chars.length, key.hashCode(), count);
+    }
+
+    public long get(String token) {
+        char[] chars = token.toCharArray();
+        int slot = find(chars, chars.length, token.hashCode());
+        return slot >= 0 ? counts[slot] : 0L;
+    }
+
+    boolean contains(char[] chars, int len, int hash) {
+        return find(chars, len, hash) >= 0;
+    }
+
+    /**
+     * 删除一个键。线性探测不能简单地把槽位置空，否则会截断后面元素的探测链，
+     * 所以把后面仍属于这条探测链的元素依次前移（backward shift deletion）
+     */
+    boolean remove(String key) {
+        char[] chars = key.toCharArray();
+        int slot = find(chars, chars.length, key.hashCode());
+        if (slot < 0)
+            return false;
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = spread(hashes[i]) & mask;
+            //home 不在 (hole, i] 区间内，说明 i 上的元素可以移到空出来的 hole 上
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                hashes[hole] = hashes[i];
+                counts[hole] = counts[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+        counts[hole] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * 把另一个 TokenCountMap 的计数加进来
+     *
+     * @param other
+     */
+    public void merge(TokenCountMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            String key = other.keys[i];
+            if (key == null)
+                continue;
+            char[] chars = key.toCharArray();
+            int slot = find(chars, chars.length, other.hashes[i]);
+            if (slot >= 0)
+                counts[slot] += other.counts[i];
+            else
+                insert(-slot - 1, key, other.hashes[i], other.counts[i]);//直接复用对方的 String
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(ObjLongConsumer<String> action) {
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != null)
+                action.accept(keys[i], counts[i]);
+    }
+
+    /**
+     * 出现次数最多的 k 个单词，按次数降序。用大小为 k 的最小堆，只需 O(n log k)
+     *
+     * @param k
+     * @return
+     */
+    public List<Map.Entry<String, Long>> topK(int k) {
+        return topK(k, this::forEach);
+    }
+
+    static List<Map.Entry<String, Long>> topK(int k, java.util.function.Consumer<ObjLongConsumer<String>> entries) {
+        Comparator<Map.Entry<String, Long>> byCount = Map.Entry.comparingByValue();
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(Math.max(1, k), byCount);
+        entries.accept((key, count) -> {
+            if (k <= 0)
+                return;
+            if (heap.size() < k)
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(key, count));
+            else if (count > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(key, count));
+            }
+        });
+        List<Map.Entry<String, Long>> result = new ArrayList<>(heap);
+        result.sort(byCount.reversed().thenComparing(Map.Entry.comparingByKey()));
+        return result;
+    }
+
+    /**
+     * 找到键所在的槽位；不存在时返回 -(可插入的槽位) - 1
+     */
+    private int find(char[] chars, int len, int hash) {
+        int mask = keys.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            String key = keys[i];
+            if (key == null)
+                return -i - 1;
+            if (hashes[i] == hash && regionEquals(key, chars, len))
+                return i;
+        }
+    }
+
+    private void insert(int slot, String key, int hash, long count) {
+        keys[slot] = key;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        if (++size > keys.length / 2)//装载因子不超过 0.5，保证探测链较短
+            resize();
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        int capacity = oldKeys.length * 2;
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null)
+                continue;
+            int i = spread(oldHashes[j]) & mask;
+            while (keys[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            hashes[i] = oldHashes[j];
+            counts[i] = oldCounts[j];
+        }
+    }
+
+    /**
+     * String.hashCode 的低位分布较差，与 HashMap 一样把高位混合进来
+     */
+    static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+    }
+}
@@ -0,0 +1,62 @@
+package com.mcd.java8.stream;
+
+/**
+ * 词频统计的公共部分：把一行文本切分成单词（连续的非空白字符），逐个交给 accept。
+ * <p>
+ * 单词在复用的 scratch 缓冲区中以 char 数组的形式传递，同时按 String.hashCode 的公式算好哈希值，
+ * 子类可以不创建 String 就完成查找，只有第一次遇到某个单词时才需要创建 String
+ */
+abstract class TokenCounter {
+
+    final boolean ignoreCase;
+    private char[] scratch = new char[32];
+
+    TokenCounter(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * 统计一行文本中的所有单词
+     *
+     * @param line
+     */
+    public void addLine(String line) {
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(line.charAt(i)))
+                i++;
+            int len = 0;
+            int hash = 0;
+            for (; i < length; i++) {
+                char c = line.charAt(i);
+                if (Character.isWhitespace(c))
+                    break;
+                if (ignoreCase)
+                    c = Character.toLowerCase(c);
+                if (len == scratch.length)
+                    scratch = java.util.Arrays.copyOf(scratch, len * 2);
+                scratch[len++] = c;
+                hash = 31 * hash + c;//与 String.hashCode 相同，合并时可以直接用 key.hashCode()
+            }
+            if (len > 0)
+                accept(scratch, len, hash);
+        }
+    }
+
+    /**
+     * @param chars 单词所在的缓冲区，只在本次调用期间有效
+     * @param len   单词长度
+     * @param hash  与 new String(chars, 0, len).hashCode() 相同
+     */
+    abstract void accept(char[] chars, int len, int hash);
+
+    static boolean regionEquals(String key, char[] chars, int len) {
+        if (key.length() != len)
+            return false;
+        for (int i = 0; i < len; i++)
+            if (key.charAt(i) != chars[i])
+                return false;
+        return true;
+    }
+}
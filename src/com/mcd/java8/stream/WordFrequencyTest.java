@@ -0,0 +1,83 @@
+package com.mcd.java8.stream;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 并行词频统计与高频词
+ */
+public class WordFrequencyTest {
+
+    /**
+     * 生成近似 Zipf 分布的语料：第 r 个单词出现的概率与 1/r 成正比
+     */
+    private static List<String> corpus(int lines, int wordsPerLine, int vocabulary) {
+        double[] cumulative = new double[vocabulary];
+        double sum = 0;
+        for (int r = 0; r < vocabulary; r++)
+            cumulative[r] = sum += 1d / (r + 1);
+        Random random = new Random(2020);
+        return IntStream.range(0, lines)
+                .mapToObj(line -> IntStream.range(0, wordsPerLine)
+                        .mapToObj(i -> {
+                            int index = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[vocabulary - 1]);
+                            return "w" + (index < 0 ? -index - 1 : index);
+                        })
+                        .collect(Collectors.joining(" ")))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void exactFrequencies() {
+        List<String> lines = corpus(20_000, 20, 50_000);
+        Map<String, Long> expected = lines.stream()
+                .flatMap(line -> Arrays.stream(line.split(" ")))
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+
+        TokenCountMap counts = TokenCountMap.count(lines.parallelStream(), false);
+        assertEquals(expected.size(), counts.size());
+        expected.forEach((word, count) -> assertEquals(count.longValue(), counts.get(word)));
+
+        List<Map.Entry<String, Long>> top = counts.topK(5);
+        System.out.println("Top 5: " + top);
+        assertEquals("w0", top.get(0).getKey());
+
+        //忽略大小写与删除
+        TokenCountMap mixed = new TokenCountMap(true);
+        mixed.addLine("  The the THE  quick\tfox ");
+        assertEquals(3L, mixed.get("the"));
+        assertTrue(mixed.remove("the"));
+        assertFalse(mixed.remove("the"));
+        assertEquals(1L, mixed.get("fox"));
+        assertEquals(2, mixed.size());
+    }
+
+    @Test
+    public void heavyHitters() {
+        List<String> lines = corpus(20_000, 20, 200_000);
+        TokenCountMap exact = TokenCountMap.count(lines.parallelStream(), false);
+        HeavyHitters approximate = HeavyHitters.of(lines.parallelStream(), 10, 0.0005, 0.01, false);
+
+        System.out.println("Exact:       " + exact.topK(10));
+        System.out.println("Approximate: " + approximate.topK());
+        assertEquals(exact.topK(3).stream().map(Map.Entry::getKey).collect(Collectors.toList()),
+                approximate.topK().stream().limit(3).map(Map.Entry::getKey).collect(Collectors.toList()));
+        //估计值不会小于真实值，且误差在 epsilon * 总词数以内
+        for (Map.Entry<String, Long> entry : approximate.topK()) {
+            long actual = exact.get(entry.getKey());
+            assertTrue(entry.getValue() >= actual);
+            assertTrue(entry.getValue() - actual <= 0.0005 * approximate.getTotal());
+        }
+    }
+}